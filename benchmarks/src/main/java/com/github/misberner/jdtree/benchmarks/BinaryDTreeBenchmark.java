@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.misberner.jdtree.benchmarks.TreeGenerators.GeneratedBDTree;
+import com.github.misberner.jdtree.binary.BDTMarking;
+import com.github.misberner.jdtree.binary.BDTNode;
+import com.github.misberner.jdtree.binary.BDTVisitor;
+import com.github.misberner.jdtree.binary.BinaryDTree;
+import com.github.misberner.jdtree.binary.ExtractedBDTree;
+import com.google.common.base.Functions;
+
+/**
+ * Benchmarks for the non-modifying operations of {@link BinaryDTree}.
+ * 
+ * @author Malte Isberner
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BinaryDTreeBenchmark {
+	
+	private static final int NUM_SAMPLES = 4096;
+	private static final double EXTRACT_FRACTION = 0.1;
+	
+	/**
+	 * Per-thread position in the pre-generated samples.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int next;
+		
+		int next() {
+			int idx = next;
+			next = (idx + 1) & (NUM_SAMPLES - 1);
+			return idx;
+		}
+	}
+	
+	private static final class LeafCounter implements BDTVisitor<Integer,Void,Integer> {
+		@Override
+		public boolean visitInnerPre(BDTNode<Integer> innerNode, Void parentData, ChildData<Void> childData) {
+			return true;
+		}
+		@Override
+		public Integer visitInnerPost(BDTNode<Integer> innerNode, Void parentData, Integer falseChildData, Integer trueChildData) {
+			return falseChildData + trueChildData;
+		}
+		@Override
+		public Integer visitLeaf(BDTNode<Integer> leaf, Void parentData) {
+			return 1;
+		}
+	}
+	
+	@Param({"BALANCED", "CHAIN", "RANDOM"})
+	public TreeShape shape;
+	
+	@Param({"1000", "100000", "1000000"})
+	public int size;
+	
+	private BinaryDTree<Integer> tree;
+	private Integer[] keys;
+	private BDTNode<Integer>[] leaves1;
+	private BDTNode<Integer>[] leaves2;
+	private BDTMarking extractMarking;
+	private final LeafCounter leafCounter = new LeafCounter();
+	
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		GeneratedBDTree gen = TreeGenerators.binary(shape, size, 42L);
+		tree = gen.getTree();
+		
+		Random r = new Random(4711L);
+		keys = new Integer[NUM_SAMPLES];
+		leaves1 = new BDTNode[NUM_SAMPLES];
+		leaves2 = new BDTNode[NUM_SAMPLES];
+		for(int i = 0; i < NUM_SAMPLES; i++) {
+			keys[i] = r.nextInt(size);
+			leaves1[i] = tree.getLeaf(r.nextInt(size));
+			leaves2[i] = tree.getLeaf(r.nextInt(size));
+		}
+		
+		extractMarking = new BDTMarking(tree);
+		for(BDTNode<Integer> leaf : tree.getLeaves()) {
+			if(r.nextDouble() < EXTRACT_FRACTION) {
+				extractMarking.markAndPropagate(leaf);
+			}
+		}
+		extractMarking.mark(tree.getRoot());
+	}
+	
+	@Benchmark
+	public BDTNode<Integer> sift(Cursor cursor) {
+		return tree.sift(keys[cursor.next()], TreeGenerators.THRESHOLD_EVALUATOR);
+	}
+	
+	@Benchmark
+	public BDTNode<Integer> leastCommonAncestor(Cursor cursor) {
+		int idx = cursor.next();
+		return tree.leastCommonAncestor(leaves1[idx], leaves2[idx]);
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Integer visit() {
+		return tree.visit(leafCounter, tree.getRoot(), null);
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public BinaryDTree<Integer> transform() {
+		return tree.transform(Functions.<Integer>identity());
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public ExtractedBDTree<Integer> extract() {
+		return tree.extract(extractMarking);
+	}
+
+}
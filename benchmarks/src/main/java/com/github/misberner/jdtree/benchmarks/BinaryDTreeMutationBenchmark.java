@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.misberner.jdtree.benchmarks.TreeGenerators.GeneratedBDTree;
+import com.github.misberner.jdtree.binary.BDTEvaluator;
+import com.github.misberner.jdtree.binary.BDTNode;
+import com.github.misberner.jdtree.binary.BDTNodeMap;
+import com.github.misberner.jdtree.binary.BinaryDTree;
+
+/**
+ * Benchmarks for the modifying operations of {@link BinaryDTree}.
+ * 
+ * @author Malte Isberner
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BinaryDTreeMutationBenchmark {
+	
+	@Param({"BALANCED", "CHAIN", "RANDOM"})
+	public TreeShape shape;
+	
+	@Param({"1000", "100000", "1000000"})
+	public int size;
+	
+	private GeneratedBDTree gen;
+	private BDTEvaluator<BDTNode<Integer>,Integer> leafEvaluator;
+	private Random random;
+	
+	@Setup(Level.Iteration)
+	public void setUp() {
+		gen = TreeGenerators.binary(shape, size, 42L);
+		leafEvaluator = gen.createLeafEvaluator();
+		random = new Random(4711L);
+	}
+	
+	/**
+	 * Builds a tree of the given shape and size by successive splits.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public BinaryDTree<Integer> buildBySplitting() {
+		return TreeGenerators.binary(shape, size, 42L).getTree();
+	}
+	
+	/**
+	 * Splits the root of a fresh tree according to the generated tree.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public BDTNodeMap<BDTNode<Integer>> splitByTree() {
+		BinaryDTree<Integer> target = new BinaryDTree<>();
+		return target.split(target.getRoot(), gen.getTree());
+	}
+	
+	/**
+	 * Replaces the discriminator of a random inner node by the discriminator of one of its
+	 * children, i.e., performs a rotation. The shape of the tree drifts over the course of
+	 * an iteration, but all sifts remain consistent.
+	 */
+	@Benchmark
+	public BDTNodeMap<BDTNode<Integer>> replaceDiscriminator() {
+		BinaryDTree<Integer> tree = gen.getTree();
+		int numInner = tree.getNumInnerNodes();
+		if(numInner == 0) {
+			return null;
+		}
+		while(true) {
+			BDTNode<Integer> inner = tree.getInnerNodes().get(random.nextInt(numInner));
+			BDTNode<Integer> child = random.nextBoolean() ? inner.getTrueChild() : inner.getFalseChild();
+			if(child.isInner()) {
+				return tree.replaceDiscriminator(inner, child.getDiscriminator(), leafEvaluator);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.misberner.jdtree.multi.MDTEvaluator;
+import com.github.misberner.jdtree.multi.MDTLCAInfo;
+import com.github.misberner.jdtree.multi.MDTNode;
+import com.github.misberner.jdtree.multi.MultiDTree;
+
+/**
+ * Benchmarks for {@link MultiDTree}s with large fan-out.
+ * 
+ * @author Malte Isberner
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultiDTreeBenchmark {
+	
+	private static final int NUM_SAMPLES = 4096;
+	
+	/**
+	 * Per-thread position in the pre-generated samples.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int next;
+		
+		int next() {
+			int idx = next;
+			next = (idx + 1) & (NUM_SAMPLES - 1);
+			return idx;
+		}
+	}
+	
+	@Param({"16", "256"})
+	public int fanOut;
+	
+	@Param({"1000", "100000", "1000000"})
+	public int size;
+	
+	private MultiDTree<Integer,Integer> tree;
+	private MDTEvaluator<Integer,Integer,Integer> evaluator;
+	private Integer[] keys;
+	private MDTNode<Integer,Integer>[] leaves1;
+	private MDTNode<Integer,Integer>[] leaves2;
+	
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		tree = TreeGenerators.multi(size, fanOut);
+		evaluator = TreeGenerators.digitEvaluator(fanOut);
+		
+		Random r = new Random(4711L);
+		int numLeaves = tree.getNumLeaves();
+		keys = new Integer[NUM_SAMPLES];
+		leaves1 = new MDTNode[NUM_SAMPLES];
+		leaves2 = new MDTNode[NUM_SAMPLES];
+		for(int i = 0; i < NUM_SAMPLES; i++) {
+			keys[i] = r.nextInt(Integer.MAX_VALUE);
+			leaves1[i] = tree.getLeaf(r.nextInt(numLeaves));
+			leaves2[i] = tree.getLeaf(r.nextInt(numLeaves));
+		}
+	}
+	
+	@Benchmark
+	public MDTNode<Integer,Integer> sift(Cursor cursor) {
+		return tree.sift(keys[cursor.next()], evaluator);
+	}
+	
+	@Benchmark
+	public MDTLCAInfo<Integer,Integer> leastCommonAncestor(Cursor cursor) {
+		int idx = cursor.next();
+		return tree.leastCommonAncestor(leaves1[idx], leaves2[idx]);
+	}
+	
+	/**
+	 * Builds a tree of the given fan-out and size by successive splits.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public MultiDTree<Integer,Integer> buildBySplitting() {
+		return TreeGenerators.multi(size, fanOut);
+	}
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.benchmarks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import com.github.misberner.jdtree.binary.BDTEvaluator;
+import com.github.misberner.jdtree.binary.BDTNode;
+import com.github.misberner.jdtree.binary.BinaryDTree;
+import com.github.misberner.jdtree.multi.MDTEvaluator;
+import com.github.misberner.jdtree.multi.MDTNode;
+import com.github.misberner.jdtree.multi.MultiDTree;
+
+/**
+ * Generators for synthetic discrimination trees.
+ * <p>
+ * Binary trees discriminate integer keys by thresholds: the outcome of an inner node with
+ * discriminator {@code d} for a key {@code x} is {@code x >= d}. A binary tree with {@code n}
+ * leaves partitions the keys {@code 0} to {@code n-1} such that every leaf is reached by
+ * exactly one key, which allows deriving consistent leaf outcomes for
+ * {@link BinaryDTree#replaceDiscriminator(BDTNode, Object, BDTEvaluator)}.
+ * <p>
+ * Multi-way trees discriminate integer keys by their digits: the outcome of an inner node with
+ * discriminator {@code d} for a key {@code x} is {@code (x / d) % fanOut}, where {@code d} is a
+ * power of the fan-out.
+ * 
+ * @author Malte Isberner
+ */
+public final class TreeGenerators {
+	
+	/**
+	 * Evaluator for the threshold discriminators of generated binary trees.
+	 */
+	public static final BDTEvaluator<Integer,Integer> THRESHOLD_EVALUATOR = new BDTEvaluator<Integer,Integer>() {
+		@Override
+		public boolean evaluate(Integer key, Integer threshold) {
+			return key.intValue() >= threshold.intValue();
+		}
+	};
+	
+	/**
+	 * A generated binary tree, along with the key reaching each leaf.
+	 */
+	public static final class GeneratedBDTree {
+		private final BinaryDTree<Integer> tree;
+		private final int[] leafKeys;
+		
+		private GeneratedBDTree(BinaryDTree<Integer> tree, int[] leafKeys) {
+			this.tree = tree;
+			this.leafKeys = leafKeys;
+		}
+		
+		public BinaryDTree<Integer> getTree() {
+			return tree;
+		}
+		
+		/**
+		 * Retrieves the number of keys, which equals the number of leaves.
+		 * @return the number of keys
+		 */
+		public int getNumKeys() {
+			return leafKeys.length;
+		}
+		
+		/**
+		 * Retrieves the key reaching the given leaf.
+		 * @param leaf the leaf
+		 * @return the key reaching the leaf
+		 */
+		public int getLeafKey(BDTNode<Integer> leaf) {
+			return leafKeys[leaf.getLeafId()];
+		}
+		
+		/**
+		 * Creates an evaluator determining the outcomes of leaves via their keys, for use with
+		 * {@link BinaryDTree#replaceDiscriminator(BDTNode, Object, BDTEvaluator)}.
+		 * 
+		 * @return the leaf evaluator
+		 */
+		public BDTEvaluator<BDTNode<Integer>,Integer> createLeafEvaluator() {
+			return new BDTEvaluator<BDTNode<Integer>,Integer>() {
+				@Override
+				public boolean evaluate(BDTNode<Integer> leaf, Integer threshold) {
+					return leafKeys[leaf.getLeafId()] >= threshold.intValue();
+				}
+			};
+		}
+	}
+	
+	/**
+	 * Evaluator for the digit discriminators of generated multi-way trees.
+	 */
+	public static MDTEvaluator<Integer,Integer,Integer> digitEvaluator(final int fanOut) {
+		return new MDTEvaluator<Integer,Integer,Integer>() {
+			@Override
+			public Integer evaluate(Integer key, Integer divisor) {
+				return (key.intValue() / divisor.intValue()) % fanOut;
+			}
+		};
+	}
+	
+	/**
+	 * Generates a binary tree of the given shape.
+	 * 
+	 * @param shape the shape of the tree
+	 * @param numLeaves the number of leaves
+	 * @param seed the seed for the random split order, only used for {@link TreeShape#RANDOM}
+	 * @return the generated tree
+	 */
+	public static GeneratedBDTree binary(TreeShape shape, int numLeaves, long seed) {
+		if(numLeaves < 1) {
+			throw new IllegalArgumentException("Number of leaves must be positive: " + numLeaves);
+		}
+		BinaryDTree<Integer> tree = new BinaryDTree<>();
+		// Every leaf is reached by the keys lo[leafId] (inclusive) to hi[leafId] (exclusive)
+		int[] lo = new int[numLeaves];
+		int[] hi = new int[numLeaves];
+		hi[0] = numLeaves;
+		
+		switch(shape) {
+		case BALANCED:
+			Deque<BDTNode<Integer>> queue = new ArrayDeque<>();
+			queue.offer(tree.getRoot());
+			while(!queue.isEmpty()) {
+				BDTNode<Integer> leaf = queue.poll();
+				int leafId = leaf.getLeafId();
+				if(hi[leafId] - lo[leafId] < 2) {
+					continue;
+				}
+				int mid = (lo[leafId] + hi[leafId]) >>> 1;
+				split(tree, leaf, mid, lo, hi);
+				queue.offer(leaf.getFalseChild());
+				queue.offer(leaf.getTrueChild());
+			}
+			break;
+		case CHAIN:
+			BDTNode<Integer> curr = tree.getRoot();
+			for(int key = 1; key < numLeaves; key++) {
+				split(tree, curr, key, lo, hi);
+				curr = curr.getTrueChild();
+			}
+			break;
+		case RANDOM:
+			List<Integer> keys = new ArrayList<>(numLeaves - 1);
+			for(int key = 1; key < numLeaves; key++) {
+				keys.add(key);
+			}
+			Collections.shuffle(keys, new Random(seed));
+			for(Integer key : keys) {
+				split(tree, tree.sift(key, THRESHOLD_EVALUATOR), key, lo, hi);
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown shape " + shape);
+		}
+		
+		return new GeneratedBDTree(tree, lo);
+	}
+	
+	private static void split(BinaryDTree<Integer> tree, BDTNode<Integer> leaf, int threshold, int[] lo, int[] hi) {
+		int leafId = leaf.getLeafId();
+		tree.split(leaf, threshold);
+		// The false child retains the leaf ID of the split leaf
+		int newLeafId = leaf.getTrueChild().getLeafId();
+		lo[newLeafId] = threshold;
+		hi[newLeafId] = hi[leafId];
+		hi[leafId] = threshold;
+	}
+	
+	/**
+	 * Generates a multi-way tree with the given fan-out, in which the depths of all leaves
+	 * differ by at most one.
+	 * 
+	 * @param minLeaves the minimum number of leaves. The actual number of leaves
+	 * may exceed this by less than {@code fanOut}.
+	 * @param fanOut the number of children of every inner node
+	 * @return the generated tree
+	 */
+	public static MultiDTree<Integer,Integer> multi(int minLeaves, int fanOut) {
+		if(fanOut < 2) {
+			throw new IllegalArgumentException("Fan-out must be at least 2: " + fanOut);
+		}
+		List<Integer> otherOutcomes = new ArrayList<>(fanOut - 1);
+		for(int i = 1; i < fanOut; i++) {
+			otherOutcomes.add(i);
+		}
+		
+		MultiDTree<Integer,Integer> tree = new MultiDTree<>();
+		Deque<MDTNode<Integer,Integer>> queue = new ArrayDeque<>();
+		Deque<Integer> divisors = new ArrayDeque<>();
+		queue.offer(tree.getRoot());
+		divisors.offer(1);
+		while(tree.getNumLeaves() < minLeaves) {
+			MDTNode<Integer,Integer> leaf = queue.poll();
+			int divisor = divisors.poll();
+			if((long)divisor * fanOut > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Tree too large for fan-out " + fanOut);
+			}
+			tree.split(leaf, divisor, 0, otherOutcomes);
+			for(int i = 0; i < fanOut; i++) {
+				queue.offer(leaf.getChild(i));
+				divisors.offer(divisor * fanOut);
+			}
+		}
+		return tree;
+	}
+	
+	private TreeGenerators() {
+		throw new AssertionError("Constructor should never be invoked");
+	}
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.benchmarks;
+
+/**
+ * Shapes of synthetic binary discrimination trees generated by {@link TreeGenerators}.
+ * 
+ * @author Malte Isberner
+ */
+public enum TreeShape {
+	/**
+	 * A balanced tree, in which the depths of all leaves differ by at most one.
+	 */
+	BALANCED,
+	/**
+	 * A degenerate tree, in which every inner node has a leaf as its false child.
+	 */
+	CHAIN,
+	/**
+	 * A tree obtained by splitting leaves in random order, i.e., a random binary search tree
+	 * of expected logarithmic depth.
+	 */
+	RANDOM
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * A splittable iterator over the nodes of a subtree, in preorder.
+ * <p>
+ * In addition to sequential iteration, a spliterator may be split into two spliterators covering
+ * disjoint parts of the remaining nodes (see {@link #trySplit()}), which allows processing the
+ * nodes of a subtree in parallel (see {@link #forEachRemaining(NodeProcedure, ForkJoinPool)}).
+ * Splits always occur at inner nodes: a spliterator covering a single subtree is split by passing
+ * the root and all but the last child subtree to the new spliterator. The methods of this class
+ * follow the conventions of the Java 8 {@code Spliterator}, to which a spliterator can be adapted.
+ * <p>
+ * The size of the spliterator is exactly known if it was created for a whole tree and has not been
+ * split, otherwise only an estimate is available.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <N> node type
+ */
+@ParametersAreNonnullByDefault
+public abstract class AbstractSubtreeSpliterator<N> implements Iterator<N> {
+	
+	// A pending node, which is either to be expanded (i.e., its whole subtree
+	// is pending), or to be returned on its own
+	private static final class Entry<N> {
+		private final N node;
+		private final boolean subtree;
+		
+		public Entry(N node, boolean subtree) {
+			this.node = node;
+			this.subtree = subtree;
+		}
+	}
+	
+	private final Deque<Entry<N>> pending = new ArrayDeque<>();
+	// The next node to return, if already computed
+	@Nullable
+	private N next;
+	private final NodeType type;
+	private long estimate;
+	private boolean exact;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param subtreeRoot the root of the subtree, or {@code null} for an empty spliterator
+	 * @param type the type of nodes to return
+	 * @param exactSize the exact number of nodes of the given type in the subtree, or {@code -1}
+	 * if unknown
+	 */
+	protected AbstractSubtreeSpliterator(@Nullable N subtreeRoot, NodeType type, long exactSize) {
+		this.type = type;
+		if(subtreeRoot != null) {
+			pending.push(new Entry<>(subtreeRoot, true));
+		}
+		if(exactSize >= 0) {
+			this.estimate = exactSize;
+			this.exact = true;
+		}
+		else {
+			this.estimate = Long.MAX_VALUE;
+		}
+	}
+	
+	/**
+	 * Retrieves the type of nodes returned by this spliterator.
+	 * @return the node type
+	 */
+	protected final NodeType getType() {
+		return type;
+	}
+	
+	/**
+	 * Creates a new, empty spliterator of the same kind as this one.
+	 * @return the new spliterator
+	 */
+	protected abstract AbstractSubtreeSpliterator<N> createEmpty();
+	
+	protected abstract boolean isInner(N node);
+	
+	protected abstract boolean isOfType(N node, NodeType type);
+	
+	/**
+	 * Pushes the children of the given inner node via {@link #pushSubtree(Object)},
+	 * in <i>reverse</i> order.
+	 * 
+	 * @param innerNode the inner node
+	 */
+	protected abstract void pushChildren(N innerNode);
+	
+	/**
+	 * Pushes the subtree rooted at the given node, to be traversed next.
+	 * @param subtreeRoot the root of the subtree
+	 */
+	protected final void pushSubtree(N subtreeRoot) {
+		pending.push(new Entry<>(subtreeRoot, true));
+	}
+	
+	@Override
+	public boolean hasNext() {
+		if(next == null) {
+			next = computeNext();
+		}
+		return next != null;
+	}
+	
+	@Override
+	public N next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		N result = next;
+		next = null;
+		if(estimate != Long.MAX_VALUE && estimate > 0) {
+			estimate--;
+		}
+		return result;
+	}
+	
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+	
+	@Nullable
+	private N computeNext() {
+		while(!pending.isEmpty()) {
+			Entry<N> entry = pending.pop();
+			N node = entry.node;
+			if(entry.subtree && isInner(node)) {
+				pushChildren(node);
+			}
+			if(isOfType(node, type)) {
+				return node;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Splits off a part of the remaining nodes, which will no longer be returned by this
+	 * spliterator.
+	 * 
+	 * @return a spliterator covering the nodes that directly follow the current position of this
+	 * spliterator, or {@code null} if this spliterator cannot be split
+	 */
+	@Nullable
+	public AbstractSubtreeSpliterator<N> trySplit() {
+		AbstractSubtreeSpliterator<N> prefix = createEmpty();
+		if(next != null) {
+			// The already computed next node is not pending anymore
+			prefix.pending.addLast(new Entry<>(next, false));
+		}
+		
+		if(pending.size() >= 2) {
+			int num = pending.size() / 2;
+			for(int i = 0; i < num; i++) {
+				prefix.pending.addLast(pending.pollFirst());
+			}
+		}
+		else if(pending.size() == 1 && pending.peekFirst().subtree && isInner(pending.peekFirst().node)) {
+			N root = pending.pollFirst().node;
+			prefix.pending.addLast(new Entry<>(root, false));
+			pushChildren(root);
+			while(pending.size() > 1) {
+				prefix.pending.addLast(pending.pollFirst());
+			}
+		}
+		else {
+			return null;
+		}
+		next = null;
+		
+		long half = estimate / 2;
+		if(estimate == Long.MAX_VALUE) {
+			half = Long.MAX_VALUE;
+		}
+		prefix.estimate = half;
+		if(estimate != Long.MAX_VALUE) {
+			estimate -= half;
+		}
+		exact = false;
+		return prefix;
+	}
+	
+	/**
+	 * Retrieves an estimate of the number of remaining nodes, or {@link Long#MAX_VALUE} if
+	 * no estimate is available.
+	 * @return an estimate of the number of remaining nodes
+	 */
+	@Nonnegative
+	public long estimateSize() {
+		return estimate;
+	}
+	
+	/**
+	 * Retrieves the exact number of remaining nodes, if known.
+	 * @return the exact number of remaining nodes, or {@code -1} if unknown
+	 */
+	public long getExactSizeIfKnown() {
+		return exact ? estimate : -1L;
+	}
+	
+	/**
+	 * Applies the given procedure to all remaining nodes, sequentially.
+	 * 
+	 * @param procedure the procedure
+	 */
+	public void forEachRemaining(NodeProcedure<? super N> procedure) {
+		while(hasNext()) {
+			procedure.apply(next());
+		}
+	}
+	
+	/**
+	 * Applies the given procedure to all remaining nodes in parallel, by recursively splitting
+	 * this spliterator and processing the parts on the workers of the given pool. Parts with an
+	 * estimated size of at most {@code threshold} nodes are processed sequentially.
+	 * 
+	 * @param procedure the procedure, which must be safe to be called concurrently
+	 * @param pool the pool to use
+	 * @param threshold the maximum estimated size of a part that is processed sequentially
+	 */
+	public void forEachRemaining(NodeProcedure<? super N> procedure, ForkJoinPool pool, @Nonnegative long threshold) {
+		pool.invoke(new ForEachTask<>(this, procedure, threshold));
+	}
+	
+	/**
+	 * Applies the given procedure to all remaining nodes in parallel, splitting this spliterator
+	 * into parts of a size adequate for the parallelism level of the pool.
+	 * 
+	 * @see #forEachRemaining(NodeProcedure, ForkJoinPool, long)
+	 */
+	public void forEachRemaining(NodeProcedure<? super N> procedure, ForkJoinPool pool) {
+		long est = estimateSize();
+		long threshold = (est == Long.MAX_VALUE) ? Long.MAX_VALUE : Math.max(est / (pool.getParallelism() * 4L), 1L);
+		forEachRemaining(procedure, pool, threshold);
+	}
+	
+	
+	private static final class ForEachTask<N> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		// Maximum number of surplus tasks in the local queue of a worker for further splitting
+		// a spliterator of unknown size
+		private static final int MAX_SURPLUS = 3;
+		
+		private final AbstractSubtreeSpliterator<N> spliterator;
+		private final NodeProcedure<? super N> procedure;
+		private final long threshold;
+		
+		public ForEachTask(AbstractSubtreeSpliterator<N> spliterator, NodeProcedure<? super N> procedure, long threshold) {
+			this.spliterator = spliterator;
+			this.procedure = procedure;
+			this.threshold = threshold;
+		}
+		
+		@Override
+		protected void compute() {
+			AbstractSubtreeSpliterator<N> split;
+			List<ForEachTask<N>> forked = new ArrayList<>();
+			while(shouldSplit() && (split = spliterator.trySplit()) != null) {
+				ForEachTask<N> task = new ForEachTask<>(split, procedure, threshold);
+				task.fork();
+				forked.add(task);
+			}
+			spliterator.forEachRemaining(procedure);
+			for(int i = forked.size() - 1; i >= 0; i--) {
+				forked.get(i).join();
+			}
+		}
+		
+		private boolean shouldSplit() {
+			long est = spliterator.estimateSize();
+			if(est == Long.MAX_VALUE || threshold == Long.MAX_VALUE) {
+				return ForkJoinTask.getSurplusQueuedTaskCount() <= MAX_SURPLUS;
+			}
+			return est > threshold;
+		}
+	}
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnegative;
+
+/**
+ * A binary lifting table over the (integer) node IDs of a tree, allowing to answer level
+ * ancestor and least common ancestor queries in time logarithmic in the depth of the tree.
+ * <p>
+ * Nodes have to be added in an order such that the parent of a node is always added before
+ * the node itself, which is the case if nodes are added in increasing order of their node
+ * IDs in the discrimination trees of this library (as long as no IDs are reassigned).
+ * The table then occupies {@code O(n log d)} space, where {@code n} is the number of nodes
+ * and {@code d} is the maximum depth.
+ * <p>
+ * This class is a low-level building block for the LCA indices of the binary and
+ * multi-way discrimination trees.
+ * 
+ * @author Malte Isberner
+ */
+public final class AncestorTable {
+	
+	private static final int DEFAULT_CAPACITY = 16;
+	
+	// jumps[j][v] is the ancestor of v at distance 2^j (or the root, if there is no such ancestor)
+	private int[][] jumps;
+	private int[] depths;
+	private int size;
+	private int maxDepth;
+	
+	public AncestorTable() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	public AncestorTable(@Nonnegative int initialCapacity) {
+		int cap = Math.max(initialCapacity, 1);
+		this.jumps = new int[][]{ new int[cap] };
+		this.depths = new int[cap];
+	}
+	
+	/**
+	 * Retrieves the number of nodes in this table.
+	 * @return the number of nodes
+	 */
+	@Nonnegative
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Removes all nodes from this table.
+	 */
+	public void clear() {
+		size = 0;
+		maxDepth = 0;
+	}
+	
+	/**
+	 * Adds the root node. The root must have the ID {@code 0}, and must be added first.
+	 */
+	public void addRoot() {
+		if(size != 0) {
+			throw new IllegalStateException("Root must be added first");
+		}
+		depths[0] = 0;
+		for(int[] jump : jumps) {
+			jump[0] = 0;
+		}
+		size = 1;
+	}
+	
+	/**
+	 * Adds a (non-root) node. The node ID must equal the current {@link #size()}, and the parent
+	 * must already be contained in this table.
+	 * 
+	 * @param nodeId the ID of the node to add
+	 * @param parentId the ID of the parent
+	 */
+	public void add(@Nonnegative int nodeId, @Nonnegative int parentId) {
+		if(nodeId != size) {
+			throw new IllegalArgumentException("Expected node ID " + size + ", got " + nodeId);
+		}
+		if(parentId >= size) {
+			throw new IllegalArgumentException("Parent " + parentId + " has not been added");
+		}
+		ensureCapacity(size + 1);
+		
+		int depth = depths[parentId] + 1;
+		depths[nodeId] = depth;
+		if(depth > maxDepth) {
+			maxDepth = depth;
+			if(depth >= (1 << jumps.length)) {
+				addLevel();
+			}
+		}
+		
+		int anc = parentId;
+		jumps[0][nodeId] = anc;
+		for(int j = 1; j < jumps.length; j++) {
+			anc = jumps[j - 1][anc];
+			jumps[j][nodeId] = anc;
+		}
+		size++;
+	}
+	
+	/**
+	 * Retrieves the depth of a node.
+	 * @param nodeId the node ID
+	 * @return the depth of the node
+	 */
+	public int getDepth(int nodeId) {
+		return depths[nodeId];
+	}
+	
+	/**
+	 * Retrieves the ancestor of a node at the given depth.
+	 * 
+	 * @param nodeId the node ID
+	 * @param depth the depth of the ancestor, must not be larger than the depth of the node
+	 * @return the ID of the ancestor at the given depth
+	 */
+	public int levelAncestor(int nodeId, int depth) {
+		int diff = depths[nodeId] - depth;
+		if(diff < 0 || depth < 0) {
+			throw new IllegalArgumentException("Invalid ancestor depth " + depth + " for node of depth " + depths[nodeId]);
+		}
+		int curr = nodeId;
+		for(int j = 0; diff != 0; j++, diff >>>= 1) {
+			if((diff & 1) != 0) {
+				curr = jumps[j][curr];
+			}
+		}
+		return curr;
+	}
+	
+	/**
+	 * Checks whether a node is an ancestor of another node. Every node is considered
+	 * an ancestor of itself.
+	 * 
+	 * @param ancestorId the ID of the potential ancestor
+	 * @param nodeId the ID of the node
+	 * @return {@code true} if the first node is an ancestor of the second one
+	 */
+	public boolean isAncestor(int ancestorId, int nodeId) {
+		int ancDepth = depths[ancestorId];
+		if(ancDepth > depths[nodeId]) {
+			return false;
+		}
+		return levelAncestor(nodeId, ancDepth) == ancestorId;
+	}
+	
+	/**
+	 * Computes the least common ancestor of two nodes.
+	 * 
+	 * @param n1 the ID of the first node
+	 * @param n2 the ID of the second node
+	 * @return the ID of the least common ancestor
+	 */
+	public int leastCommonAncestor(int n1, int n2) {
+		int d1 = depths[n1], d2 = depths[n2];
+		int c1 = (d1 > d2) ? levelAncestor(n1, d2) : n1;
+		int c2 = (d2 > d1) ? levelAncestor(n2, d1) : n2;
+		if(c1 == c2) {
+			return c1;
+		}
+		for(int j = jumps.length - 1; j >= 0; j--) {
+			int[] jump = jumps[j];
+			int a1 = jump[c1], a2 = jump[c2];
+			if(a1 != a2) {
+				c1 = a1;
+				c2 = a2;
+			}
+		}
+		return jumps[0][c1];
+	}
+	
+	/**
+	 * Computes the children of the least common ancestor of two nodes that are ancestors
+	 * of the respective nodes. If one node is an ancestor of the other, both entries of
+	 * the returned array are the ID of this node.
+	 * 
+	 * @param n1 the ID of the first node
+	 * @param n2 the ID of the second node
+	 * @return a two-element array containing the children of the LCA on the paths to
+	 * {@code n1} and {@code n2}, respectively
+	 */
+	public int[] lcaChildren(int n1, int n2) {
+		int d1 = depths[n1], d2 = depths[n2];
+		int c1 = (d1 > d2) ? levelAncestor(n1, d2) : n1;
+		int c2 = (d2 > d1) ? levelAncestor(n2, d1) : n2;
+		if(c1 == c2) {
+			return new int[]{ c1, c2 };
+		}
+		for(int j = jumps.length - 1; j >= 0; j--) {
+			int[] jump = jumps[j];
+			int a1 = jump[c1], a2 = jump[c2];
+			if(a1 != a2) {
+				c1 = a1;
+				c2 = a2;
+			}
+		}
+		return new int[]{ c1, c2 };
+	}
+	
+	private void addLevel() {
+		int levels = jumps.length;
+		int[][] newJumps = Arrays.copyOf(jumps, levels + 1);
+		int[] prev = jumps[levels - 1];
+		int[] jump = new int[depths.length];
+		for(int v = 0; v < size; v++) {
+			jump[v] = prev[prev[v]];
+		}
+		newJumps[levels] = jump;
+		jumps = newJumps;
+	}
+	
+	private void ensureCapacity(int minCapacity) {
+		if(minCapacity <= depths.length) {
+			return;
+		}
+		int newCap = depths.length + (depths.length >> 1) + 1;
+		if(newCap < minCapacity) {
+			newCap = minCapacity;
+		}
+		depths = Arrays.copyOf(depths, newCap);
+		for(int j = 0; j < jumps.length; j++) {
+			jumps[j] = Arrays.copyOf(jumps[j], newCap);
+		}
+	}
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * A pool for interning discriminators, which can be attached to one or several discrimination
+ * trees (see {@code BinaryDTree.setDiscriminatorPool} and {@code MultiDTree.setDiscriminatorPool}).
+ * <p>
+ * A tree with an attached pool stores only canonical discriminator instances at its inner nodes:
+ * equal discriminators (according to {@link Object#equals(Object) equals}) are represented by the
+ * same object, regardless of whether they were passed to a split directly or produced by a
+ * transformer. Each canonical discriminator is furthermore assigned a dense integer ID, which
+ * allows evaluators to index caches by discriminator ID instead of hashing discriminators.
+ * <p>
+ * The pool keeps a reference count for every discriminator, i.e., the number of inner nodes (in
+ * all attached trees) using it. Once a discriminator is no longer used, it is removed from the
+ * pool, and its ID may be reassigned to another discriminator. IDs are thus always in the range
+ * {@code 0} to {@link #getMaxId()} (exclusive), which exceeds {@link #size()} only by the
+ * number of currently unassigned IDs.
+ * <p>
+ * All methods of this class are thread-safe.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+public class DiscriminatorPool<D> {
+	
+	private static final class Entry<D> {
+		private final D discriminator;
+		private final int id;
+		private int refCount;
+		
+		public Entry(D discriminator, int id) {
+			this.discriminator = discriminator;
+			this.id = id;
+		}
+	}
+	
+	// Canonical instances are looked up by identity first, avoiding calls to equals/hashCode
+	private final Map<D,Entry<D>> canonical = new IdentityHashMap<>();
+	private final Map<D,Entry<D>> entries = new HashMap<>();
+	private final List<Entry<D>> byId = new ArrayList<>();
+	private int[] freeIds = new int[16];
+	private int numFreeIds;
+	
+	/**
+	 * Interns a discriminator, incrementing its reference count.
+	 * 
+	 * @param discriminator the discriminator
+	 * @return the canonical instance equal to {@code discriminator}, or {@code null} if
+	 * {@code discriminator} is {@code null}
+	 */
+	@Nullable
+	public synchronized D intern(@Nullable D discriminator) {
+		if(discriminator == null) {
+			return null;
+		}
+		Entry<D> entry = lookup(discriminator);
+		if(entry == null) {
+			int id = (numFreeIds > 0) ? freeIds[--numFreeIds] : byId.size();
+			entry = new Entry<>(discriminator, id);
+			entries.put(discriminator, entry);
+			canonical.put(discriminator, entry);
+			if(id == byId.size()) {
+				byId.add(entry);
+			}
+			else {
+				byId.set(id, entry);
+			}
+		}
+		entry.refCount++;
+		return entry.discriminator;
+	}
+	
+	/**
+	 * Releases a discriminator, decrementing its reference count. If the reference count drops
+	 * to zero, the discriminator is removed from the pool.
+	 * 
+	 * @param discriminator the discriminator
+	 * @throws IllegalArgumentException if the discriminator is not contained in this pool
+	 */
+	public synchronized void release(@Nullable D discriminator) {
+		if(discriminator == null) {
+			return;
+		}
+		Entry<D> entry = lookup(discriminator);
+		if(entry == null) {
+			throw new IllegalArgumentException("Discriminator " + discriminator + " is not contained in the pool");
+		}
+		if(--entry.refCount > 0) {
+			return;
+		}
+		entries.remove(entry.discriminator);
+		canonical.remove(entry.discriminator);
+		byId.set(entry.id, null);
+		if(numFreeIds == freeIds.length) {
+			int[] newFreeIds = new int[freeIds.length * 2];
+			System.arraycopy(freeIds, 0, newFreeIds, 0, numFreeIds);
+			freeIds = newFreeIds;
+		}
+		freeIds[numFreeIds++] = entry.id;
+	}
+	
+	/**
+	 * Retrieves the ID of a discriminator. This is fastest if {@code discriminator} is the
+	 * canonical instance, e.g., if it was obtained from an inner node of an attached tree.
+	 * 
+	 * @param discriminator the discriminator
+	 * @return the ID of the discriminator, or {@code -1} if it is not contained in this pool
+	 */
+	public synchronized int getId(@Nullable D discriminator) {
+		if(discriminator == null) {
+			return -1;
+		}
+		Entry<D> entry = lookup(discriminator);
+		return (entry != null) ? entry.id : -1;
+	}
+	
+	/**
+	 * Retrieves the discriminator with the given ID.
+	 * 
+	 * @param id the ID
+	 * @return the canonical discriminator with the given ID, or {@code null} if the ID is
+	 * currently unassigned
+	 */
+	@Nullable
+	public synchronized D get(@Nonnegative int id) {
+		Entry<D> entry = byId.get(id);
+		return (entry != null) ? entry.discriminator : null;
+	}
+	
+	/**
+	 * Retrieves the reference count of a discriminator.
+	 * 
+	 * @param discriminator the discriminator
+	 * @return the number of inner nodes using the discriminator, or {@code 0} if it is
+	 * not contained in this pool
+	 */
+	public synchronized int getRefCount(@Nullable D discriminator) {
+		if(discriminator == null) {
+			return 0;
+		}
+		Entry<D> entry = lookup(discriminator);
+		return (entry != null) ? entry.refCount : 0;
+	}
+	
+	/**
+	 * Retrieves the number of distinct discriminators in this pool.
+	 * @return the number of distinct discriminators
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Retrieves an upper bound (exclusive) for the IDs of the discriminators in this pool,
+	 * e.g., for sizing arrays indexed by discriminator IDs.
+	 * 
+	 * @return the upper bound for discriminator IDs
+	 */
+	public synchronized int getMaxId() {
+		return byId.size();
+	}
+	
+	private Entry<D> lookup(D discriminator) {
+		Entry<D> entry = canonical.get(discriminator);
+		if(entry == null) {
+			entry = entries.get(discriminator);
+		}
+		return entry;
+	}
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.binary.BDTEvaluationListener;
+import com.github.misberner.jdtree.binary.BDTNode;
+import com.github.misberner.jdtree.multi.MDTEvaluationListener;
+import com.github.misberner.jdtree.multi.MDTNode;
+
+/**
+ * Evaluation listener recording the latencies of evaluations in {@link LatencyHistogram}s,
+ * separately per discriminator and per depth of the evaluating node, as well as in total.
+ * Can be used with both binary and multi-way discrimination trees, and is thread-safe.
+ * <p>
+ * Discriminators are compared using their {@link Object#equals(Object) equals} method. The
+ * {@code null} discriminator is not recorded per discriminator, but per depth and in total.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+public class EvaluationLatencyRecorder<D> implements BDTEvaluationListener<D>, MDTEvaluationListener<D,Object> {
+	
+	private final ConcurrentMap<D,LatencyHistogram> byDiscriminator = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Integer,LatencyHistogram> byDepth = new ConcurrentHashMap<>();
+	private final LatencyHistogram total = new LatencyHistogram();
+	
+	@Override
+	public void evaluated(BDTNode<? extends D> node, @Nullable Object object, @Nullable D discriminator, boolean outcome, long nanos) {
+		record(discriminator, node.getDepth(), nanos);
+	}
+	
+	@Override
+	public void evaluated(MDTNode<? extends D,?> node, @Nullable Object object, @Nullable D discriminator, @Nullable Object outcome, long nanos) {
+		record(discriminator, node.getDepth(), nanos);
+	}
+	
+	/**
+	 * Records the latency of an evaluation.
+	 * 
+	 * @param discriminator the evaluated discriminator
+	 * @param depth the depth of the evaluating node
+	 * @param nanos the latency in nanoseconds
+	 */
+	public void record(@Nullable D discriminator, @Nonnegative int depth, long nanos) {
+		if(discriminator != null) {
+			getOrCreate(byDiscriminator, discriminator).record(nanos);
+		}
+		getOrCreate(byDepth, depth).record(nanos);
+		total.record(nanos);
+	}
+	
+	/**
+	 * Retrieves the histogram of latencies of evaluations of the given discriminator.
+	 * @param discriminator the discriminator
+	 * @return the histogram, or {@code null} if no evaluations of the discriminator were recorded
+	 */
+	@Nullable
+	public LatencyHistogram getHistogram(D discriminator) {
+		return byDiscriminator.get(discriminator);
+	}
+	
+	/**
+	 * Retrieves the histogram of latencies of evaluations at the given depth.
+	 * @param depth the depth
+	 * @return the histogram, or {@code null} if no evaluations at the given depth were recorded
+	 */
+	@Nullable
+	public LatencyHistogram getDepthHistogram(@Nonnegative int depth) {
+		return byDepth.get(depth);
+	}
+	
+	/**
+	 * Retrieves the histogram of latencies of all evaluations.
+	 * @return the histogram of all latencies
+	 */
+	@Nonnull
+	public LatencyHistogram getTotalHistogram() {
+		return total;
+	}
+	
+	/**
+	 * Retrieves the discriminators for which evaluations were recorded, ordered by decreasing
+	 * total time spent evaluating them. The first discriminators in the returned list are those
+	 * dominating the overall evaluation time.
+	 * 
+	 * @return the list of discriminators, ordered by decreasing total evaluation time
+	 */
+	@Nonnull
+	public List<D> getDiscriminatorsByTotalTime() {
+		final Map<D,Long> totals = new HashMap<>();
+		for(Map.Entry<D,LatencyHistogram> e : byDiscriminator.entrySet()) {
+			totals.put(e.getKey(), e.getValue().getTotalValue());
+		}
+		List<D> result = new ArrayList<>(totals.keySet());
+		Collections.sort(result, new Comparator<D>() {
+			@Override
+			public int compare(D d1, D d2) {
+				return Long.compare(totals.get(d2), totals.get(d1));
+			}
+		});
+		return result;
+	}
+	
+	/**
+	 * Discards all recorded latencies.
+	 */
+	public void reset() {
+		byDiscriminator.clear();
+		byDepth.clear();
+		total.reset();
+	}
+	
+	private static <K> LatencyHistogram getOrCreate(ConcurrentMap<K,LatencyHistogram> map, K key) {
+		LatencyHistogram hist = map.get(key);
+		if(hist == null) {
+			hist = new LatencyHistogram();
+			LatencyHistogram existing = map.putIfAbsent(key, hist);
+			if(existing != null) {
+				hist = existing;
+			}
+		}
+		return hist;
+	}
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * A thread-safe histogram of latencies (in nanoseconds) with logarithmic-linear buckets, in the
+ * style of HdrHistogram.
+ * <p>
+ * Each power-of-two range of values is divided into {@value #SUB_BUCKETS} linear sub-buckets,
+ * such that the values reported by {@link #getValueAtPercentile(double)} are accurate up
+ * to a relative error of {@code 1/}{@value #SUB_BUCKETS}, using a constant amount of memory.
+ * Values exceeding {@link #MAX_TRACKABLE_VALUE} (about 68 seconds) are counted in the highest
+ * bucket; the minimum, maximum and total are always tracked exactly.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public class LatencyHistogram {
+	
+	private static final int SUB_BUCKET_BITS = 5;
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_MASK = SUB_BUCKETS - 1;
+	private static final int MAX_MAGNITUDE = 36;
+	
+	/**
+	 * The largest value that is tracked accurately.
+	 */
+	public static final long MAX_TRACKABLE_VALUE = (1L << MAX_MAGNITUDE) - 1L;
+	
+	private static final int NUM_BUCKETS = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong totalValue = new AtomicLong();
+	private final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong maxValue = new AtomicLong(Long.MIN_VALUE);
+	
+	/**
+	 * Records a value.
+	 * @param value the value, negative values are recorded as {@code 0}
+	 */
+	public void record(long value) {
+		if(value < 0L) {
+			value = 0L;
+		}
+		counts.incrementAndGet(bucketIndex(value));
+		totalCount.incrementAndGet();
+		totalValue.addAndGet(value);
+		long min;
+		while(value < (min = minValue.get()) && !minValue.compareAndSet(min, value)) {
+			// retry
+		}
+		long max;
+		while(value > (max = maxValue.get()) && !maxValue.compareAndSet(max, value)) {
+			// retry
+		}
+	}
+	
+	/**
+	 * Retrieves the number of recorded values.
+	 * @return the number of recorded values
+	 */
+	public long getTotalCount() {
+		return totalCount.get();
+	}
+	
+	/**
+	 * Retrieves the sum of all recorded values.
+	 * @return the sum of all recorded values
+	 */
+	public long getTotalValue() {
+		return totalValue.get();
+	}
+	
+	/**
+	 * Retrieves the smallest recorded value.
+	 * @return the smallest recorded value, or {@code 0} if no values were recorded
+	 */
+	public long getMin() {
+		long min = minValue.get();
+		return (min == Long.MAX_VALUE) ? 0L : min;
+	}
+	
+	/**
+	 * Retrieves the largest recorded value.
+	 * @return the largest recorded value, or {@code 0} if no values were recorded
+	 */
+	public long getMax() {
+		long max = maxValue.get();
+		return (max == Long.MIN_VALUE) ? 0L : max;
+	}
+	
+	/**
+	 * Retrieves the mean of all recorded values.
+	 * @return the mean, or {@code 0} if no values were recorded
+	 */
+	public double getMean() {
+		long count = totalCount.get();
+		return (count > 0L) ? (double)totalValue.get() / count : 0.0;
+	}
+	
+	/**
+	 * Retrieves the value at the given percentile, i.e., the smallest value such that the given
+	 * percentage of recorded values is less than or equal to it (up to the precision of the
+	 * buckets).
+	 * 
+	 * @param percentile the percentile, between {@code 0} and {@code 100}
+	 * @return the value at the given percentile, or {@code 0} if no values were recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = 0L;
+		for(int i = 0; i < NUM_BUCKETS; i++) {
+			count += counts.get(i);
+		}
+		if(count == 0L) {
+			return 0L;
+		}
+		double fraction = Math.min(Math.max(percentile, 0.0), 100.0) / 100.0;
+		long target = Math.max(1L, (long)Math.ceil(fraction * count));
+		long seen = 0L;
+		for(int i = 0; i < NUM_BUCKETS; i++) {
+			seen += counts.get(i);
+			if(seen >= target) {
+				long highest = (i + 1 < NUM_BUCKETS) ? bucketLowerBound(i + 1) - 1L : Long.MAX_VALUE;
+				return Math.min(highest, getMax());
+			}
+		}
+		return getMax();
+	}
+	
+	/**
+	 * Resets this histogram. Values recorded concurrently may be partially lost.
+	 */
+	public void reset() {
+		for(int i = 0; i < NUM_BUCKETS; i++) {
+			counts.set(i, 0L);
+		}
+		totalCount.set(0L);
+		totalValue.set(0L);
+		minValue.set(Long.MAX_VALUE);
+		maxValue.set(Long.MIN_VALUE);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("count=%d, mean=%.1f, p50=%d, p99=%d, max=%d",
+				getTotalCount(), getMean(), getValueAtPercentile(50.0), getValueAtPercentile(99.0), getMax());
+	}
+	
+	private static int bucketIndex(@Nonnegative long value) {
+		if(value > MAX_TRACKABLE_VALUE) {
+			return NUM_BUCKETS - 1;
+		}
+		if(value < SUB_BUCKETS) {
+			return (int)value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int shift = magnitude - SUB_BUCKET_BITS;
+		return ((shift + 1) << SUB_BUCKET_BITS) + (int)((value >>> shift) & SUB_BUCKET_MASK);
+	}
+	
+	private static long bucketLowerBound(int index) {
+		if(index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = (index >>> SUB_BUCKET_BITS) - 1;
+		return ((long)(SUB_BUCKETS + (index & SUB_BUCKET_MASK))) << shift;
+	}
+
+}
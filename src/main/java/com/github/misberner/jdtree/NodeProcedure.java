@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree;
+
+/**
+ * An action to be performed on nodes, e.g., by
+ * {@link AbstractSubtreeSpliterator#forEachRemaining(NodeProcedure)}.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <N> node type
+ */
+public interface NodeProcedure<N> {
+	/**
+	 * Performs the action on the given node.
+	 * @param node the node
+	 */
+	public void apply(N node);
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Counters for instrumenting the sift operations of a discrimination tree, enabled via
+ * {@code BinaryDTree.enableSiftStatistics} or {@code MultiDTree.enableSiftStatistics}.
+ * <p>
+ * For every node, the number of times it was reached by a sift is recorded. For inner nodes,
+ * this is the number of evaluations of their discriminator, for leaves the number of sifts
+ * ending there. Additionally, the number of evaluations per depth (relative to the root) and the
+ * total number of sifts are recorded.
+ * <p>
+ * Counters are striped: each thread increments the counters of one of several stripes, selected
+ * by its thread ID, such that concurrently sifting threads rarely contend for the same counter.
+ * The stripes are summed up when taking a {@link #snapshot()}. Counter arrays are grown by the
+ * tree upon modifications (for node counters), or on demand (for depth counters). Increments
+ * performed concurrently with growing a counter array may be lost, hence counts are only exact
+ * if the tree and the depth are not extended during concurrent sifts.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public class SiftStatistics {
+	
+	/**
+	 * An immutable snapshot of sift statistics.
+	 */
+	public static final class Snapshot {
+		private final long[] nodeCounts;
+		private final long[] depthCounts;
+		private final long numSifts;
+		private final long numEvaluations;
+		
+		private Snapshot(long[] nodeCounts, long[] depthCounts, long numSifts) {
+			this.nodeCounts = nodeCounts;
+			this.depthCounts = depthCounts;
+			this.numSifts = numSifts;
+			long numEvaluations = 0L;
+			for(long cnt : depthCounts) {
+				numEvaluations += cnt;
+			}
+			this.numEvaluations = numEvaluations;
+		}
+		
+		/**
+		 * Retrieves the number of times the node with the given ID was reached.
+		 * 
+		 * @param nodeId the node ID
+		 * @return the count for the node, i.e., the number of evaluations of its discriminator
+		 * if it is an inner node, or the number of sifts ending in it if it is a leaf
+		 */
+		public long getNodeCount(@Nonnegative int nodeId) {
+			return (nodeId < nodeCounts.length) ? nodeCounts[nodeId] : 0L;
+		}
+		
+		/**
+		 * Retrieves the number of evaluations at the given depth.
+		 * @param depth the depth
+		 * @return the number of evaluations of discriminators of inner nodes at depth {@code depth}
+		 */
+		public long getEvaluations(@Nonnegative int depth) {
+			return (depth < depthCounts.length) ? depthCounts[depth] : 0L;
+		}
+		
+		/**
+		 * Retrieves the maximum depth (exclusive) at which evaluations were recorded.
+		 * @return the maximum depth
+		 */
+		public int getMaxDepth() {
+			int depth = depthCounts.length;
+			while(depth > 0 && depthCounts[depth - 1] == 0L) {
+				depth--;
+			}
+			return depth;
+		}
+		
+		/**
+		 * Retrieves the total number of evaluations.
+		 * @return the total number of evaluations
+		 */
+		public long getTotalEvaluations() {
+			return numEvaluations;
+		}
+		
+		/**
+		 * Retrieves the total number of sifts, i.e., objects that were sifted into a leaf.
+		 * @return the total number of sifts
+		 */
+		public long getTotalSifts() {
+			return numSifts;
+		}
+		
+		/**
+		 * Retrieves the average number of evaluations per sift.
+		 * @return the average number of evaluations per sift, or {@code 0} if no sifts were recorded
+		 */
+		public double getAverageEvaluations() {
+			return (numSifts > 0L) ? (double)numEvaluations / numSifts : 0.0;
+		}
+	}
+	
+	private static final int DEFAULT_DEPTH_CAPACITY = 32;
+	// Distance (in longs) between the sift counters of different stripes, avoiding false sharing
+	private static final int SIFT_COUNT_STRIDE = 16;
+	
+	private final int stripeMask;
+	@Nonnull
+	private volatile AtomicLongArray[] nodeCounts;
+	@Nonnull
+	private volatile AtomicLongArray[] depthCounts;
+	@Nonnull
+	private final AtomicLongArray siftCounts;
+	
+	/**
+	 * Constructor. Uses a number of stripes depending on the number of available processors.
+	 */
+	public SiftStatistics() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param minStripes the minimum number of stripes, which is rounded up to the next
+	 * power of two
+	 */
+	public SiftStatistics(@Nonnegative int minStripes) {
+		int numStripes = Integer.highestOneBit(Math.max(1, minStripes));
+		if(numStripes < minStripes) {
+			numStripes <<= 1;
+		}
+		this.stripeMask = numStripes - 1;
+		this.nodeCounts = newArrays(numStripes, 0);
+		this.depthCounts = newArrays(numStripes, DEFAULT_DEPTH_CAPACITY);
+		this.siftCounts = new AtomicLongArray(numStripes * SIFT_COUNT_STRIDE);
+	}
+	
+	/**
+	 * Records evaluations of the discriminator of an inner node.
+	 * 
+	 * @param nodeId the node ID of the inner node
+	 * @param depth the depth of the inner node
+	 * @param count the number of evaluations
+	 */
+	public void recordEvaluations(@Nonnegative int nodeId, @Nonnegative int depth, @Nonnegative int count) {
+		int stripe = stripe();
+		AtomicLongArray nodeArr = nodeCounts[stripe];
+		if(nodeId >= nodeArr.length()) {
+			nodeArr = growNodeCounts(nodeId + 1)[stripe];
+		}
+		nodeArr.addAndGet(nodeId, count);
+		AtomicLongArray depthArr = depthCounts[stripe];
+		if(depth >= depthArr.length()) {
+			depthArr = growDepthCounts(depth + 1)[stripe];
+		}
+		depthArr.addAndGet(depth, count);
+	}
+	
+	/**
+	 * Records sifts ending in a leaf.
+	 * 
+	 * @param nodeId the node ID of the leaf
+	 * @param count the number of sifts
+	 */
+	public void recordLeaf(@Nonnegative int nodeId, @Nonnegative int count) {
+		int stripe = stripe();
+		AtomicLongArray nodeArr = nodeCounts[stripe];
+		if(nodeId >= nodeArr.length()) {
+			nodeArr = growNodeCounts(nodeId + 1)[stripe];
+		}
+		nodeArr.addAndGet(nodeId, count);
+		siftCounts.addAndGet(stripe * SIFT_COUNT_STRIDE, count);
+	}
+	
+	/**
+	 * Ensures that node counters are available for the given number of nodes.
+	 * @param numNodes the number of nodes
+	 */
+	public void ensureNodeCapacity(@Nonnegative int numNodes) {
+		if(numNodes > nodeCounts[0].length()) {
+			growNodeCounts(numNodes);
+		}
+	}
+	
+	/**
+	 * Moves node counts between node IDs, e.g., after node IDs have been reassigned. All counts
+	 * are read before any count is written. Must not be called concurrently with sifts.
+	 * 
+	 * @param fromIds the node IDs to read counts from
+	 * @param toIds the node IDs to write the counts to
+	 * @param num the number of counts to move
+	 */
+	public void moveNodeCounts(int[] fromIds, int[] toIds, int num) {
+		for(AtomicLongArray arr : nodeCounts) {
+			long[] tmp = new long[num];
+			for(int i = 0; i < num; i++) {
+				tmp[i] = (fromIds[i] < arr.length()) ? arr.get(fromIds[i]) : 0L;
+			}
+			for(int i = 0; i < num; i++) {
+				arr.set(toIds[i], tmp[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Takes a snapshot of the current counts. Counts recorded concurrently may or may not be
+	 * reflected in the snapshot.
+	 * 
+	 * @return a snapshot of the current counts
+	 */
+	@Nonnull
+	public Snapshot snapshot() {
+		return new Snapshot(sum(nodeCounts, false), sum(depthCounts, false), sumSifts(false));
+	}
+	
+	/**
+	 * Takes a snapshot of the current counts, and resets all counters to zero. Every
+	 * recorded count is reflected either in the returned snapshot or in the counters after
+	 * the reset, but never in both.
+	 * 
+	 * @return a snapshot of the counts before the reset
+	 */
+	@Nonnull
+	public Snapshot snapshotAndReset() {
+		return new Snapshot(sum(nodeCounts, true), sum(depthCounts, true), sumSifts(true));
+	}
+	
+	/**
+	 * Resets all counters to zero.
+	 */
+	public void reset() {
+		snapshotAndReset();
+	}
+	
+	private int stripe() {
+		return (int)Thread.currentThread().getId() & stripeMask;
+	}
+	
+	private long sumSifts(boolean reset) {
+		long sum = 0L;
+		for(int i = 0; i <= stripeMask; i++) {
+			int idx = i * SIFT_COUNT_STRIDE;
+			sum += reset ? siftCounts.getAndSet(idx, 0L) : siftCounts.get(idx);
+		}
+		return sum;
+	}
+	
+	private synchronized AtomicLongArray[] growNodeCounts(int minCapacity) {
+		AtomicLongArray[] arrs = nodeCounts;
+		if(arrs[0].length() < minCapacity) {
+			arrs = grow(arrs, minCapacity);
+			nodeCounts = arrs;
+		}
+		return arrs;
+	}
+	
+	private synchronized AtomicLongArray[] growDepthCounts(int minCapacity) {
+		AtomicLongArray[] arrs = depthCounts;
+		if(arrs[0].length() < minCapacity) {
+			arrs = grow(arrs, minCapacity);
+			depthCounts = arrs;
+		}
+		return arrs;
+	}
+	
+	private static AtomicLongArray[] newArrays(int num, int capacity) {
+		AtomicLongArray[] arrs = new AtomicLongArray[num];
+		for(int i = 0; i < num; i++) {
+			arrs[i] = new AtomicLongArray(capacity);
+		}
+		return arrs;
+	}
+	
+	private static AtomicLongArray[] grow(AtomicLongArray[] arrs, int minCapacity) {
+		int oldCapacity = arrs[0].length();
+		int newCapacity = Math.max(oldCapacity + (oldCapacity >> 1), minCapacity);
+		AtomicLongArray[] newArrs = new AtomicLongArray[arrs.length];
+		for(int i = 0; i < arrs.length; i++) {
+			AtomicLongArray newArr = new AtomicLongArray(newCapacity);
+			for(int j = 0; j < oldCapacity; j++) {
+				newArr.set(j, arrs[i].get(j));
+			}
+			newArrs[i] = newArr;
+		}
+		return newArrs;
+	}
+	
+	private static long[] sum(AtomicLongArray[] arrs, boolean reset) {
+		int len = arrs[0].length();
+		long[] result = new long[len];
+		for(AtomicLongArray arr : arrs) {
+			for(int i = 0; i < len; i++) {
+				result[i] += reset ? arr.getAndSet(i, 0L) : arr.get(i);
+			}
+		}
+		return result;
+	}
+
+}
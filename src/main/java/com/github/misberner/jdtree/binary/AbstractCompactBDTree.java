@@ -0,0 +1,477 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.NodeType;
+
+/**
+ * Base class for compact binary discrimination trees, which store the tree structure
+ * in parallel {@code int} arrays instead of as a graph of node objects.
+ * <p>
+ * Nodes are referred to by their (global) node ID. The assignment of node, leaf and inner
+ * node IDs is exactly the same as in {@link BinaryDTree}: the root has node ID {@code 0}
+ * and leaf ID {@code 0}, and splitting a leaf turns it into an inner node with the
+ * next free inner node ID, whose children receive the next two free node IDs. The
+ * child designated as the representative child inherits the leaf ID of the split leaf,
+ * while the other child receives the next free leaf ID.
+ * <p>
+ * How discriminators are stored is up to the concrete subclasses.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public abstract class AbstractCompactBDTree {
+	
+	/**
+	 * The value used for denoting a non-existing node, e.g., the parent of the root
+	 * or the children of a leaf.
+	 */
+	public static final int NO_NODE = -1;
+	
+	private static final int DEFAULT_CAPACITY = 16;
+	
+	// Indexed by node ID
+	int[] parents;
+	int[] children; // false child at 2 * nodeId, true child at 2 * nodeId + 1
+	int[] depths;
+	int[] typeIds;
+	int numNodes;
+	
+	// Indexed by leaf ID
+	int[] leafNodes;
+	int numLeaves;
+	
+	// Indexed by inner node ID
+	int[] innerNodes;
+	int numInner;
+	
+	AbstractCompactBDTree(@Nonnegative int expectedNodes) {
+		int capacity = Math.max(expectedNodes, DEFAULT_CAPACITY);
+		this.parents = new int[capacity];
+		this.children = new int[2 * capacity];
+		this.depths = new int[capacity];
+		this.typeIds = new int[capacity];
+		int leafCapacity = (capacity + 1) / 2 + 1;
+		this.leafNodes = new int[leafCapacity];
+		this.innerNodes = new int[leafCapacity];
+		
+		int root = createNode(NO_NODE);
+		leafNodes[numLeaves] = root;
+		typeIds[root] = numLeaves++;
+	}
+	
+	/**
+	 * Replaces the structure of this tree with the structure of the given tree, preserving
+	 * all node, leaf and inner node IDs. Storing the discriminators is the responsibility of
+	 * the caller.
+	 * 
+	 * @param tree the tree whose structure to copy
+	 */
+	final void copyStructure(BinaryDTree<?> tree) {
+		int numNodes = tree.getNumNodes();
+		int capacity = Math.max(numNodes, DEFAULT_CAPACITY);
+		this.parents = new int[capacity];
+		this.children = new int[2 * capacity];
+		this.depths = new int[capacity];
+		this.typeIds = new int[capacity];
+		this.leafNodes = new int[Math.max(tree.getNumLeaves(), 1)];
+		this.innerNodes = new int[Math.max(tree.getNumInnerNodes(), 1)];
+		
+		for(BDTNode<?> node : tree.getNodes()) {
+			int id = node.getNodeId();
+			BDTNode<?> parent = node.getParent();
+			parents[id] = (parent == null) ? NO_NODE : parent.getNodeId();
+			depths[id] = node.getDepth();
+			int base = id << 1;
+			if(node.isInner()) {
+				int innerId = node.getInnerId();
+				typeIds[id] = innerId;
+				children[base] = node.getFalseChild().getNodeId();
+				children[base + 1] = node.getTrueChild().getNodeId();
+				innerNodes[innerId] = id;
+			}
+			else {
+				int leafId = node.getLeafId();
+				typeIds[id] = leafId;
+				children[base] = NO_NODE;
+				children[base + 1] = NO_NODE;
+				leafNodes[leafId] = id;
+			}
+		}
+		this.numNodes = numNodes;
+		this.numLeaves = tree.getNumLeaves();
+		this.numInner = tree.getNumInnerNodes();
+	}
+	
+	/**
+	 * Retrieves the node ID of the root node. This is always {@code 0}.
+	 * @return the node ID of the root node
+	 */
+	public int getRoot() {
+		return 0;
+	}
+	
+	/**
+	 * Retrieves the number of all nodes.
+	 * @return the number of all nodes
+	 */
+	@Nonnegative
+	public int getNumNodes() {
+		return numNodes;
+	}
+	
+	/**
+	 * Retrieves the number of leaves.
+	 * @return the number of leaves
+	 */
+	@Nonnegative
+	public int getNumLeaves() {
+		return numLeaves;
+	}
+	
+	/**
+	 * Retrieves the number of inner nodes.
+	 * @return the number of inner nodes
+	 */
+	@Nonnegative
+	public int getNumInnerNodes() {
+		return numInner;
+	}
+	
+	/**
+	 * Retrieves the number of nodes of the given type.
+	 * @param type the type of nodes to consider
+	 * @return the number of nodes of the given type
+	 */
+	@Nonnegative
+	public int getNumNodes(NodeType type) {
+		if(type == NodeType.ANY) {
+			return numNodes;
+		}
+		if(type == NodeType.INNER) {
+			return numInner;
+		}
+		return numLeaves;
+	}
+	
+	/**
+	 * Retrieves the node ID of the leaf with the given leaf ID.
+	 * @param leafId the leaf ID
+	 * @return the node ID of the respective leaf
+	 */
+	public int getLeaf(@Nonnegative int leafId) {
+		checkIndex(leafId, numLeaves);
+		return leafNodes[leafId];
+	}
+	
+	/**
+	 * Retrieves the node ID of the inner node with the given inner node ID.
+	 * @param innerId the inner node ID
+	 * @return the node ID of the respective inner node
+	 */
+	public int getInnerNode(@Nonnegative int innerId) {
+		checkIndex(innerId, numInner);
+		return innerNodes[innerId];
+	}
+	
+	/**
+	 * Retrieves the parent of the given node.
+	 * @param node the node ID
+	 * @return the node ID of the parent, or {@link #NO_NODE} if {@code node} is the root
+	 */
+	public int getParent(int node) {
+		return parents[node];
+	}
+	
+	/**
+	 * Retrieves the depth of the given node.
+	 * @param node the node ID
+	 * @return the depth of the node
+	 */
+	public int getDepth(int node) {
+		return depths[node];
+	}
+	
+	/**
+	 * Checks if the given node is a leaf.
+	 * @param node the node ID
+	 * @return {@code true} if the node is a leaf, {@code false} otherwise
+	 */
+	public boolean isLeaf(int node) {
+		return (children[node << 1] == NO_NODE);
+	}
+	
+	/**
+	 * Checks if the given node is an inner node.
+	 * @param node the node ID
+	 * @return {@code true} if the node is an inner node, {@code false} otherwise
+	 */
+	public boolean isInner(int node) {
+		return (children[node << 1] != NO_NODE);
+	}
+	
+	@Nonnull
+	public NodeType getType(int node) {
+		return isInner(node) ? NodeType.INNER : NodeType.LEAF;
+	}
+	
+	public boolean isOfType(int node, NodeType type) {
+		if(type == NodeType.ANY) {
+			return true;
+		}
+		return (type == getType(node));
+	}
+	
+	/**
+	 * Retrieves the leaf ID of the given node, which must be a leaf.
+	 * @param node the node ID
+	 * @return the leaf ID of the node
+	 */
+	@Nonnegative
+	public int getLeafId(int node) {
+		assert isLeaf(node) : "Only leaves have valid leaf ids";
+		return typeIds[node];
+	}
+	
+	/**
+	 * Retrieves the inner node ID of the given node, which must be an inner node.
+	 * @param node the node ID
+	 * @return the inner node ID of the node
+	 */
+	@Nonnegative
+	public int getInnerId(int node) {
+		assert isInner(node) : "Only inner nodes have valid inner node ids";
+		return typeIds[node];
+	}
+	
+	public int getId(int node, NodeType type) {
+		if(type == NodeType.ANY) {
+			return node;
+		}
+		if(type != getType(node)) {
+			throw new IllegalArgumentException();
+		}
+		return typeIds[node];
+	}
+	
+	/**
+	 * Retrieves the "false" child of the given inner node.
+	 * @param node the node ID
+	 * @return the node ID of the "false" child
+	 */
+	public int getFalseChild(int node) {
+		assert isInner(node) : "Only inner nodes have children";
+		return children[node << 1];
+	}
+	
+	/**
+	 * Retrieves the "true" child of the given inner node.
+	 * @param node the node ID
+	 * @return the node ID of the "true" child
+	 */
+	public int getTrueChild(int node) {
+		assert isInner(node) : "Only inner nodes have children";
+		return children[(node << 1) + 1];
+	}
+	
+	/**
+	 * Retrieves the child with the specified label of the given inner node.
+	 * @param node the node ID
+	 * @param label the label specifying which child to retrieve
+	 * @return the node ID of the respective child
+	 */
+	public int getChild(int node, boolean label) {
+		assert isInner(node) : "Only inner nodes have children";
+		return children[(node << 1) + (label ? 1 : 0)];
+	}
+	
+	/**
+	 * Computes the least common ancestor of two nodes.
+	 * @param n1 the first node ID
+	 * @param n2 the second node ID
+	 * @return the node ID of the least common ancestor
+	 */
+	public int leastCommonAncestor(int n1, int n2) {
+		int[] parents = this.parents;
+		int[] depths = this.depths;
+		
+		int curr1 = n1, curr2 = n2;
+		int d1 = depths[curr1], d2 = depths[curr2];
+		
+		while(d1 > d2) {
+			curr1 = parents[curr1];
+			d1--;
+		}
+		while(d2 > d1) {
+			curr2 = parents[curr2];
+			d2--;
+		}
+		while(curr1 != curr2) {
+			curr1 = parents[curr1];
+			curr2 = parents[curr2];
+		}
+		return curr1;
+	}
+	
+	/**
+	 * Checks whether {@code node} lies in the subtree rooted at {@code subtreeRoot}.
+	 * @param node the node ID
+	 * @param subtreeRoot the node ID of the subtree root
+	 * @return {@code true} if {@code subtreeRoot} is an ancestor of (or equal to) {@code node},
+	 * {@code false} otherwise
+	 */
+	public boolean isInSubtree(int node, int subtreeRoot) {
+		int rootDepth = depths[subtreeRoot];
+		int curr = node;
+		for(int d = depths[curr]; d > rootDepth; d--) {
+			curr = parents[curr];
+		}
+		return (curr == subtreeRoot);
+	}
+	
+	/**
+	 * Retrieves the node IDs of all nodes of the given type in the subtree rooted at
+	 * the given node, in the same (pre-)order as
+	 * {@link BinaryDTree#subtreeNodesIterator(BDTNode, NodeType)}.
+	 * 
+	 * @param subtreeRoot the root of the subtree
+	 * @param type the type of nodes to consider
+	 * @return an array containing the node IDs of the respective nodes
+	 */
+	@Nonnull
+	public int[] subtreeNodes(int subtreeRoot, NodeType type) {
+		int[] result = new int[16];
+		int size = 0;
+		
+		int[] stack = new int[16];
+		int sp = 0;
+		stack[sp++] = subtreeRoot;
+		
+		while(sp > 0) {
+			int curr = stack[--sp];
+			int fc = children[curr << 1];
+			if(fc != NO_NODE) {
+				if(sp + 2 > stack.length) {
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				stack[sp++] = children[(curr << 1) + 1];
+				stack[sp++] = fc;
+			}
+			if(isOfType(curr, type)) {
+				if(size == result.length) {
+					result = Arrays.copyOf(result, size * 2);
+				}
+				result[size++] = curr;
+			}
+		}
+		
+		return Arrays.copyOf(result, size);
+	}
+	
+	@Nonnull
+	public int[] subtreeNodes(int subtreeRoot) {
+		return subtreeNodes(subtreeRoot, NodeType.ANY);
+	}
+	
+	@Nonnull
+	public int[] subtreeInnerNodes(int subtreeRoot) {
+		return subtreeNodes(subtreeRoot, NodeType.INNER);
+	}
+	
+	@Nonnull
+	public int[] subtreeLeaves(int subtreeRoot) {
+		return subtreeNodes(subtreeRoot, NodeType.LEAF);
+	}
+	
+	/**
+	 * Performs the structural part of a split operation, turning the given leaf into
+	 * an inner node with two new children. Storing the discriminator for the returned
+	 * inner node ID is the responsibility of the caller.
+	 * 
+	 * @param leaf the leaf to split
+	 * @param repChild the child that will be assigned the leaf ID of {@code leaf}
+	 * @return the inner node ID of the split node
+	 */
+	final int splitStructure(int leaf, boolean repChild) {
+		if(!isLeaf(leaf)) {
+			throw new IllegalArgumentException("Node " + leaf + " is not a leaf");
+		}
+		int oldLeafId = typeIds[leaf];
+		
+		int repLeaf = createNode(leaf);
+		typeIds[repLeaf] = oldLeafId;
+		leafNodes[oldLeafId] = repLeaf;
+		
+		int newLeaf = createNode(leaf);
+		if(numLeaves == leafNodes.length) {
+			leafNodes = Arrays.copyOf(leafNodes, newCapacity(numLeaves));
+		}
+		typeIds[newLeaf] = numLeaves;
+		leafNodes[numLeaves++] = newLeaf;
+		
+		if(numInner == innerNodes.length) {
+			innerNodes = Arrays.copyOf(innerNodes, newCapacity(numInner));
+		}
+		int innerId = numInner++;
+		innerNodes[innerId] = leaf;
+		typeIds[leaf] = innerId;
+		
+		int base = leaf << 1;
+		if(repChild) {
+			children[base] = newLeaf;
+			children[base + 1] = repLeaf;
+		}
+		else {
+			children[base] = repLeaf;
+			children[base + 1] = newLeaf;
+		}
+		
+		return innerId;
+	}
+	
+	private int createNode(int parent) {
+		if(numNodes == parents.length) {
+			int newCapacity = newCapacity(numNodes);
+			parents = Arrays.copyOf(parents, newCapacity);
+			children = Arrays.copyOf(children, 2 * newCapacity);
+			depths = Arrays.copyOf(depths, newCapacity);
+			typeIds = Arrays.copyOf(typeIds, newCapacity);
+		}
+		int id = numNodes++;
+		parents[id] = parent;
+		children[id << 1] = NO_NODE;
+		children[(id << 1) + 1] = NO_NODE;
+		depths[id] = (parent == NO_NODE) ? 0 : depths[parent] + 1;
+		return id;
+	}
+	
+	static int newCapacity(int oldCapacity) {
+		return Math.max(oldCapacity + (oldCapacity >> 1), oldCapacity + 1);
+	}
+	
+	private static void checkIndex(int index, int size) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+		}
+	}
+
+}
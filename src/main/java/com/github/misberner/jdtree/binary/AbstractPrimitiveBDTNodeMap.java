@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.NodeType;
+
+/**
+ * Base class for node maps with primitive values, stored in arrays indexed by node IDs of a
+ * given type (or a bit set).
+ * <p>
+ * The growth semantics are those of {@link ArrayMutableBDTNodeMap}: values can be queried and set
+ * for all nodes of the tree, including nodes that were created after the map; the storage is grown
+ * by a factor of 1.5 (or to the current number of nodes, if larger) when a value is set for a node
+ * that exceeds the current capacity. Nodes for which no value has been set yet are mapped to the
+ * initial value specified upon construction.
+ * <p>
+ * If the map is registered as a {@link BDTListener} with its tree, it grows eagerly upon every
+ * modification, and carries over its values across reassignments of node IDs automatically
+ * (see {@link BDTEvent#getOldIds(NodeType)}).
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public abstract class AbstractPrimitiveBDTNodeMap implements BDTListener<Object> {
+	
+	@Nonnull
+	protected final BinaryDTree<?> dtree;
+	protected final NodeType type;
+	private int lastNum;
+	
+	protected AbstractPrimitiveBDTNodeMap(BinaryDTree<?> dtree, NodeType type) {
+		this.dtree = dtree;
+		this.type = type;
+		this.lastNum = dtree.getNumNodes(type);
+	}
+	
+	/**
+	 * Retrieves the number of values this map can currently hold without growing.
+	 * @return the capacity
+	 */
+	protected abstract int capacity();
+	
+	/**
+	 * Grows the storage to the given capacity, initializing all new entries with the initial value.
+	 * @param newCapacity the new capacity
+	 */
+	protected abstract void grow(int newCapacity);
+	
+	/**
+	 * Copies values between IDs. All values are read before any value is written.
+	 * 
+	 * @param fromIds the IDs to read values from
+	 * @param toIds the IDs to write the values to
+	 * @param num the number of values to copy
+	 */
+	protected abstract void copy(int[] fromIds, int[] toIds, int num);
+	
+	/**
+	 * Retrieves the ID of the node for reading its value.
+	 * 
+	 * @param node the node
+	 * @return the ID of the node, or {@code -1} if it exceeds the capacity (in which case the value
+	 * is the initial value)
+	 */
+	protected final int readId(BDTNode<?> node) {
+		int id = node.getId(type);
+		if(id >= lastNum) {
+			lastNum = dtree.getNumNodes(type);
+			if(id >= lastNum) {
+				throw new IllegalArgumentException("Node " + node + " does not belong to the tree");
+			}
+		}
+		return (id < capacity()) ? id : -1;
+	}
+	
+	/**
+	 * Retrieves the ID of the node for writing its value, growing the storage if necessary.
+	 * 
+	 * @param node the node
+	 * @return the ID of the node
+	 */
+	protected final int writeId(BDTNode<?> node) {
+		int id = node.getId(type);
+		int capacity = capacity();
+		if(id >= lastNum || id >= capacity) {
+			lastNum = dtree.getNumNodes(type);
+			if(id >= lastNum) {
+				throw new IllegalArgumentException("Node " + node + " does not belong to the tree");
+			}
+			if(lastNum > capacity) {
+				grow(Math.max((int)(capacity * 1.5f), lastNum));
+			}
+		}
+		return id;
+	}
+	
+	/**
+	 * Ensures the storage can hold values for all nodes currently in the tree.
+	 */
+	protected final void growToTree() {
+		lastNum = dtree.getNumNodes(type);
+		if(lastNum > capacity()) {
+			grow(Math.max((int)(capacity() * 1.5f), lastNum));
+		}
+	}
+	
+	/**
+	 * Carries over the values across a reassignment of node IDs, as performed by
+	 * {@link BinaryDTree#replaceDiscriminator(BDTNode, Object, BDTEvaluator)}. Afterwards, each node in
+	 * the subtree is mapped to the value previously associated with the node it replaced.
+	 * <p>
+	 * This method must not be called for maps registered as listeners with their tree, as these
+	 * are remapped automatically.
+	 * 
+	 * @param subtreeRoot the root of the subtree whose IDs were reassigned, i.e., the inner node
+	 * whose discriminator was replaced
+	 * @param mapping the mapping returned by {@code replaceDiscriminator}, mapping new nodes to the
+	 * nodes they replaced
+	 */
+	public void remap(BDTNode<?> subtreeRoot, BDTNodeMap<? extends BDTNode<?>> mapping) {
+		growToTree();
+		int[] fromIds = new int[16];
+		int[] toIds = new int[16];
+		int num = 0;
+		
+		Deque<BDTNode<?>> stack = new ArrayDeque<>();
+		stack.push(subtreeRoot);
+		while(!stack.isEmpty()) {
+			BDTNode<?> node = stack.pop();
+			if(node.isInner()) {
+				stack.push(node.getTrueChild());
+				stack.push(node.getFalseChild());
+			}
+			if(node == subtreeRoot || !node.isOfType(type)) {
+				continue;
+			}
+			BDTNode<?> orig = mapping.get(node);
+			if(orig == null) {
+				continue;
+			}
+			if(num == fromIds.length) {
+				fromIds = Arrays.copyOf(fromIds, num * 2);
+				toIds = Arrays.copyOf(toIds, num * 2);
+			}
+			fromIds[num] = orig.getId(type);
+			toIds[num] = node.getId(type);
+			num++;
+		}
+		
+		copy(fromIds, toIds, num);
+	}
+	
+	@Override
+	public void handleEvents(BinaryDTree<?> tree, List<? extends BDTEvent<?>> events) {
+		growToTree();
+		for(BDTEvent<?> event : events) {
+			if(event.getType() == BDTEvent.Type.SUBTREE_REWRITTEN) {
+				int[] oldIds = event.oldIds(type);
+				copy(oldIds, event.newIds(type), oldIds.length);
+			}
+		}
+	}
+
+}
@@ -16,6 +16,7 @@
 package com.github.misberner.jdtree.binary;
 
 import java.util.Arrays;
+import java.util.List;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -23,8 +24,19 @@ import javax.annotation.ParametersAreNonnullByDefault;
 
 import com.github.misberner.jdtree.NodeType;
 
+/**
+ * A mutable node map backed by an array indexed by node IDs of a given type. The array is grown
+ * lazily when values for new nodes are set. Alternatively, the map can be registered as a
+ * {@link BDTListener} with its tree, in which case it grows eagerly upon every modification,
+ * and carries over its values across reassignments of node IDs (see
+ * {@link BDTEvent#getOldIds(NodeType)}).
+ * 
+ * @author Malte Isberner
+ *
+ * @param <V> value type
+ */
 @ParametersAreNonnullByDefault
-public class ArrayMutableBDTNodeMap<V> implements MutableBDTNodeMap<V> {
+public class ArrayMutableBDTNodeMap<V> implements MutableBDTNodeMap<V>, BDTListener<Object> {
 	
 	@Nonnull
 	protected final BinaryDTree<?> dtree;
@@ -106,6 +118,31 @@ public class ArrayMutableBDTNodeMap<V> implements MutableBDTNodeMap<V> {
 		return get(node);
 	}
 	
+	@Override
+	public void handleEvents(BinaryDTree<?> tree, List<? extends BDTEvent<?>> events) {
+		lastNum = updateNumNodes();
+		if(lastNum > values.length) {
+			ensureCapacity();
+		}
+		for(BDTEvent<?> event : events) {
+			if(event.getType() == BDTEvent.Type.SUBTREE_REWRITTEN) {
+				copy(event.oldIds(type), event.newIds(type));
+			}
+		}
+	}
+	
+	// Copies values between IDs, reading all values before writing any
+	private void copy(int[] fromIds, int[] toIds) {
+		int num = fromIds.length;
+		Object[] tmp = new Object[num];
+		for(int i = 0; i < num; i++) {
+			tmp[i] = values[fromIds[i]];
+		}
+		for(int i = 0; i < num; i++) {
+			values[toIds[i]] = tmp[i];
+		}
+	}
+	
 	private void ensureCapacity() {
 		int minNewCapacity = (int)(values.length * 1.5f);
 		int newCapacity = Math.max(minNewCapacity, lastNum);
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Engine for sifting batches of objects into a {@link BinaryDTree} using an
+ * {@link AsyncBDTEvaluator}.
+ * <p>
+ * All objects of a batch are pipelined through the tree at once: whenever the evaluation for an
+ * object completes, the object is moved to the respective child, and its next evaluation is
+ * started. At most {@link #getMaxInFlight()} evaluations are outstanding at any time; further
+ * evaluations are started in FIFO order as outstanding ones complete. No thread is blocked while
+ * waiting for evaluations, hence the throughput is limited only by the evaluator and the bound
+ * on outstanding evaluations.
+ * <p>
+ * Completion callbacks run on the threads completing the evaluation futures, which then also
+ * start subsequent evaluations. The tree must not be modified while an asynchronous sift is in
+ * progress. Asynchronous sifts are not reflected in the sift statistics or evaluation listener
+ * of the tree.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public class AsyncBDTSifter {
+	
+	@Nonnegative
+	private final int maxInFlight;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxInFlight the maximum number of outstanding evaluations
+	 */
+	public AsyncBDTSifter(@Nonnegative int maxInFlight) {
+		if(maxInFlight < 1) {
+			throw new IllegalArgumentException("Maximum number of outstanding evaluations must be positive, is " + maxInFlight);
+		}
+		this.maxInFlight = maxInFlight;
+	}
+	
+	/**
+	 * Retrieves the maximum number of outstanding evaluations.
+	 * @return the maximum number of outstanding evaluations
+	 */
+	@Nonnegative
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+	
+	/**
+	 * Asynchronously sifts a batch of objects into the given tree, starting at the root.
+	 * 
+	 * @see #siftAll(BinaryDTree, BDTNode, Collection, AsyncBDTEvaluator)
+	 */
+	@Nonnull
+	public <D,X> ListenableFuture<List<BDTNode<D>>> siftAll(BinaryDTree<D> tree, Collection<? extends X> objects, AsyncBDTEvaluator<? super X,? super D> evaluator) {
+		return siftAll(tree, tree.getRoot(), objects, evaluator);
+	}
+	
+	/**
+	 * Asynchronously sifts a batch of objects into the given tree.
+	 * <p>
+	 * The returned future fails as soon as any evaluation fails (or yields {@code null}), in which
+	 * case no further evaluations are started. Cancelling the returned future likewise prevents
+	 * further evaluations from being started, but does not cancel outstanding ones.
+	 * 
+	 * @param tree the tree to sift the objects into
+	 * @param start the node to start sifting at
+	 * @param objects the objects to sift
+	 * @param evaluator the asynchronous evaluator
+	 * @return a future for a list containing, for each object (in the iteration order of
+	 * {@code objects}), the leaf the object was sifted into
+	 */
+	@Nonnull
+	public <D,X> ListenableFuture<List<BDTNode<D>>> siftAll(BinaryDTree<D> tree, BDTNode<D> start, Collection<? extends X> objects, AsyncBDTEvaluator<? super X,? super D> evaluator) {
+		SiftRun<D,X> run = new SiftRun<>(start, new ArrayList<>(objects), evaluator);
+		if(run.remaining == 0) {
+			return Futures.immediateFuture(Arrays.asList(run.nodes));
+		}
+		run.pump();
+		return run.result;
+	}
+	
+	private final class SiftRun<D,X> {
+		private final List<? extends X> objects;
+		private final AsyncBDTEvaluator<? super X,? super D> evaluator;
+		private final BDTNode<D>[] nodes;
+		private final SettableFuture<List<BDTNode<D>>> result = SettableFuture.create();
+		
+		// The following fields are guarded by this
+		
+		// Circular queue of the indices of objects ready for their next evaluation
+		private final int[] ready;
+		private int readyHead;
+		private int readySize;
+		private int inFlight;
+		private int remaining;
+		private boolean pumping;
+		
+		@SuppressWarnings("unchecked")
+		public SiftRun(BDTNode<D> start, List<? extends X> objects, AsyncBDTEvaluator<? super X,? super D> evaluator) {
+			this.objects = objects;
+			this.evaluator = evaluator;
+			int num = objects.size();
+			this.nodes = new BDTNode[num];
+			this.ready = new int[num];
+			for(int i = 0; i < num; i++) {
+				nodes[i] = start;
+				if(start.isInner()) {
+					ready[readySize++] = i;
+				}
+			}
+			this.remaining = readySize;
+		}
+		
+		/**
+		 * Starts evaluations for ready objects as long as the bound permits. Only one thread
+		 * starts evaluations at a time; if evaluations complete synchronously, their objects are
+		 * picked up by the loop rather than by recursion.
+		 */
+		public void pump() {
+			synchronized(this) {
+				if(pumping) {
+					return;
+				}
+				pumping = true;
+			}
+			while(true) {
+				final int idx;
+				BDTNode<D> node;
+				synchronized(this) {
+					if(readySize == 0 || inFlight >= maxInFlight || result.isDone()) {
+						pumping = false;
+						return;
+					}
+					idx = ready[readyHead];
+					readyHead = (readyHead + 1) % ready.length;
+					readySize--;
+					inFlight++;
+					node = nodes[idx];
+				}
+				
+				ListenableFuture<Boolean> future;
+				try {
+					future = evaluator.evaluate(objects.get(idx), node.getDiscriminator());
+				}
+				catch(RuntimeException ex) {
+					future = Futures.immediateFailedFuture(ex);
+				}
+				Futures.addCallback(future, new FutureCallback<Boolean>() {
+					@Override
+					public void onSuccess(@Nullable Boolean outcome) {
+						completed(idx, outcome);
+					}
+					@Override
+					public void onFailure(Throwable t) {
+						result.setException(t);
+					}
+				});
+			}
+		}
+		
+		private void completed(int idx, @Nullable Boolean outcome) {
+			if(outcome == null) {
+				result.setException(new NullPointerException("Evaluation outcome is null"));
+				return;
+			}
+			boolean finished;
+			synchronized(this) {
+				inFlight--;
+				BDTNode<D> child = nodes[idx].getChild(outcome.booleanValue());
+				nodes[idx] = child;
+				if(child.isLeaf()) {
+					finished = (--remaining == 0);
+				}
+				else {
+					ready[(readyHead + readySize) % ready.length] = idx;
+					readySize++;
+					finished = false;
+				}
+			}
+			if(finished) {
+				result.set(Arrays.asList(nodes));
+			}
+			else {
+				pump();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Evaluator for determining the outcomes of a whole batch of objects with respect to
+ * a single discriminator in a {@link BinaryDTree}.
+ * <p>
+ * Batch evaluators are used by {@link BinaryDTree#siftAll(java.util.Collection, BDTBatchEvaluator)},
+ * which moves a batch of objects through the tree one level at a time, and at each inner
+ * node evaluates all objects that have reached this node at once.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <X> type of the objects to be evaluated
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+public interface BDTBatchEvaluator<X,D> {
+	
+	/**
+	 * Determines the outcomes for the given objects, with respect to the given discriminator.
+	 * The outcome for the object at index {@code i} of {@code objects} has to be stored
+	 * at index {@code i} of the {@code outcomes} array.
+	 * 
+	 * @param objects the objects to be evaluated. The list may contain {@code null} elements
+	 * @param discriminator the discriminator to be evaluated against
+	 * @param outcomes the array in which to store the outcomes. Its length is at least the size
+	 * of {@code objects}, only the first {@code objects.size()} elements are considered
+	 */
+	public void evaluate(List<? extends X> objects, D discriminator, @Nonnull boolean[] outcomes);
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Adapter for using a (single-object) {@link BDTEvaluator} where a
+ * {@link BDTBatchEvaluator} is expected. The objects of a batch are simply
+ * evaluated one after another.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <X> type of the objects to be evaluated
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+public class BDTBatchEvaluatorAdapter<X,D> implements BDTBatchEvaluator<X,D> {
+	
+	@Nonnull
+	private final BDTEvaluator<? super X,? super D> evaluator;
+	
+	public BDTBatchEvaluatorAdapter(BDTEvaluator<? super X,? super D> evaluator) {
+		this.evaluator = evaluator;
+	}
+
+	@Override
+	public void evaluate(List<? extends X> objects, D discriminator, boolean[] outcomes) {
+		int i = 0;
+		for(X obj : objects) {
+			outcomes[i++] = evaluator.evaluate(obj, discriminator);
+		}
+	}
+
+}
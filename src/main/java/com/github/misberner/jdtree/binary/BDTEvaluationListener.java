@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Listener for the evaluations of discriminators performed by a {@link BinaryDTree}, set via
+ * {@link BinaryDTree#setEvaluationListener(BDTEvaluationListener)}.
+ * <p>
+ * The listener is notified after every evaluation performed by {@code sift}, {@code siftAll}
+ * (including sifts performed by a {@link ParallelBDTSifter}) and
+ * {@link BinaryDTree#replaceDiscriminator(BDTNode, Object, BDTEvaluator) replaceDiscriminator}.
+ * Since it may be invoked concurrently from several threads, implementations must be thread-safe.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+public interface BDTEvaluationListener<D> {
+	/**
+	 * Handles an evaluation.
+	 * 
+	 * @param node the inner node whose discriminator was evaluated, or, in case of
+	 * {@code replaceDiscriminator}, whose discriminator is being replaced
+	 * @param object the evaluated object, which is a leaf in case of {@code replaceDiscriminator}
+	 * @param discriminator the evaluated discriminator
+	 * @param outcome the outcome of the evaluation
+	 * @param nanos the duration of the evaluation in nanoseconds. For batch evaluations, this is
+	 * the duration of the batch divided by the number of objects in the batch.
+	 */
+	public void evaluated(BDTNode<? extends D> node, @Nullable Object object, @Nullable D discriminator, boolean outcome, @Nonnegative long nanos);
+}
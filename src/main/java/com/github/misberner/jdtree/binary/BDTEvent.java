@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.NodeType;
+
+/**
+ * An event describing a modification of a {@link BinaryDTree}. Events are delivered to
+ * {@link BDTListener}s in batches, after the modifications they describe have been completed.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+public final class BDTEvent<D> {
+	
+	private static final int[] EMPTY_IDS = new int[0];
+	
+	public static enum Type {
+		/**
+		 * A new node was added to the tree. The event node is the new node, which has a new
+		 * node ID. If it is a leaf, it either has a new leaf ID, or it has taken over the leaf ID
+		 * of a leaf that was split.
+		 */
+		NODE_CREATED,
+		/**
+		 * A leaf was split. The event node is the former leaf, which is now an inner node with
+		 * a new inner ID, and has retained its node ID. The node creation events for its children
+		 * precede this event.
+		 */
+		LEAF_SPLIT,
+		/**
+		 * The subtree below a node was rewritten, reassigning the node IDs and inner IDs (but not
+		 * the leaf IDs) within the subtree. The event node is the root of the subtree, which itself
+		 * has not been replaced. The {@link BDTEvent#getMapping() mapping} maps every
+		 * node in the rewritten subtree (except for its root) to the node it replaced, and the
+		 * {@link BDTEvent#getOldIds(NodeType) old} and {@link BDTEvent#getNewIds(NodeType) new}
+		 * IDs describe the reassignment of IDs.
+		 */
+		SUBTREE_REWRITTEN
+	}
+	
+	@Nonnull
+	private final Type type;
+	@Nonnull
+	private final BDTNode<D> node;
+	@Nullable
+	private final BDTNodeMap<BDTNode<D>> mapping;
+	// Reassigned node and inner IDs of a SUBTREE_REWRITTEN event, in corresponding order
+	@Nonnull
+	private final int[] oldNodeIds;
+	@Nonnull
+	private final int[] newNodeIds;
+	@Nonnull
+	private final int[] oldInnerIds;
+	@Nonnull
+	private final int[] newInnerIds;
+	
+	BDTEvent(Type type, BDTNode<D> node) {
+		this(type, node, null, EMPTY_IDS, EMPTY_IDS, EMPTY_IDS, EMPTY_IDS);
+	}
+	
+	BDTEvent(Type type, BDTNode<D> node, @Nullable BDTNodeMap<BDTNode<D>> mapping,
+			int[] oldNodeIds, int[] newNodeIds, int[] oldInnerIds, int[] newInnerIds) {
+		this.type = type;
+		this.node = node;
+		this.mapping = mapping;
+		this.oldNodeIds = oldNodeIds;
+		this.newNodeIds = newNodeIds;
+		this.oldInnerIds = oldInnerIds;
+		this.newInnerIds = newInnerIds;
+	}
+	
+	@Nonnull
+	public Type getType() {
+		return type;
+	}
+	
+	@Nonnull
+	public BDTNode<D> getNode() {
+		return node;
+	}
+	
+	/**
+	 * Retrieves the mapping from new to replaced nodes for a {@link Type#SUBTREE_REWRITTEN} event.
+	 * <p>
+	 * Note that if several subtrees were rewritten within a batch, the nodes of an earlier rewrite
+	 * may in turn have been replaced by a later one. Listeners carrying over data across ID
+	 * reassignments should therefore use {@link #getOldIds(NodeType)} and
+	 * {@link #getNewIds(NodeType)}, which remain valid when the events are processed in order.
+	 * 
+	 * @return the mapping, or {@code null} if this event is of another type
+	 */
+	@Nullable
+	public BDTNodeMap<BDTNode<D>> getMapping() {
+		return mapping;
+	}
+	
+	/**
+	 * Retrieves the IDs of the given type that were reassigned by a
+	 * {@link Type#SUBTREE_REWRITTEN} event, as they were before the rewrite. The node whose old ID
+	 * is at some index now has the ID at the same index of {@link #getNewIds(NodeType)}. Leaf IDs
+	 * are never reassigned.
+	 * 
+	 * @param type the ID type
+	 * @return the old IDs, which are empty if this event is of another type
+	 */
+	@Nonnull
+	public int[] getOldIds(NodeType type) {
+		return oldIds(type).clone();
+	}
+	
+	/**
+	 * Retrieves the IDs of the given type assigned by a {@link Type#SUBTREE_REWRITTEN} event.
+	 * 
+	 * @param type the ID type
+	 * @return the new IDs, in the order of {@link #getOldIds(NodeType)}
+	 */
+	@Nonnull
+	public int[] getNewIds(NodeType type) {
+		return newIds(type).clone();
+	}
+	
+	// Internal arrays of old and new IDs, for use within the package
+	@Nonnull
+	int[] oldIds(NodeType type) {
+		return selectIds(type, oldNodeIds, oldInnerIds);
+	}
+	
+	@Nonnull
+	int[] newIds(NodeType type) {
+		return selectIds(type, newNodeIds, newInnerIds);
+	}
+	
+	@Nonnull
+	private static int[] selectIds(NodeType type, int[] nodeIds, int[] innerIds) {
+		if(type == NodeType.ANY) {
+			return nodeIds;
+		}
+		if(type == NodeType.INNER) {
+			return innerIds;
+		}
+		return EMPTY_IDS;
+	}
+	
+	@Override
+	public String toString() {
+		return type + "(" + node + ")";
+	}
+
+}
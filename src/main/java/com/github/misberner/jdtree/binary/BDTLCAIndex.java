@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.AncestorTable;
+
+/**
+ * An index for answering least common ancestor, ancestor and level ancestor queries on a
+ * {@link BinaryDTree} in time logarithmic in the depth of the tree, instead of linear
+ * as {@link BinaryDTree#leastCommonAncestor(BDTNode, BDTNode)}.
+ * <p>
+ * The index stays valid across modifications of the tree: before answering a query, nodes
+ * that were added by {@code split} operations since the last query are incorporated into the
+ * index, in time {@code O(log d)} per node. After a {@code replaceDiscriminator} operation,
+ * which reassigns node IDs, the index is rebuilt from scratch upon the next query.
+ * <p>
+ * Like the tree itself, this class is not thread-safe.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+public class BDTLCAIndex<D> {
+	
+	@Nonnull
+	private final BinaryDTree<D> tree;
+	@Nonnull
+	private final AncestorTable table;
+	private int restructureCount;
+	
+	/**
+	 * Constructor. Creates an index for the given tree.
+	 * 
+	 * @param tree the tree to index
+	 */
+	public BDTLCAIndex(BinaryDTree<D> tree) {
+		this.tree = tree;
+		this.table = new AncestorTable(tree.getNumNodes());
+		this.restructureCount = tree.getRestructureCount();
+		update();
+	}
+	
+	/**
+	 * Incorporates all modifications of the tree into this index. This method is called
+	 * automatically by all query methods.
+	 */
+	public void update() {
+		int treeRestructureCount = tree.getRestructureCount();
+		if(treeRestructureCount != restructureCount) {
+			table.clear();
+			restructureCount = treeRestructureCount;
+		}
+		int numNodes = tree.getNumNodes();
+		int id = table.size();
+		if(id == 0) {
+			table.addRoot();
+			id++;
+		}
+		for(; id < numNodes; id++) {
+			BDTNode<D> node = tree.getNode(id);
+			table.add(id, node.getParent().nodeId);
+		}
+	}
+	
+	@Nonnull
+	public BDTNode<D> leastCommonAncestor(BDTNode<D> n1, BDTNode<D> n2) {
+		update();
+		return tree.getNode(table.leastCommonAncestor(n1.nodeId, n2.nodeId));
+	}
+	
+	@Nullable
+	public D separator(BDTNode<D> n1, BDTNode<D> n2) {
+		if(n1 == n2) {
+			throw new IllegalArgumentException("Identical nodes cannot be separated");
+		}
+		return leastCommonAncestor(n1, n2).getDiscriminator();
+	}
+	
+	/**
+	 * Checks whether a node is an ancestor of another node. Every node is considered an
+	 * ancestor of itself.
+	 * 
+	 * @param ancestor the potential ancestor
+	 * @param node the node
+	 * @return {@code true} if {@code ancestor} is an ancestor of {@code node}, {@code false}
+	 * otherwise
+	 */
+	public boolean isAncestor(BDTNode<D> ancestor, BDTNode<D> node) {
+		update();
+		return table.isAncestor(ancestor.nodeId, node.nodeId);
+	}
+	
+	/**
+	 * Retrieves the ancestor of a node at the given depth.
+	 * 
+	 * @param node the node
+	 * @param depth the depth of the ancestor, must be between {@code 0} and the
+	 * depth of {@code node} (inclusive)
+	 * @return the ancestor of {@code node} at the given depth
+	 */
+	@Nonnull
+	public BDTNode<D> levelAncestor(BDTNode<D> node, int depth) {
+		update();
+		return tree.getNode(table.levelAncestor(node.nodeId, depth));
+	}
+
+}
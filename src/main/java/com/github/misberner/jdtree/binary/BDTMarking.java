@@ -15,43 +15,60 @@
  */
 package com.github.misberner.jdtree.binary;
 
-import java.util.BitSet;
+import java.util.Arrays;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 import com.github.misberner.jdtree.NodeType;
 import com.google.common.base.Predicate;
 
-
+/**
+ * A marking of nodes in a {@link BinaryDTree}, identified by their ID of a given type.
+ * <p>
+ * Markings are realized as an array of epoch stamps: a node is marked if its stamp equals the
+ * current epoch. Therefore, {@link #clear()} takes constant time, which allows efficiently
+ * reusing a marking. The array is grown lazily to the largest ID marked so far.
+ * 
+ * @author Malte Isberner
+ */
 @ParametersAreNonnullByDefault
 public class BDTMarking implements Predicate<BDTNode<?>> {
 	
+	private static final int[] EMPTY_STAMPS = new int[0];
+	
 	@Nonnull
-	private final BitSet marking;
-	private int offset = 0;
+	private int[] stamps;
+	private int epoch = 1;
 	private final NodeType type;
 	
-	public BDTMarking(BinaryDTree<?> dt, NodeType type) {
-		this(dt, type, 0);
+	public BDTMarking() {
+		this(NodeType.ANY);
 	}
 	
-	public BDTMarking(BinaryDTree<?> dt, int offset) {
-		this(dt, NodeType.ANY, offset);
+	public BDTMarking(NodeType type) {
+		this.stamps = EMPTY_STAMPS;
+		this.type = type;
 	}
 	
 	public BDTMarking(BinaryDTree<?> dt) {
-		this(dt, NodeType.ANY, 0);
+		this(dt, NodeType.ANY);
 	}
 	
-	public BDTMarking(BinaryDTree<?> dt, NodeType type, int offset) {
-		this.marking = new BitSet(dt.getNumNodes(type) - offset);
+	public BDTMarking(BinaryDTree<?> dt, NodeType type) {
+		this.stamps = new int[dt.getNumNodes(type)];
 		this.type = type;
-		this.offset = offset;
 	}
 	
+	/**
+	 * Unmarks all nodes, in constant (amortized) time.
+	 */
 	public void clear() {
-		marking.clear();
+		if(++epoch == 0) {
+			Arrays.fill(stamps, 0);
+			epoch = 1;
+		}
 	}
 	
 	
@@ -64,37 +81,35 @@ public class BDTMarking implements Predicate<BDTNode<?>> {
 	}
 	
 	public boolean isMarked(BDTNode<?> node) {
-		int id = nodeId(node);
-		if(id < 0) {
-			// shift offset & markings
-			int shiftAmt = -id;
-			offset -= shiftAmt;
-			
-			// FIXME this should be more efficient
-			for(int idx = marking.length(); (idx = marking.previousSetBit(idx - 1)) >= 0;) {
-				marking.set(idx + offset);
-				marking.clear(idx);
-			}
-			id = 0;
-		}
-		return marking.get(id);
+		int id = node.getId(type);
+		return id < stamps.length && stamps[id] == epoch;
 	}
 	
+	/**
+	 * Marks a node.
+	 * @param node the node to mark
+	 * @return {@code true} if the node was not marked before, {@code false} otherwise
+	 */
 	public boolean mark(BDTNode<?> node) {
-		int id = node.getNodeId();
-		boolean wasMarked = marking.get(id);
-		if(!wasMarked) {
-			marking.set(id);
+		int id = node.getId(type);
+		ensureCapacity(id + 1);
+		if(stamps[id] != epoch) {
+			stamps[id] = epoch;
 			return true;
 		}
 		return false;
 	}
 	
+	/**
+	 * Unmarks a node.
+	 * @param node the node to unmark
+	 * @return {@code true} if the node was marked before, {@code false} otherwise
+	 */
 	public boolean unmark(BDTNode<?> node) {
-		int id = node.getNodeId();
-		boolean wasMarked = marking.get(id);
-		if(wasMarked) {
-			marking.set(id, false);
+		int id = node.getId(type);
+		if(id < stamps.length && stamps[id] == epoch) {
+			stamps[id] = 0;
+			return true;
 		}
 		return false;
 	}
@@ -104,10 +119,15 @@ public class BDTMarking implements Predicate<BDTNode<?>> {
 		return isMarked(node);
 	}
 	
-	private int nodeId(BDTNode<?> node) {
-		int nodeId = node.getId(type);
-		return nodeId - offset;
+	private void ensureCapacity(@Nonnegative int minCapacity) {
+		if(minCapacity <= stamps.length) {
+			return;
+		}
+		int newCap = stamps.length + (stamps.length >> 1) + 1;
+		if(newCap < minCapacity) {
+			newCap = minCapacity;
+		}
+		stamps = Arrays.copyOf(stamps, newCap);
 	}
-	
 
 }
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * An index maintaining the depth-first (preorder) order of the nodes of a {@link BinaryDTree},
+ * allowing to check subtree membership in constant time, and to enumerate the leaves of a subtree
+ * in depth-first order in time linear in their number.
+ * <p>
+ * The index is realized as an order-maintenance structure: each node is represented by an
+ * <i>enter</i> and an <i>exit</i> element in a linked list, which reflects the order of entering
+ * and leaving the nodes in a depth-first traversal (visiting the "false" child first). Each element
+ * carries an integer label that is monotone along the list, such that a node lies in the subtree of
+ * another node if and only if its label interval is contained in the label interval of the other
+ * node. Splitting a leaf inserts the elements for the two new leaves between the enter and exit
+ * element of the split leaf, relabeling a small range of elements if there is no gap in the
+ * labels (Dietz and Sleator), at an amortized cost of {@code O(log n)} per split.
+ * <p>
+ * The index stays valid across modifications of the tree: before answering a query, nodes
+ * that were added by {@code split} operations since the last query are incorporated into the
+ * index. After a {@code replaceDiscriminator} operation, which reassigns node IDs, the index is
+ * rebuilt from scratch upon the next query.
+ * <p>
+ * Like the tree itself, this class is not thread-safe.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+public class BDTOrderIndex<D> {
+	
+	private static final long MAX_LABEL = 1L << 62;
+	
+	@Nonnull
+	private final BinaryDTree<D> tree;
+	private int restructureCount;
+	
+	// Element 2 * id is the enter element, 2 * id + 1 the exit element of the node with the given ID
+	private long[] labels;
+	private int[] next;
+	private int[] prev;
+	private int numNodes;
+	
+	/**
+	 * Constructor. Creates an index for the given tree.
+	 * 
+	 * @param tree the tree to index
+	 */
+	public BDTOrderIndex(BinaryDTree<D> tree) {
+		this.tree = tree;
+		int capacity = Math.max(2 * tree.getNumNodes(), 2);
+		this.labels = new long[capacity];
+		this.next = new int[capacity];
+		this.prev = new int[capacity];
+		this.restructureCount = tree.getRestructureCount();
+		update();
+	}
+	
+	/**
+	 * Incorporates all modifications of the tree into this index. This method is called
+	 * automatically by all query methods.
+	 */
+	public void update() {
+		int treeRestructureCount = tree.getRestructureCount();
+		if(treeRestructureCount != restructureCount) {
+			numNodes = 0;
+			restructureCount = treeRestructureCount;
+		}
+		if(numNodes == 0) {
+			labels[0] = 0L;
+			labels[1] = MAX_LABEL;
+			next[0] = 1;
+			prev[1] = 0;
+			next[1] = prev[0] = -1;
+			numNodes = 1;
+		}
+		
+		int treeNodes = tree.getNumNodes();
+		if(treeNodes == numNodes) {
+			return;
+		}
+		ensureCapacity(2 * treeNodes);
+		
+		for(int id = numNodes; id < treeNodes; id++) {
+			BDTNode<D> node = tree.getNode(id);
+			BDTNode<D> parent = node.getParent();
+			int parentId = parent.nodeId;
+			int pos = (parent.getFalseChild() == node) ? 2 * parentId : prev[2 * parentId + 1];
+			insertAfter(pos, 2 * id);
+			insertAfter(2 * id, 2 * id + 1);
+		}
+		numNodes = treeNodes;
+	}
+	
+	/**
+	 * Checks whether a node lies in the subtree rooted at another node, in constant time.
+	 * Every node lies in its own subtree.
+	 * 
+	 * @param node the node
+	 * @param subtreeRoot the root of the subtree
+	 * @return {@code true} if {@code node} lies in the subtree rooted at {@code subtreeRoot},
+	 * {@code false} otherwise
+	 */
+	public boolean isInSubtree(BDTNode<D> node, BDTNode<D> subtreeRoot) {
+		update();
+		int id = node.nodeId, rootId = subtreeRoot.nodeId;
+		return labels[2 * rootId] <= labels[2 * id] && labels[2 * id + 1] <= labels[2 * rootId + 1];
+	}
+	
+	/**
+	 * Compares two nodes with respect to their depth-first preorder.
+	 * 
+	 * @param n1 the first node
+	 * @param n2 the second node
+	 * @return a negative value, zero, or a positive value if {@code n1} occurs before, is
+	 * identical to, or occurs after {@code n2}
+	 */
+	public int compare(BDTNode<D> n1, BDTNode<D> n2) {
+		update();
+		return Long.compare(labels[2 * n1.nodeId], labels[2 * n2.nodeId]);
+	}
+	
+	/**
+	 * Retrieves the leaves of the subtree rooted at the given node, in depth-first order. The leaves
+	 * of a subtree are contiguous in the depth-first order of all leaves, and are enumerated in time
+	 * linear in their number.
+	 * <p>
+	 * The returned iterable is a view, which must not be used after the tree has been modified.
+	 * 
+	 * @param subtreeRoot the root of the subtree
+	 * @return the leaves of the subtree
+	 */
+	@Nonnull
+	public Iterable<BDTNode<D>> subtreeLeaves(final BDTNode<D> subtreeRoot) {
+		update();
+		return new Iterable<BDTNode<D>>() {
+			@Override
+			public Iterator<BDTNode<D>> iterator() {
+				return subtreeLeavesIterator(subtreeRoot);
+			}
+		};
+	}
+	
+	@Nonnull
+	public Iterator<BDTNode<D>> subtreeLeavesIterator(BDTNode<D> subtreeRoot) {
+		update();
+		final int end = 2 * subtreeRoot.nodeId + 1;
+		final int start = 2 * subtreeRoot.nodeId;
+		return new AbstractIterator<BDTNode<D>>() {
+			private int curr = start;
+			@Override
+			protected BDTNode<D> computeNext() {
+				while(curr != end) {
+					int elem = curr;
+					curr = next[curr];
+					if((elem & 1) == 0) {
+						BDTNode<D> node = tree.getNode(elem >>> 1);
+						if(node.isLeaf()) {
+							return node;
+						}
+					}
+				}
+				return endOfData();
+			}
+		};
+	}
+	
+	private void insertAfter(int pos, int elem) {
+		int succ = next[pos];
+		if(labels[succ] - labels[pos] < 2) {
+			relabel(pos);
+			succ = next[pos];
+		}
+		labels[elem] = labels[pos] + (labels[succ] - labels[pos]) / 2;
+		next[elem] = succ;
+		prev[elem] = pos;
+		next[pos] = elem;
+		prev[succ] = elem;
+	}
+	
+	/**
+	 * Relabels the elements following the given element, such that there is a gap of
+	 * at least two after the given element. The range of elements to relabel is chosen
+	 * as the smallest range of {@code j} elements whose labels span more than
+	 * {@code j<sup>2</sup>}.
+	 * 
+	 * @param pos the element after which to create a gap
+	 */
+	private void relabel(int pos) {
+		long base = labels[pos];
+		int curr = next[pos];
+		long j = 1;
+		// The exit element of the root has the maximum label, and is never relabeled
+		while(curr != 1 && labels[curr] - base <= j * j) {
+			curr = next[curr];
+			j++;
+		}
+		long step = (labels[curr] - base) / j;
+		if(step < 2) {
+			// Can only happen close to the maximum label
+			relabelAll();
+			return;
+		}
+		
+		int elem = next[pos];
+		for(long k = 1; k < j; k++) {
+			labels[elem] = base + k * step;
+			elem = next[elem];
+		}
+	}
+	
+	/**
+	 * Distributes the labels of all elements evenly.
+	 */
+	private void relabelAll() {
+		long count = 1L;
+		for(int elem = 0; elem != 1; elem = next[elem]) {
+			count++;
+		}
+		long step = MAX_LABEL / count;
+		long label = 0L;
+		for(int elem = 0; elem != 1; elem = next[elem]) {
+			labels[elem] = label;
+			label += step;
+		}
+	}
+	
+	private void ensureCapacity(int minCapacity) {
+		if(minCapacity <= labels.length) {
+			return;
+		}
+		int newCap = labels.length + (labels.length >> 1);
+		if(newCap < minCapacity) {
+			newCap = minCapacity;
+		}
+		labels = Arrays.copyOf(labels, newCap);
+		next = Arrays.copyOf(next, newCap);
+		prev = Arrays.copyOf(prev, newCap);
+	}
+
+}
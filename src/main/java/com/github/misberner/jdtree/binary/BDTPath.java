@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An immutable position in a binary discrimination tree, i.e., the sequence of
+ * child labels leading from the root to a node.
+ * <p>
+ * Since immutable, structurally shared nodes (see {@link BDTSnapshotNode}) cannot
+ * store parent pointers, paths take over this role: nodes in the same tree version
+ * that have the same position share the same path object, hence the position of a
+ * least common ancestor can be determined by walking up the paths.
+ * 
+ * @author Malte Isberner
+ */
+final class BDTPath {
+	
+	@Nullable
+	final BDTPath parent;
+	final boolean label;
+	final int depth;
+	
+	/**
+	 * Creates the path of a root node.
+	 */
+	BDTPath() {
+		this.parent = null;
+		this.label = false;
+		this.depth = 0;
+	}
+	
+	/**
+	 * Creates the path of a child node.
+	 * @param parent the path of the parent node
+	 * @param label the label of the child
+	 */
+	BDTPath(BDTPath parent, boolean label) {
+		this.parent = parent;
+		this.label = label;
+		this.depth = parent.depth + 1;
+	}
+	
+	/**
+	 * Retrieves the labels along this path, starting at the root.
+	 * @return the labels of this path
+	 */
+	@Nonnull
+	boolean[] labels() {
+		boolean[] labels = new boolean[depth];
+		BDTPath curr = this;
+		for(int i = depth - 1; i >= 0; i--) {
+			labels[i] = curr.label;
+			curr = curr.parent;
+		}
+		return labels;
+	}
+	
+	/**
+	 * Determines the longest common prefix of two paths from the same tree version.
+	 * @param p1 the first path
+	 * @param p2 the second path
+	 * @return the longest common prefix
+	 */
+	@Nonnull
+	static BDTPath commonPrefix(BDTPath p1, BDTPath p2) {
+		BDTPath curr1 = p1, curr2 = p2;
+		while(curr1.depth > curr2.depth) {
+			curr1 = curr1.parent;
+		}
+		while(curr2.depth > curr1.depth) {
+			curr2 = curr2.parent;
+		}
+		while(curr1 != curr2) {
+			curr1 = curr1.parent;
+			curr2 = curr2.parent;
+		}
+		return curr1;
+	}
+}
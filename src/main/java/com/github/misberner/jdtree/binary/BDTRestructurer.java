@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.base.Function;
+
+/**
+ * Greedy restructuring of a subtree of a {@link BinaryDTree} according to leaf weights and
+ * discriminator costs, see
+ * {@link BinaryDTree#restructure(BDTNode, BDTEvaluator, DoubleBDTNodeMap, Function)}.
+ * <p>
+ * The subtree is processed top-down. At each inner node, the discriminator is chosen among those
+ * occurring in its subtree so as to maximize the weighted entropy of the induced partition
+ * of the leaves per unit of cost, and installed using
+ * {@link BinaryDTree#replaceDiscriminator(BDTNode, Object, BDTEvaluator)}. The outcomes of leaves
+ * with respect to discriminators are cached for the duration of the restructuring; outcomes that
+ * are implied by the structure of the tree are never evaluated.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+final class BDTRestructurer<D> implements BDTEvaluator<BDTNode<D>,D> {
+	
+	// Relative improvement required for replacing a discriminator, avoiding churn on ties
+	private static final double MIN_IMPROVEMENT = 1e-9;
+	
+	private static final class Outcomes {
+		private final BitSet known = new BitSet();
+		private final BitSet values = new BitSet();
+	}
+	
+	private final BinaryDTree<D> tree;
+	private final BDTEvaluator<? super BDTNode<D>,? super D> leafEvaluator;
+	private final DoubleBDTNodeMap leafWeights;
+	@Nullable
+	private final Function<? super D,? extends Number> costs;
+	
+	private final Map<D,Outcomes> outcomes = new HashMap<>();
+	
+	public BDTRestructurer(BinaryDTree<D> tree, BDTEvaluator<? super BDTNode<D>,? super D> leafEvaluator,
+			DoubleBDTNodeMap leafWeights, @Nullable Function<? super D,? extends Number> costs) {
+		this.tree = tree;
+		this.leafEvaluator = leafEvaluator;
+		this.leafWeights = leafWeights;
+		this.costs = costs;
+	}
+	
+	public int restructure(BDTNode<D> subtreeRoot) {
+		recordStructuralOutcomes(subtreeRoot);
+		
+		int replaced = 0;
+		
+		Deque<BDTNode<D>> stack = new ArrayDeque<>();
+		stack.push(subtreeRoot);
+		
+		List<BDTNode<D>> leaves = new ArrayList<>();
+		Set<D> candidates = new LinkedHashSet<>();
+		
+		while(!stack.isEmpty()) {
+			BDTNode<D> node = stack.pop();
+			if(node.isLeaf()) {
+				continue;
+			}
+			
+			leaves.clear();
+			candidates.clear();
+			for(BDTNode<D> n : tree.subtreeNodes(node)) {
+				if(n.isLeaf()) {
+					leaves.add(n);
+				}
+				else {
+					candidates.add(n.getDiscriminator());
+				}
+			}
+			
+			// The current discriminator comes first, and is kept unless another one is strictly better
+			D current = node.getDiscriminator();
+			D best = current;
+			double bestScore = score(current, leaves);
+			for(D cand : candidates) {
+				if(cand == current) {
+					continue;
+				}
+				double score = score(cand, leaves);
+				if(score > bestScore * (1.0 + MIN_IMPROVEMENT)) {
+					best = cand;
+					bestScore = score;
+				}
+			}
+			
+			if(best != current) {
+				BDTNodeMap<BDTNode<D>> mapping = tree.replaceDiscriminator(node, best, this);
+				assert mapping != null;
+				replaced++;
+			}
+			
+			stack.push(node.getTrueChild());
+			stack.push(node.getFalseChild());
+		}
+		
+		return replaced;
+	}
+	
+	@Override
+	public boolean evaluate(BDTNode<D> leaf, D discriminator) {
+		Outcomes outc = getOutcomes(discriminator);
+		int leafId = leaf.getLeafId();
+		if(!outc.known.get(leafId)) {
+			outc.values.set(leafId, leafEvaluator.evaluate(leaf, discriminator));
+			outc.known.set(leafId);
+		}
+		return outc.values.get(leafId);
+	}
+	
+	/**
+	 * Computes the weighted entropy of the partition of the given leaves induced by the
+	 * discriminator, divided by the cost of the discriminator.
+	 * 
+	 * @return the score, or {@code 0} if the discriminator does not split the leaves
+	 */
+	private double score(D discriminator, List<BDTNode<D>> leaves) {
+		double trueWeight = 0.0, totalWeight = 0.0;
+		int numTrue = 0;
+		for(BDTNode<D> leaf : leaves) {
+			double weight = leafWeights.get(leaf);
+			totalWeight += weight;
+			if(evaluate(leaf, discriminator)) {
+				trueWeight += weight;
+				numTrue++;
+			}
+		}
+		if(numTrue == 0 || numTrue == leaves.size()) {
+			return 0.0;
+		}
+		
+		double p;
+		if(totalWeight > 0.0) {
+			p = trueWeight / totalWeight;
+		}
+		else {
+			// No observations in this subtree, fall back to uniform weights
+			p = (double)numTrue / leaves.size();
+		}
+		
+		// Leaves with weight zero must still be separated, hence a split isolating
+		// only those is assigned a tiny positive score
+		double entropy = (p <= 0.0 || p >= 1.0) ? Double.MIN_NORMAL : -(p * Math.log(p) + (1.0 - p) * Math.log(1.0 - p));
+		return entropy / cost(discriminator);
+	}
+	
+	private double cost(D discriminator) {
+		if(costs == null) {
+			return 1.0;
+		}
+		double cost = costs.apply(discriminator).doubleValue();
+		if(!(cost > 0.0)) {
+			throw new IllegalArgumentException("Cost of discriminator " + discriminator + " is not positive: " + cost);
+		}
+		return cost;
+	}
+	
+	private Outcomes getOutcomes(D discriminator) {
+		Outcomes outc = outcomes.get(discriminator);
+		if(outc == null) {
+			outc = new Outcomes();
+			outcomes.put(discriminator, outc);
+		}
+		return outc;
+	}
+	
+	/**
+	 * Records the outcomes of all leaves in the given subtree with respect to the discriminators
+	 * of their ancestors in the subtree, which are implied by the structure of the tree.
+	 */
+	private void recordStructuralOutcomes(BDTNode<D> subtreeRoot) {
+		for(BDTNode<D> leaf : tree.subtreeLeaves(subtreeRoot)) {
+			int leafId = leaf.getLeafId();
+			BDTNode<D> curr = leaf;
+			while(curr != subtreeRoot) {
+				BDTNode<D> parent = curr.getParent();
+				Outcomes outc = getOutcomes(parent.getDiscriminator());
+				outc.known.set(leafId);
+				outc.values.set(leafId, parent.getTrueChild() == curr);
+				curr = parent;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * A table of the least common ancestors (and thus separators) of all pairs of leaves
+ * from a given list of leaves of a {@link BinaryDTree}.
+ * <p>
+ * The table is computed offline: a single traversal of the tree determines the least common
+ * ancestors of all pairs of leaves that are adjacent in depth-first order. The least common
+ * ancestor of an arbitrary pair is the shallowest of the least common ancestors of the adjacent
+ * pairs in between. Constructing the table thus takes {@code O(n + k log k)} time, where
+ * {@code n} is the size of the tree and {@code k} the number of leaves, plus the time for
+ * filling the table:
+ * <ul>
+ * <li>an <i>eager</i> table (see {@link #create(BinaryDTree, List)}) is filled upon construction,
+ * in {@code O(k<sup>2</sup>)} time and space, and is limited to {@link #MAX_EAGER_LEAVES} leaves;</li>
+ * <li>a <i>lazy</i> table (see {@link #createLazy(BinaryDTree, List, int)}) fills rows on demand,
+ * each in {@code O(k)} time, and retains only a bounded number of rows.</li>
+ * </ul>
+ * <p>
+ * A separator table reflects the state of the tree upon its construction, and is not affected
+ * by subsequent modifications of the tree. Separator tables are thread-safe.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+public final class BDTSeparatorTable<D> {
+	
+	/**
+	 * The maximum number of leaves of an eager table, such that its {@code k(k-1)/2} entries
+	 * still fit into a single array.
+	 */
+	public static final int MAX_EAGER_LEAVES = 65536;
+	
+	/**
+	 * Creates an eager separator table for all leaves of the given tree, ordered by their leaf IDs.
+	 * 
+	 * @param tree the tree
+	 * @return the separator table
+	 * @throws IllegalArgumentException if the tree has more than {@link #MAX_EAGER_LEAVES} leaves.
+	 * Use {@link #createLazy(BinaryDTree, List, int)} for such trees
+	 */
+	@Nonnull
+	public static <D> BDTSeparatorTable<D> create(BinaryDTree<D> tree) {
+		return create(tree, tree.getLeaves());
+	}
+	
+	/**
+	 * Creates an eager separator table for the given leaves.
+	 * 
+	 * @param tree the tree
+	 * @param leaves the leaves, which must be pairwise distinct
+	 * @return the separator table
+	 * @throws IllegalArgumentException if more than {@link #MAX_EAGER_LEAVES} leaves are given.
+	 * Use {@link #createLazy(BinaryDTree, List, int)} for such lists
+	 */
+	@Nonnull
+	public static <D> BDTSeparatorTable<D> create(BinaryDTree<D> tree, List<? extends BDTNode<D>> leaves) {
+		if(leaves.size() > MAX_EAGER_LEAVES) {
+			throw new IllegalArgumentException("An eager separator table supports at most "
+					+ MAX_EAGER_LEAVES + " leaves, but " + leaves.size() + " were given; use createLazy instead");
+		}
+		BDTSeparatorTable<D> table = new BDTSeparatorTable<>(tree, leaves);
+		table.fillEager();
+		return table;
+	}
+	
+	/**
+	 * Creates a lazy separator table for the given leaves.
+	 * 
+	 * @param tree the tree
+	 * @param leaves the leaves, which must be pairwise distinct
+	 * @param maxCachedRows the maximum number of rows to retain
+	 * @return the separator table
+	 */
+	@Nonnull
+	public static <D> BDTSeparatorTable<D> createLazy(BinaryDTree<D> tree, List<? extends BDTNode<D>> leaves, @Nonnegative int maxCachedRows) {
+		final BDTSeparatorTable<D> table = new BDTSeparatorTable<>(tree, leaves);
+		table.rowCache = CacheBuilder.newBuilder()
+				.maximumSize(maxCachedRows)
+				.build(new CacheLoader<Integer,BDTNode<D>[]>() {
+					@Override
+					public BDTNode<D>[] load(Integer index) {
+						return table.computeRow(index.intValue());
+					}
+				});
+		return table;
+	}
+	
+	@Nonnull
+	private final List<BDTNode<D>> leaves;
+	// Maps leaf IDs to indices in the leaves list (or -1)
+	@Nonnull
+	private final int[] leafIndices;
+	// Position of each leaf (by index) in depth-first order
+	@Nonnull
+	private final int[] positions;
+	// adjacentLCAs[p] is the LCA of the leaves at depth-first positions p and p+1
+	@Nonnull
+	private final BDTNode<D>[] adjacentLCAs;
+	
+	// The eager table, indexed by pairs of depth-first positions (p, q) with p < q
+	@Nullable
+	private BDTNode<D>[] eagerTable;
+	@Nullable
+	private LoadingCache<Integer,BDTNode<D>[]> rowCache;
+	
+	@SuppressWarnings("unchecked")
+	private BDTSeparatorTable(BinaryDTree<D> tree, List<? extends BDTNode<D>> leaves) {
+		int k = leaves.size();
+		this.leaves = Collections.unmodifiableList(new ArrayList<>(leaves));
+		this.leafIndices = new int[tree.getNumLeaves()];
+		Arrays.fill(leafIndices, -1);
+		for(int i = 0; i < k; i++) {
+			BDTNode<D> leaf = leaves.get(i);
+			int leafId = leaf.getLeafId();
+			if(tree.getLeaf(leafId) != leaf) {
+				throw new IllegalArgumentException("Node " + leaf + " is not a leaf of the tree");
+			}
+			if(leafIndices[leafId] != -1) {
+				throw new IllegalArgumentException("Duplicate leaf " + leaf);
+			}
+			leafIndices[leafId] = i;
+		}
+		
+		this.positions = new int[k];
+		this.adjacentLCAs = new BDTNode[Math.max(k - 1, 0)];
+		
+		// Depth-first traversal. The LCA of two leaves adjacent in depth-first order is the
+		// shallowest node at which the traversal turned from the false to the true subtree
+		// in between visiting them.
+		Deque<BDTNode<D>> stack = new ArrayDeque<>();
+		stack.push(tree.getRoot());
+		int pos = 0;
+		BDTNode<D> turn = null;
+		while(!stack.isEmpty() && pos < k) {
+			BDTNode<D> curr = stack.pop();
+			BDTNode<D> parent = curr.getParent();
+			if(parent != null && parent.getTrueChild() == curr) {
+				if(turn == null || parent.getDepth() < turn.getDepth()) {
+					turn = parent;
+				}
+			}
+			if(curr.isInner()) {
+				stack.push(curr.getTrueChild());
+				stack.push(curr.getFalseChild());
+			}
+			else {
+				int idx = leafIndices[curr.getLeafId()];
+				if(idx != -1) {
+					if(pos > 0) {
+						adjacentLCAs[pos - 1] = turn;
+					}
+					positions[idx] = pos++;
+					turn = null;
+				}
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void fillEager() {
+		int k = leaves.size();
+		BDTNode<D>[] table = new BDTNode[(int)((long)k * (k - 1) / 2)];
+		int cursor = 0;
+		for(int p = 0; p < k; p++) {
+			BDTNode<D> lca = null;
+			for(int q = p + 1; q < k; q++) {
+				lca = shallower(lca, adjacentLCAs[q - 1]);
+				table[cursor++] = lca;
+			}
+		}
+		this.eagerTable = table;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private BDTNode<D>[] computeRow(int index) {
+		int k = leaves.size();
+		int p = positions[index];
+		// Row in depth-first order
+		BDTNode<D>[] dfsRow = new BDTNode[k];
+		dfsRow[p] = leaves.get(index);
+		BDTNode<D> lca = null;
+		for(int q = p + 1; q < k; q++) {
+			lca = shallower(lca, adjacentLCAs[q - 1]);
+			dfsRow[q] = lca;
+		}
+		lca = null;
+		for(int q = p - 1; q >= 0; q--) {
+			lca = shallower(lca, adjacentLCAs[q]);
+			dfsRow[q] = lca;
+		}
+		BDTNode<D>[] row = new BDTNode[k];
+		for(int i = 0; i < k; i++) {
+			row[i] = dfsRow[positions[i]];
+		}
+		return row;
+	}
+	
+	private static <D> BDTNode<D> shallower(@Nullable BDTNode<D> curr, BDTNode<D> candidate) {
+		if(curr == null || candidate.getDepth() < curr.getDepth()) {
+			return candidate;
+		}
+		return curr;
+	}
+	
+	/**
+	 * Retrieves the number of leaves in this table.
+	 * @return the number of leaves
+	 */
+	@Nonnegative
+	public int size() {
+		return leaves.size();
+	}
+	
+	/**
+	 * Retrieves the leaves of this table, in the order specified upon construction.
+	 * @return the leaves of this table
+	 */
+	@Nonnull
+	public List<BDTNode<D>> getLeaves() {
+		return leaves;
+	}
+	
+	/**
+	 * Retrieves the index of the given leaf in this table.
+	 * @param leaf the leaf
+	 * @return the index of the leaf, or {@code -1} if the leaf is not contained in this table
+	 */
+	public int indexOf(BDTNode<D> leaf) {
+		if(!leaf.isLeaf()) {
+			return -1;
+		}
+		int leafId = leaf.getLeafId();
+		if(leafId >= leafIndices.length) {
+			return -1;
+		}
+		int idx = leafIndices[leafId];
+		if(idx == -1 || leaves.get(idx) != leaf) {
+			return -1;
+		}
+		return idx;
+	}
+	
+	/**
+	 * Retrieves the least common ancestor of the leaves with the given indices.
+	 * 
+	 * @param i the index of the first leaf
+	 * @param j the index of the second leaf
+	 * @return the least common ancestor
+	 */
+	@Nonnull
+	public BDTNode<D> leastCommonAncestor(int i, int j) {
+		if(i == j) {
+			return leaves.get(i);
+		}
+		if(eagerTable == null) {
+			return rowCache.getUnchecked(i)[j];
+		}
+		int p = positions[i], q = positions[j];
+		if(p > q) {
+			int tmp = p;
+			p = q;
+			q = tmp;
+		}
+		int k = leaves.size();
+		// Offset of row p in the triangular table, plus offset within the row
+		long rowOffset = (long)p * (2 * k - p - 1) / 2;
+		return eagerTable[(int)(rowOffset + q - p - 1)];
+	}
+	
+	/**
+	 * Retrieves the separator of the leaves with the given indices.
+	 * 
+	 * @param i the index of the first leaf
+	 * @param j the index of the second leaf
+	 * @return the separator of the two leaves
+	 */
+	@Nullable
+	public D separator(int i, int j) {
+		if(i == j) {
+			throw new IllegalArgumentException("Identical nodes cannot be separated");
+		}
+		return leastCommonAncestor(i, j).getDiscriminator();
+	}
+	
+	@Nullable
+	public D separator(BDTNode<D> leaf1, BDTNode<D> leaf2) {
+		return separator(checkedIndexOf(leaf1), checkedIndexOf(leaf2));
+	}
+	
+	/**
+	 * Retrieves the least common ancestors of the leaf with the given index and all leaves
+	 * of this table.
+	 * 
+	 * @param i the index of the leaf
+	 * @return the least common ancestors, in the order of the leaves of this table
+	 */
+	@Nonnull
+	public List<BDTNode<D>> row(int i) {
+		BDTNode<D>[] row;
+		if(eagerTable == null) {
+			row = rowCache.getUnchecked(i);
+		}
+		else {
+			row = computeRow(i);
+		}
+		return Collections.unmodifiableList(Arrays.asList(row));
+	}
+	
+	private int checkedIndexOf(BDTNode<D> leaf) {
+		int idx = indexOf(leaf);
+		if(idx == -1) {
+			throw new IllegalArgumentException("Leaf " + leaf + " is not contained in this table");
+		}
+		return idx;
+	}
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.io.ChunkedChannelInputStream;
+import com.github.misberner.jdtree.io.ChunkedChannelOutputStream;
+import com.github.misberner.jdtree.io.Codec;
+import com.github.misberner.jdtree.io.Codecs;
+
+/**
+ * Compact binary serialization format for {@link BinaryDTree}s.
+ * <p>
+ * The format stores the exact assignment of node, leaf and inner node IDs, hence node
+ * maps (or any other data keyed by these IDs) remain valid for the tree that is read back.
+ * After a header consisting of a magic number, the format version and the numbers of nodes,
+ * leaves and inner nodes, the nodes are written in preorder ("false" subtree first). Each node
+ * is stored as its node ID, its type-specific ID, a flag indicating whether it is an inner node,
+ * and, for inner nodes, the discriminator as encoded by the discriminator {@link Codec}.
+ * All IDs and counts are stored as variable-length integers.
+ * <p>
+ * Trees are written to and read from NIO channels directly, without building any intermediate
+ * representation. The data is framed by a {@link ChunkedChannelOutputStream}, so reading a tree
+ * consumes exactly the bytes written for it, and other data may follow it in the same channel.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public final class BDTSerialization {
+	
+	/**
+	 * The magic number at the start of every serialized tree ({@code "JDTB"}).
+	 */
+	public static final int MAGIC = 0x4A445442;
+	
+	/**
+	 * The current format version.
+	 */
+	public static final int VERSION = 1;
+	
+	/**
+	 * Writes a tree to the given channel. The channel is not closed.
+	 * 
+	 * @param tree the tree to write
+	 * @param channel the channel to write to
+	 * @param discriminatorCodec the codec for writing the discriminators
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static <D> void write(BinaryDTree<D> tree, WritableByteChannel channel, Codec<? super D> discriminatorCodec) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new ChunkedChannelOutputStream(channel))) {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			Codecs.writeVarInt(tree.getNumNodes(), out);
+			Codecs.writeVarInt(tree.getNumLeaves(), out);
+			Codecs.writeVarInt(tree.getNumInnerNodes(), out);
+			
+			Deque<BDTNode<D>> stack = new ArrayDeque<>();
+			stack.push(tree.getRoot());
+			
+			while(!stack.isEmpty()) {
+				BDTNode<D> node = stack.pop();
+				Codecs.writeVarInt(node.nodeId, out);
+				Codecs.writeVarInt(node.typeId, out);
+				boolean inner = node.isInner();
+				out.writeBoolean(inner);
+				if(inner) {
+					discriminatorCodec.encode(node.getDiscriminator(), out);
+					stack.push(node.getTrueChild());
+					stack.push(node.getFalseChild());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reads a tree from the given channel. The channel is not closed.
+	 * 
+	 * @param channel the channel to read from
+	 * @param discriminatorCodec the codec for reading the discriminators
+	 * @return the tree
+	 * @throws IOException if an I/O error occurs, or the data is not a valid serialized tree
+	 */
+	@Nonnull
+	@SuppressWarnings("unchecked")
+	public static <D> BinaryDTree<D> read(ReadableByteChannel channel, Codec<? extends D> discriminatorCodec) throws IOException {
+		try(DataInputStream in = new DataInputStream(new ChunkedChannelInputStream(channel))) {
+			int magic = in.readInt();
+			if(magic != MAGIC) {
+				throw new IOException("Not a serialized binary discrimination tree (magic number " + Integer.toHexString(magic) + ")");
+			}
+			int version = in.readUnsignedByte();
+			if(version != VERSION) {
+				throw new IOException("Unsupported format version " + version);
+			}
+			int numNodes = Codecs.readVarInt(in);
+			int numLeaves = Codecs.readVarInt(in);
+			int numInner = Codecs.readVarInt(in);
+			if(numNodes < 1 || numLeaves < 1 || numInner < 0 || numLeaves + numInner != numNodes) {
+				throw new IOException("Inconsistent node counts " + numNodes + "/" + numLeaves + "/" + numInner);
+			}
+			
+			BDTNode<D>[] nodes = new BDTNode[numNodes];
+			BDTNode<D>[] leaves = new BDTNode[numLeaves];
+			BDTNode<D>[] innerNodes = new BDTNode[numInner];
+			
+			// Inner nodes whose "true" child has not yet been read
+			Deque<BDTNode<D>> pending = new ArrayDeque<>();
+			BDTNode<D> root = null;
+			
+			for(int i = 0; i < numNodes; i++) {
+				BDTNode<D> parent = pending.peek();
+				if(i > 0 && parent == null) {
+					throw new IOException("Unexpected node after complete tree");
+				}
+				
+				int nodeId = readId(in, numNodes, nodes, "node");
+				int typeId = Codecs.readVarInt(in);
+				boolean inner = in.readBoolean();
+				BDTNode<D> node = new BDTNode<>(parent, nodeId, typeId);
+				nodes[nodeId] = node;
+				
+				if(parent == null) {
+					root = node;
+				}
+				else if(parent.getFalseChild() == null) {
+					parent.setFalseChild(node);
+				}
+				else {
+					parent.setTrueChild(node);
+					pending.pop();
+				}
+				
+				if(inner) {
+					checkId(typeId, numInner, innerNodes, "inner node");
+					D discriminator = discriminatorCodec.decode(in);
+					node.makeInner(typeId, discriminator, null, null);
+					innerNodes[typeId] = node;
+					pending.push(node);
+				}
+				else {
+					checkId(typeId, numLeaves, leaves, "leaf");
+					leaves[typeId] = node;
+				}
+			}
+			
+			if(!pending.isEmpty()) {
+				throw new IOException("Unexpected end of tree data");
+			}
+			if(in.read() != -1) {
+				throw new IOException("Unexpected trailing data");
+			}
+			
+			return new BinaryDTree<>(root, new ArrayList<>(Arrays.asList(nodes)),
+					new ArrayList<>(Arrays.asList(innerNodes)), new ArrayList<>(Arrays.asList(leaves)));
+		}
+	}
+	
+	private static int readId(DataInputStream in, int bound, Object[] assigned, String kind) throws IOException {
+		int id = Codecs.readVarInt(in);
+		checkId(id, bound, assigned, kind);
+		return id;
+	}
+	
+	private static void checkId(int id, int bound, Object[] assigned, String kind) throws IOException {
+		if(id < 0 || id >= bound) {
+			throw new IOException("Invalid " + kind + " ID " + id);
+		}
+		if(assigned[id] != null) {
+			throw new IOException("Duplicate " + kind + " ID " + id);
+		}
+	}
+	
+	private BDTSerialization() {
+		throw new AssertionError("Constructor should never be invoked");
+	}
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.base.Predicate;
+
+/**
+ * An immutable snapshot of a {@link BinaryDTree}.
+ * <p>
+ * Snapshots are obtained via {@link BinaryDTree#snapshot()}. Since they are immutable, they
+ * may be used by any number of threads without synchronization, even while the tree they
+ * were taken from is being modified. Node, leaf and inner node IDs are those of the tree at
+ * the time the snapshot was taken.
+ * <p>
+ * Different snapshots of the same tree share all nodes that were not affected by the
+ * modifications between them (see {@link BDTSnapshotNode}).
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+public final class BDTSnapshot<D> {
+	
+	@Nonnull
+	private final BDTSnapshotNode<D> root;
+	private final int numNodes;
+	private final int numLeaves;
+	private final int numInner;
+	// The persistent tree this snapshot is a version of, if any
+	@Nullable
+	final Object owner;
+	
+	BDTSnapshot(BDTSnapshotNode<D> root, int numNodes, int numLeaves, int numInner) {
+		this(root, numNodes, numLeaves, numInner, null);
+	}
+	
+	BDTSnapshot(BDTSnapshotNode<D> root, int numNodes, int numLeaves, int numInner, @Nullable Object owner) {
+		this.owner = owner;
+		this.root = root;
+		this.numNodes = numNodes;
+		this.numLeaves = numLeaves;
+		this.numInner = numInner;
+	}
+	
+	@Nonnull
+	public BDTSnapshotNode<D> getRoot() {
+		return root;
+	}
+	
+	@Nonnegative
+	public int getNumNodes() {
+		return numNodes;
+	}
+	
+	@Nonnegative
+	public int getNumLeaves() {
+		return numLeaves;
+	}
+	
+	@Nonnegative
+	public int getNumInnerNodes() {
+		return numInner;
+	}
+	
+	/**
+	 * Checks whether the given node belongs to this snapshot.
+	 * 
+	 * @param node the node
+	 * @return {@code true} if the node belongs to this snapshot, {@code false} otherwise
+	 */
+	public boolean contains(BDTSnapshotNode<D> node) {
+		return find(node.path) == node;
+	}
+	
+	/**
+	 * Retrieves the nodes of this snapshot on the given path.
+	 * 
+	 * @param path the path
+	 * @return the nodes on the path, starting at the root, or {@code null} if
+	 * the path does not exist in this snapshot
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	BDTSnapshotNode<D>[] nodesOnPath(BDTPath path) {
+		BDTSnapshotNode<D>[] result = new BDTSnapshotNode[path.depth + 1];
+		boolean[] labels = path.labels();
+		BDTSnapshotNode<D> curr = root;
+		result[0] = curr;
+		for(int i = 0; i < labels.length; i++) {
+			if(curr.isLeaf()) {
+				return null;
+			}
+			curr = curr.getChild(labels[i]);
+			result[i + 1] = curr;
+		}
+		return result;
+	}
+	
+	@Nullable
+	private BDTSnapshotNode<D> find(BDTPath path) {
+		BDTSnapshotNode<D>[] nodes = nodesOnPath(path);
+		return (nodes == null) ? null : nodes[path.depth];
+	}
+	
+	/**
+	 * Creates a (mutable) {@link BinaryDTree} with the same structure, discriminators and IDs as
+	 * this snapshot.
+	 * 
+	 * @return the binary discrimination tree
+	 */
+	@Nonnull
+	@SuppressWarnings("unchecked")
+	public BinaryDTree<D> toBinaryDTree() {
+		BDTNode<D>[] nodes = new BDTNode[numNodes];
+		BDTNode<D>[] leaves = new BDTNode[numLeaves];
+		BDTNode<D>[] inner = new BDTNode[numInner];
+		
+		BDTNode<D> treeRoot = new BDTNode<>(null, root.getNodeId(), root.isLeaf() ? root.getLeafId() : -1);
+		
+		Deque<BDTSnapshotNode<D>> snapStack = new ArrayDeque<>();
+		Deque<BDTNode<D>> stack = new ArrayDeque<>();
+		snapStack.push(root);
+		stack.push(treeRoot);
+		
+		while(!stack.isEmpty()) {
+			BDTSnapshotNode<D> snap = snapStack.pop();
+			BDTNode<D> node = stack.pop();
+			nodes[snap.getNodeId()] = node;
+			if(snap.isLeaf()) {
+				leaves[snap.getLeafId()] = node;
+				continue;
+			}
+			BDTSnapshotNode<D> fc = snap.getFalseChild(), tc = snap.getTrueChild();
+			BDTNode<D> falseChild = new BDTNode<>(node, fc.getNodeId(), fc.isLeaf() ? fc.getLeafId() : -1);
+			BDTNode<D> trueChild = new BDTNode<>(node, tc.getNodeId(), tc.isLeaf() ? tc.getLeafId() : -1);
+			node.makeInner(snap.getInnerId(), snap.getDiscriminator(), falseChild, trueChild);
+			inner[snap.getInnerId()] = node;
+			
+			snapStack.push(tc);
+			stack.push(trueChild);
+			snapStack.push(fc);
+			stack.push(falseChild);
+		}
+		
+		return new BinaryDTree<>(treeRoot, new ArrayList<>(Arrays.asList(nodes)),
+				new ArrayList<>(Arrays.asList(inner)), new ArrayList<>(Arrays.asList(leaves)));
+	}
+	
+	/**
+	 * Computes the least common ancestor of two nodes of this snapshot.
+	 * 
+	 * @param n1 the first node
+	 * @param n2 the second node
+	 * @return the least common ancestor
+	 */
+	@Nonnull
+	public BDTSnapshotNode<D> leastCommonAncestor(BDTSnapshotNode<D> n1, BDTSnapshotNode<D> n2) {
+		BDTPath lcaPath = BDTPath.commonPrefix(n1.path, n2.path);
+		
+		BDTSnapshotNode<D> curr = root;
+		for(boolean label : lcaPath.labels()) {
+			curr = curr.getChild(label);
+		}
+		return curr;
+	}
+	
+	@Nullable
+	public D separator(BDTSnapshotNode<D> n1, BDTSnapshotNode<D> n2) {
+		if(n1 == n2) {
+			throw new IllegalArgumentException("Identical nodes cannot be separated");
+		}
+		return leastCommonAncestor(n1, n2).getDiscriminator();
+	}
+	
+	@Nonnull
+	public BDTSnapshotNode<D> sift(Predicate<? super D> pred) {
+		return sift(root, pred);
+	}
+	
+	@Nonnull
+	public BDTSnapshotNode<D> sift(BDTSnapshotNode<D> start, Predicate<? super D> pred) {
+		BDTSnapshotNode<D> curr = start;
+		
+		while(curr.isInner()) {
+			curr = curr.getChild(pred.apply(curr.getDiscriminator()));
+		}
+		
+		return curr;
+	}
+	
+	@Nonnull
+	public <X> BDTSnapshotNode<D> sift(@Nullable X object, BDTEvaluator<? super X,? super D> evaluator) {
+		return sift(root, object, evaluator);
+	}
+	
+	@Nonnull
+	public <X> BDTSnapshotNode<D> sift(BDTSnapshotNode<D> start, @Nullable X object, BDTEvaluator<? super X,? super D> evaluator) {
+		BDTSnapshotNode<D> curr = start;
+		
+		while(curr.isInner()) {
+			curr = curr.getChild(evaluator.evaluate(object, curr.getDiscriminator()));
+		}
+		
+		return curr;
+	}
+
+}
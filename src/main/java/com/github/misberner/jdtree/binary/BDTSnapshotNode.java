@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.NodeType;
+
+/**
+ * An immutable node in a {@link BDTSnapshot}.
+ * <p>
+ * Snapshot nodes are structurally shared between different snapshots of the same tree:
+ * a modification of the tree only creates new snapshot nodes for the modified subtree and
+ * for the path leading from the root to it. Consequently, snapshot nodes do not have
+ * parent pointers.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+public final class BDTSnapshotNode<D> {
+	
+	@Nonnull
+	final BDTPath path;
+	private final int nodeId;
+	private final int typeId;
+	@Nullable
+	private final D discriminator;
+	
+	// Only modified during construction, before the node is published
+	private BDTSnapshotNode<D> falseChild;
+	private BDTSnapshotNode<D> trueChild;
+	private final boolean inner;
+	
+	BDTSnapshotNode(BDTPath path, int nodeId, int leafId) {
+		this.path = path;
+		this.nodeId = nodeId;
+		this.typeId = leafId;
+		this.discriminator = null;
+		this.inner = false;
+	}
+	
+	BDTSnapshotNode(BDTPath path, int nodeId, int innerId, @Nullable D discriminator,
+			@Nullable BDTSnapshotNode<D> falseChild, @Nullable BDTSnapshotNode<D> trueChild) {
+		this.path = path;
+		this.nodeId = nodeId;
+		this.typeId = innerId;
+		this.discriminator = discriminator;
+		this.falseChild = falseChild;
+		this.trueChild = trueChild;
+		this.inner = true;
+	}
+	
+	/**
+	 * Retrieves the (global) node id of this node.
+	 * @return the node id of this node
+	 */
+	@Nonnegative
+	public int getNodeId() {
+		return nodeId;
+	}
+	
+	public int getId(NodeType type) {
+		if(type == NodeType.ANY) {
+			return nodeId;
+		}
+		if(type != getType()) {
+			throw new IllegalArgumentException();
+		}
+		return typeId;
+	}
+	
+	/**
+	 * Retrieves the leaf id of this node.
+	 * @return the leaf id of this node.
+	 */
+	@Nonnegative
+	public int getLeafId() {
+		assert isLeaf() : "Only leaves have valid leaf ids";
+		return typeId;
+	}
+	
+	/**
+	 * Retrieves the "inner node" id of this node.
+	 * @return the inner node id of this node
+	 */
+	@Nonnegative
+	public int getInnerId() {
+		assert isInner() : "Only inner nodes have valid inner node ids";
+		return typeId;
+	}
+	
+	/**
+	 * Retrieves the depth of this node
+	 * @return the depth of this node
+	 */
+	public int getDepth() {
+		return path.depth;
+	}
+	
+	public boolean isLeaf() {
+		return !inner;
+	}
+	
+	public boolean isInner() {
+		return inner;
+	}
+	
+	public NodeType getType() {
+		return inner ? NodeType.INNER : NodeType.LEAF;
+	}
+	
+	/**
+	 * Retrieves the discriminator of this node. Calling this method is illegal
+	 * if this node is not an inner node.
+	 * @return the discriminator of this inner node
+	 */
+	@Nullable
+	public D getDiscriminator() {
+		assert isInner() : "Only inner nodes have discriminators";
+		return discriminator;
+	}
+	
+	@Nonnull
+	public BDTSnapshotNode<D> getFalseChild() {
+		assert isInner() : "Only inner nodes have children";
+		return falseChild;
+	}
+	
+	@Nonnull
+	public BDTSnapshotNode<D> getTrueChild() {
+		assert isInner() : "Only inner nodes have children";
+		return trueChild;
+	}
+	
+	@Nonnull
+	public BDTSnapshotNode<D> getChild(boolean label) {
+		assert isInner() : "Only inner nodes have children";
+		return label ? trueChild : falseChild;
+	}
+	
+	/**
+	 * Sets the children of this (inner) node. Must only be called during construction,
+	 * before the node is published.
+	 * 
+	 * @param falseChild the "false" child
+	 * @param trueChild the "true" child
+	 */
+	void setChildren(BDTSnapshotNode<D> falseChild, BDTSnapshotNode<D> trueChild) {
+		assert isInner();
+		this.falseChild = falseChild;
+		this.trueChild = trueChild;
+	}
+	
+	/**
+	 * Creates a copy of this (inner) node in which the child with the given label
+	 * is replaced.
+	 * 
+	 * @param label the label of the child to replace
+	 * @param newChild the new child
+	 * @return the copy
+	 */
+	@Nonnull
+	BDTSnapshotNode<D> withChild(boolean label, BDTSnapshotNode<D> newChild) {
+		assert isInner();
+		if(label) {
+			return new BDTSnapshotNode<>(path, nodeId, typeId, discriminator, falseChild, newChild);
+		}
+		return new BDTSnapshotNode<>(path, nodeId, typeId, discriminator, newChild, trueChild);
+	}
+	
+	/**
+	 * Creates a snapshot of the subtree rooted at the given (mutable) node.
+	 * 
+	 * @param node the root of the subtree
+	 * @param path the path of the subtree root
+	 * @return the snapshot of the subtree
+	 */
+	@Nonnull
+	static <D> BDTSnapshotNode<D> copyOf(BDTNode<D> node, BDTPath path) {
+		BDTSnapshotNode<D> result = create(node, path);
+		
+		Deque<BDTSnapshotNode<D>> snapStack = new ArrayDeque<>();
+		Deque<BDTNode<D>> stack = new ArrayDeque<>();
+		if(node.isInner()) {
+			snapStack.push(result);
+			stack.push(node);
+		}
+		
+		while(!stack.isEmpty()) {
+			BDTNode<D> curr = stack.pop();
+			BDTSnapshotNode<D> snap = snapStack.pop();
+			
+			BDTNode<D> fc = curr.getFalseChild();
+			BDTNode<D> tc = curr.getTrueChild();
+			snap.falseChild = create(fc, new BDTPath(snap.path, false));
+			snap.trueChild = create(tc, new BDTPath(snap.path, true));
+			
+			if(tc.isInner()) {
+				stack.push(tc);
+				snapStack.push(snap.trueChild);
+			}
+			if(fc.isInner()) {
+				stack.push(fc);
+				snapStack.push(snap.falseChild);
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Replaces the subtree at the given position by a snapshot of the given (mutable)
+	 * subtree, copying all nodes on the path from the root to this position.
+	 * 
+	 * @param root the root of the snapshot tree
+	 * @param labels the labels of the path leading to the position of the subtree to replace
+	 * @param newSubtree the root of the subtree
+	 * @return the new root of the snapshot tree
+	 */
+	@Nonnull
+	@SuppressWarnings("unchecked")
+	static <D> BDTSnapshotNode<D> replaceSubtree(BDTSnapshotNode<D> root, boolean[] labels, BDTNode<D> newSubtree) {
+		int depth = labels.length;
+		BDTSnapshotNode<D>[] path = new BDTSnapshotNode[depth + 1];
+		path[0] = root;
+		for(int i = 0; i < depth; i++) {
+			path[i + 1] = path[i].getChild(labels[i]);
+		}
+		
+		BDTSnapshotNode<D> replacement = copyOf(newSubtree, path[depth].path);
+		return replacePath(path, labels, replacement);
+	}
+	
+	/**
+	 * Replaces the last node on a path, copying all nodes on the path.
+	 * 
+	 * @param path the nodes on the path, starting at the root
+	 * @param labels the labels of the path
+	 * @param replacement the replacement for the last node of the path
+	 * @return the new root
+	 */
+	@Nonnull
+	static <D> BDTSnapshotNode<D> replacePath(BDTSnapshotNode<D>[] path, boolean[] labels, BDTSnapshotNode<D> replacement) {
+		BDTSnapshotNode<D> curr = replacement;
+		for(int i = labels.length - 1; i >= 0; i--) {
+			curr = path[i].withChild(labels[i], curr);
+		}
+		return curr;
+	}
+	
+	private static <D> BDTSnapshotNode<D> create(BDTNode<D> node, BDTPath path) {
+		if(node.isLeaf()) {
+			return new BDTSnapshotNode<>(path, node.nodeId, node.typeId);
+		}
+		return new BDTSnapshotNode<>(path, node.nodeId, node.typeId, node.getDiscriminator(), null, null);
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.base.Predicate;
+
+/**
+ * A reusable marking of nodes, identified by their node IDs, whose memory consumption is
+ * proportional to the number of marked nodes rather than to the largest node ID.
+ * <p>
+ * The marked IDs are stored in an open-addressed hash table with linear probing, each entry of
+ * which carries an epoch stamp. An entry is only valid if its stamp belongs to the current epoch,
+ * hence {@link #clear()} takes constant (amortized) time. Unmarking is not supported, so valid
+ * entries never disappear within an epoch, and a probe may stop at the first invalid entry.
+ * If the table is much larger than required by the nodes marked before clearing it, it is
+ * shrunk, so that a marking reused for many small subtrees does not retain the memory once
+ * needed for a large one.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+final class BDTSubtreeMarking implements Predicate<BDTNode<?>> {
+	
+	private static final int MIN_CAPACITY = 16;
+	
+	@Nonnull
+	private int[] ids;
+	@Nonnull
+	private int[] stamps;
+	private int epoch = 1;
+	// Number of nodes marked in the current epoch
+	@Nonnegative
+	private int size;
+	
+	public BDTSubtreeMarking() {
+		allocate(MIN_CAPACITY);
+	}
+	
+	/**
+	 * Unmarks all nodes, in constant (amortized) time.
+	 */
+	public void clear() {
+		if(stamps.length > MIN_CAPACITY && size < (stamps.length >> 3)) {
+			allocate(capacityFor(size));
+		}
+		else if(++epoch == 0) {
+			Arrays.fill(stamps, 0);
+			epoch = 1;
+		}
+		size = 0;
+	}
+	
+	public void markAndPropagate(BDTNode<?> node) {
+		BDTNode<?> curr = node;
+		
+		while(curr != null && mark(curr)) {
+			curr = curr.getParent();
+		}
+	}
+	
+	public boolean isMarked(BDTNode<?> node) {
+		int id = node.nodeId;
+		int mask = ids.length - 1;
+		for(int i = hash(id) & mask; stamps[i] == epoch; i = (i + 1) & mask) {
+			if(ids[i] == id) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Marks a node.
+	 * @param node the node to mark
+	 * @return {@code true} if the node was not marked before, {@code false} otherwise
+	 */
+	public boolean mark(BDTNode<?> node) {
+		int id = node.nodeId;
+		int mask = ids.length - 1;
+		int i = hash(id) & mask;
+		while(stamps[i] == epoch) {
+			if(ids[i] == id) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		ids[i] = id;
+		stamps[i] = epoch;
+		if(++size > (ids.length >> 1)) {
+			rehash(ids.length << 1);
+		}
+		return true;
+	}
+	
+	@Override
+	public boolean apply(BDTNode<?> node) {
+		return isMarked(node);
+	}
+	
+	private void allocate(int capacity) {
+		this.ids = new int[capacity];
+		this.stamps = new int[capacity];
+		this.epoch = 1;
+	}
+	
+	private void rehash(int newCapacity) {
+		int[] oldIds = ids;
+		int[] oldStamps = stamps;
+		int oldEpoch = epoch;
+		allocate(newCapacity);
+		int mask = newCapacity - 1;
+		for(int j = 0; j < oldIds.length; j++) {
+			if(oldStamps[j] == oldEpoch) {
+				int i = hash(oldIds[j]) & mask;
+				while(stamps[i] == epoch) {
+					i = (i + 1) & mask;
+				}
+				ids[i] = oldIds[j];
+				stamps[i] = epoch;
+			}
+		}
+	}
+	
+	private static int capacityFor(int size) {
+		int capacity = MIN_CAPACITY;
+		while((capacity >> 1) < size) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+	
+	private static int hash(int id) {
+		int h = id * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.AbstractSubtreeSpliterator;
+import com.github.misberner.jdtree.NodeType;
+
+/**
+ * Spliterator over the nodes of a subtree of a {@link BinaryDTree}, in the same order as
+ * {@link BinaryDTree#subtreeNodesIterator(BDTNode, NodeType)}.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ * 
+ * @see BinaryDTree#subtreeSpliterator(BDTNode, NodeType)
+ */
+@ParametersAreNonnullByDefault
+public final class BDTSubtreeSpliterator<D> extends AbstractSubtreeSpliterator<BDTNode<D>> {
+	
+	BDTSubtreeSpliterator(@Nullable BDTNode<D> subtreeRoot, NodeType type, long exactSize) {
+		super(subtreeRoot, type, exactSize);
+	}
+
+	@Override
+	protected BDTSubtreeSpliterator<D> createEmpty() {
+		return new BDTSubtreeSpliterator<>(null, getType(), -1L);
+	}
+
+	@Override
+	protected boolean isInner(BDTNode<D> node) {
+		return node.isInner();
+	}
+
+	@Override
+	protected boolean isOfType(BDTNode<D> node, NodeType type) {
+		return node.isOfType(type);
+	}
+
+	@Override
+	protected void pushChildren(BDTNode<D> innerNode) {
+		pushSubtree(innerNode.getTrueChild());
+		pushSubtree(innerNode.getFalseChild());
+	}
+
+}
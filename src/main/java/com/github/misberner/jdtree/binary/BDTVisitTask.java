@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.binary.BDTVisitor.ChildData;
+
+/**
+ * Fork/join task for visiting a subtree in parallel, see
+ * {@link BinaryDTree#visitParallel(BDTVisitor, BDTNode, Object, java.util.concurrent.ForkJoinPool, int)}.
+ * <p>
+ * A task descends from its subtree root as long as exactly one child of the current node
+ * has at least {@code threshold} nodes, visiting the other (small) child sequentially. Once
+ * both children are large, they are visited by two new tasks, and once both are small, they
+ * are visited sequentially. Subtree sizes are determined by counting both children in an
+ * interleaved manner, which stops as soon as one of the counts is known to be below the
+ * threshold or both reached it. The other child is counted further only if no sufficient lower
+ * bound on its size is known from previous counts. The cost of counting is thus bounded by the
+ * cost of sequentially visiting the small children, plus a constant per descended node.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ * @param <P> type of data transferred from parent to children
+ * @param <C> type of data transferred from children to parent
+ */
+@ParametersAreNonnullByDefault
+final class BDTVisitTask<D,P,C> extends RecursiveTask<C> {
+	
+	private static final long serialVersionUID = 1L;
+	
+	// A node on the path descended by a task, whose post-visit is pending
+	private static final class PendingFrame<D,P,C> {
+		private final BDTNode<D> node;
+		private final P parentData;
+		private final boolean smallChildLabel;
+		private final C smallChildResult;
+		
+		public PendingFrame(BDTNode<D> node, P parentData, boolean smallChildLabel, C smallChildResult) {
+			this.node = node;
+			this.parentData = parentData;
+			this.smallChildLabel = smallChildLabel;
+			this.smallChildResult = smallChildResult;
+		}
+	}
+	
+	private final BinaryDTree<D> tree;
+	private final BDTVisitor<D,P,C> visitor;
+	private final BDTNode<D> subtreeRoot;
+	@Nullable
+	private final P rootData;
+	@Nonnegative
+	private final int threshold;
+	// Lower bound on the number of nodes in the subtree
+	@Nonnegative
+	private final long rootSizeBound;
+	
+	public BDTVisitTask(BinaryDTree<D> tree, BDTVisitor<D,P,C> visitor, BDTNode<D> subtreeRoot,
+			@Nullable P rootData, @Nonnegative int threshold) {
+		this(tree, visitor, subtreeRoot, rootData, threshold, 0L);
+	}
+	
+	private BDTVisitTask(BinaryDTree<D> tree, BDTVisitor<D,P,C> visitor, BDTNode<D> subtreeRoot,
+			@Nullable P rootData, @Nonnegative int threshold, @Nonnegative long rootSizeBound) {
+		this.tree = tree;
+		this.visitor = visitor;
+		this.subtreeRoot = subtreeRoot;
+		this.rootData = rootData;
+		this.threshold = threshold;
+		this.rootSizeBound = rootSizeBound;
+	}
+
+	@Override
+	protected C compute() {
+		List<PendingFrame<D,P,C>> pending = new ArrayList<>();
+		ChildData<P> childData = new ChildData<>();
+		Deque<BDTNode<D>> falseStack = new ArrayDeque<>();
+		Deque<BDTNode<D>> trueStack = new ArrayDeque<>();
+		
+		BDTNode<D> node = subtreeRoot;
+		P data = rootData;
+		long sizeBound = rootSizeBound;
+		
+		C result;
+		while(true) {
+			if(node.isLeaf()) {
+				result = visitor.visitLeaf(node, data);
+				break;
+			}
+			childData.reset();
+			if(!visitor.visitInnerPre(node, data, childData)) {
+				result = null;
+				break;
+			}
+			
+			BDTNode<D> falseChild = node.getFalseChild();
+			BDTNode<D> trueChild = node.getTrueChild();
+			P falseData = childData.getFalseChildData();
+			P trueData = childData.getTrueChildData();
+			
+			// Count both children in an interleaved manner, until one of them is exhausted
+			// or both reached the threshold
+			falseStack.clear();
+			falseStack.push(falseChild);
+			trueStack.clear();
+			trueStack.push(trueChild);
+			int count = 0;
+			while(count < threshold && !falseStack.isEmpty() && !trueStack.isEmpty()) {
+				expand(falseStack);
+				expand(trueStack);
+				count++;
+			}
+			
+			if(count >= threshold) {
+				// Both children are large
+				BDTVisitTask<D,P,C> trueTask = new BDTVisitTask<>(tree, visitor, trueChild, trueData, threshold, count);
+				trueTask.fork();
+				BDTVisitTask<D,P,C> falseTask = new BDTVisitTask<>(tree, visitor, falseChild, falseData, threshold, count);
+				C falseResult = falseTask.compute();
+				C trueResult = trueTask.join();
+				result = visitor.visitInnerPost(node, data, falseResult, trueResult);
+				break;
+			}
+			
+			// At least one child is small, its size is count
+			boolean smallLabel = falseStack.isEmpty() ? false : true;
+			Deque<BDTNode<D>> largeStack = smallLabel ? falseStack : trueStack;
+			long largeBound = Math.max(count, sizeBound - 1 - count);
+			if(largeBound < threshold) {
+				// Count the other child up to twice the threshold, such that the next
+				// count along the descended path is only needed after visiting at least
+				// threshold nodes sequentially
+				long limit = 2L * threshold;
+				long largeCount = count;
+				while(largeCount < limit && !largeStack.isEmpty()) {
+					expand(largeStack);
+					largeCount++;
+				}
+				if(largeStack.isEmpty() && largeCount < threshold) {
+					// Both children are small, visit the entire subtree sequentially
+					C falseResult = tree.visit(visitor, falseChild, falseData);
+					C trueResult = tree.visit(visitor, trueChild, trueData);
+					result = visitor.visitInnerPost(node, data, falseResult, trueResult);
+					break;
+				}
+				largeBound = largeCount;
+			}
+			
+			BDTNode<D> smallChild = smallLabel ? trueChild : falseChild;
+			C smallResult = tree.visit(visitor, smallChild, smallLabel ? trueData : falseData);
+			pending.add(new PendingFrame<>(node, data, smallLabel, smallResult));
+			
+			node = smallLabel ? falseChild : trueChild;
+			data = smallLabel ? falseData : trueData;
+			sizeBound = largeBound;
+		}
+		
+		for(int i = pending.size() - 1; i >= 0; i--) {
+			PendingFrame<D,P,C> frame = pending.get(i);
+			C falseResult, trueResult;
+			if(frame.smallChildLabel) {
+				falseResult = result;
+				trueResult = frame.smallChildResult;
+			}
+			else {
+				falseResult = frame.smallChildResult;
+				trueResult = result;
+			}
+			result = visitor.visitInnerPost(frame.node, frame.parentData, falseResult, trueResult);
+		}
+		
+		return result;
+	}
+	
+	private static <D> void expand(Deque<BDTNode<D>> stack) {
+		BDTNode<D> node = stack.pop();
+		if(node.isInner()) {
+			stack.push(node.getTrueChild());
+			stack.push(node.getFalseChild());
+		}
+	}
+}
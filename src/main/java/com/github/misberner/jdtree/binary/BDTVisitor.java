@@ -77,7 +77,8 @@ public interface BDTVisitor<D,P,C> {
 	 * <p>
 	 * The return value indicates whether the children should in fact be visited. Note that
 	 * if {@code false} is returned, {@link #visitInnerPost(BDTNode,Object,Object,Object)}
-	 * will not be called.
+	 * will not be called, and {@code null} is passed to the parent as the data resulting from
+	 * visiting this node.
 	 * 
 	 * @param innerNode the inner node that is being visited
 	 * @param parentData the data originating from the parent node (or from the user,
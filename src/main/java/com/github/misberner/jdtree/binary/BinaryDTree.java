@@ -17,17 +17,27 @@ package com.github.misberner.jdtree.binary;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
+import com.github.misberner.jdtree.AbstractSubtreeSpliterator;
+import com.github.misberner.jdtree.DiscriminatorPool;
+import com.github.misberner.jdtree.NodeProcedure;
 import com.github.misberner.jdtree.NodeType;
+import com.github.misberner.jdtree.SiftStatistics;
 import com.github.misberner.jdtree.binary.BDTVisitor.ChildData;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
@@ -43,6 +53,20 @@ import com.google.common.base.Predicate;
  * Each node in a binary discrimination tree has a (global) node ID, allowing to identify
  * this node among all nodes, and a specific per-type ID (i.e., either a leaf ID
  * or an inner node ID).
+ * <p>
+ * <b>Thread safety:</b> this class is not thread-safe. However, as long as the tree is not
+ * modified, i.e., none of the {@code split}, {@code replaceDiscriminator} methods is being
+ * executed, all other methods of this class and of {@link BDTNode} only read the tree
+ * structure, and may thus safely be called concurrently from several threads. Readers that
+ * need to access the tree while it is being modified can use immutable snapshots
+ * (see {@link #enableSnapshots()} and {@link #snapshot()}). In particular,
+ * this comprises the {@code sift} and {@code siftAll} methods (provided the evaluator is
+ * thread-safe), {@link #leastCommonAncestor(BDTNode, BDTNode)}, {@link #separator(BDTNode, BDTNode)},
+ * the node lookup and subtree iteration methods, as well as {@code extract} and
+ * {@link #transform(Function)}, which only modify the newly created tree.
+ * See {@link ParallelBDTSifter} for sifting batches of objects in parallel, and
+ * {@link #visitParallel(BDTVisitor, BDTNode, Object, ForkJoinPool, int)} for visiting
+ * subtrees in parallel.
  * 
  * @author Malte Isberner
  *
@@ -52,6 +76,12 @@ import com.google.common.base.Predicate;
 public class BinaryDTree<D> {
 
 	
+	/**
+	 * The default minimum size of two sibling subtrees to be visited in parallel by
+	 * {@link #visitParallel(BDTVisitor, BDTNode, Object, ForkJoinPool)}.
+	 */
+	public static final int DEFAULT_PARALLEL_VISIT_THRESHOLD = 4096;
+	
 	@Nonnull
 	private final List<BDTNode<D>> nodes;
 	@Nonnull
@@ -62,6 +92,42 @@ public class BinaryDTree<D> {
 	@Nonnull
 	private final BDTNode<D> root;
 	
+	// Root of the snapshot reflecting the current state, or null if snapshots are disabled
+	@Nullable
+	private BDTSnapshotNode<D> snapshotRoot;
+	@Nullable
+	private volatile BDTSnapshot<D> snapshot;
+	
+	// Markings reused by replaceDiscriminator, created lazily. Their size is proportional
+	// to the largest subtree rewritten since the respective last shrink
+	@Nullable
+	private BDTSubtreeMarking trueMark;
+	@Nullable
+	private BDTSubtreeMarking falseMark;
+	
+	// Number of modifications that reassigned node IDs (as opposed to only adding new nodes)
+	private int restructureCount;
+	
+	// Registered listeners, and events not yet delivered to them
+	@Nonnull
+	private final List<BDTListener<? super D>> listeners = new ArrayList<>();
+	@Nonnull
+	private final List<BDTEvent<D>> pendingEvents = new ArrayList<>();
+	private int batchDepth;
+	
+	// Pool for interning discriminators, or null if discriminators are not interned
+	@Nullable
+	private DiscriminatorPool<D> discriminatorPool;
+	
+	// Counters for instrumenting sifts, or null if instrumentation is disabled
+	@Nullable
+	private SiftStatistics siftStatistics;
+	// Listener notified about evaluations, or null
+	@Nullable
+	private BDTEvaluationListener<? super D> evaluationListener;
+	// Whether sifts take the instrumented path, i.e., statistics or an evaluation listener are set
+	private boolean instrumented;
+	
 	/**
 	 * Initializes a new binary discrimination tree with a single (root) leaf. The root
 	 * has a node ID of {@code 0} and a leaf ID of {@code 0}.
@@ -74,7 +140,7 @@ public class BinaryDTree<D> {
 	}
 	
 	
-	private BinaryDTree(BDTNode<D> root, List<BDTNode<D>> nodes, List<BDTNode<D>> innerNodes, List<BDTNode<D>> leaves) {
+	BinaryDTree(BDTNode<D> root, List<BDTNode<D>> nodes, List<BDTNode<D>> innerNodes, List<BDTNode<D>> leaves) {
 		this.root = root;
 		this.nodes = nodes;
 		this.innerNodes = innerNodes;
@@ -86,6 +152,296 @@ public class BinaryDTree<D> {
 		return root;
 	}
 	
+	/**
+	 * Retrieves the number of modifications that reassigned node IDs, i.e., invocations of
+	 * {@link #replaceDiscriminator(BDTNode, Object, BDTEvaluator)} that changed the tree. Splitting
+	 * leaves only adds new IDs and does not affect this count.
+	 * 
+	 * @return the number of restructuring modifications
+	 */
+	int getRestructureCount() {
+		return restructureCount;
+	}
+	
+	/**
+	 * Enables maintaining snapshots of this tree (see {@link #snapshot()}). This method
+	 * takes time linear in the size of the tree, and must not be called concurrently
+	 * with a modification of the tree. Calling this method if snapshots are already enabled
+	 * has no effect.
+	 * <p>
+	 * Once snapshots are enabled, every modification of the tree copies the modified subtree
+	 * and the path leading to it from the root, and publishes a new snapshot. The cost of
+	 * {@link #split(BDTNode, Object)} thus increases from constant time to time linear in the
+	 * depth of the split leaf.
+	 */
+	public void enableSnapshots() {
+		if(snapshotRoot != null) {
+			return;
+		}
+		snapshotRoot = BDTSnapshotNode.copyOf(root, new BDTPath());
+		publishSnapshot();
+	}
+	
+	/**
+	 * Checks whether snapshots are enabled for this tree.
+	 * @return {@code true} if snapshots are enabled, {@code false} otherwise
+	 * @see #enableSnapshots()
+	 */
+	public boolean isSnapshotsEnabled() {
+		return snapshot != null;
+	}
+	
+	/**
+	 * Retrieves an immutable snapshot of this tree, reflecting its state after the last
+	 * completed modification.
+	 * <p>
+	 * In contrast to all other methods of this class, this method may be called without
+	 * synchronization while the tree is being modified by another thread, and never blocks.
+	 * The returned snapshot is not affected by any subsequent modifications.
+	 * 
+	 * @return a snapshot of this tree
+	 * @throws IllegalStateException if snapshots have not been enabled via
+	 * {@link #enableSnapshots()}
+	 */
+	@Nonnull
+	public BDTSnapshot<D> snapshot() {
+		BDTSnapshot<D> snap = snapshot;
+		if(snap == null) {
+			throw new IllegalStateException("Snapshots are not enabled");
+		}
+		return snap;
+	}
+	
+	/**
+	 * Updates the current snapshot after the subtree rooted at the given node has been
+	 * modified, and publishes it.
+	 * 
+	 * @param subtreeRoot the root of the modified subtree
+	 */
+	private void updateSnapshot(BDTNode<D> subtreeRoot) {
+		if(snapshotRoot == null) {
+			return;
+		}
+		
+		boolean[] labels = new boolean[subtreeRoot.getDepth()];
+		BDTNode<D> curr = subtreeRoot;
+		for(int i = labels.length - 1; i >= 0; i--) {
+			BDTNode<D> parent = curr.getParent();
+			labels[i] = (parent.getTrueChild() == curr);
+			curr = parent;
+		}
+		
+		snapshotRoot = BDTSnapshotNode.replaceSubtree(snapshotRoot, labels, subtreeRoot);
+		publishSnapshot();
+	}
+	
+	private void publishSnapshot() {
+		snapshot = new BDTSnapshot<>(snapshotRoot, nodes.size(), leaves.size(), innerNodes.size());
+	}
+	
+	/**
+	 * Enables instrumentation of the sift operations of this tree (including sifts performed by
+	 * a {@link ParallelBDTSifter}), recording counts in the given statistics object. Replaces
+	 * any previously enabled statistics. As with modifications, this method must not be called
+	 * concurrently with sift operations.
+	 * <p>
+	 * When instrumentation is disabled, sift operations are not affected apart from a single
+	 * field access per operation. When node IDs are reassigned by
+	 * {@link #replaceDiscriminator(BDTNode, Object, BDTEvaluator)}, the counts of the new nodes
+	 * are those of the nodes they replaced.
+	 * 
+	 * @param statistics the statistics object. It should not be shared between several trees,
+	 * as counts are recorded by node ID.
+	 */
+	public void enableSiftStatistics(SiftStatistics statistics) {
+		statistics.ensureNodeCapacity(nodes.size());
+		this.siftStatistics = statistics;
+		updateInstrumented();
+	}
+	
+	/**
+	 * Disables instrumentation of sift operations. This method must not be called concurrently
+	 * with sift operations.
+	 */
+	public void disableSiftStatistics() {
+		this.siftStatistics = null;
+		updateInstrumented();
+	}
+	
+	/**
+	 * Retrieves the statistics object in which sift operations are recorded.
+	 * @return the statistics object, or {@code null} if instrumentation is disabled
+	 */
+	@Nullable
+	public SiftStatistics getSiftStatistics() {
+		return siftStatistics;
+	}
+	
+	/**
+	 * Sets the listener to be notified about every evaluation of a discriminator performed by this
+	 * tree, replacing any previously set listener. As with modifications, this method must not be
+	 * called concurrently with sift operations.
+	 * <p>
+	 * When no listener is set, sift operations are not affected apart from a single field access
+	 * per operation. Otherwise, every evaluation is timed using {@link System#nanoTime()}.
+	 * 
+	 * @param listener the listener, or {@code null} to remove the current listener
+	 * @see BDTEvaluationListener
+	 */
+	public void setEvaluationListener(@Nullable BDTEvaluationListener<? super D> listener) {
+		this.evaluationListener = listener;
+		updateInstrumented();
+	}
+	
+	/**
+	 * Retrieves the listener notified about evaluations.
+	 * @return the evaluation listener, or {@code null} if none is set
+	 */
+	@Nullable
+	public BDTEvaluationListener<? super D> getEvaluationListener() {
+		return evaluationListener;
+	}
+	
+	private void updateInstrumented() {
+		this.instrumented = (siftStatistics != null || evaluationListener != null);
+	}
+	
+	/**
+	 * Attaches a pool for interning the discriminators of this tree, replacing the previously
+	 * attached pool (if any). The discriminators of all inner nodes are interned immediately
+	 * (and released from the previous pool), and discriminators of subsequently created inner
+	 * nodes are interned upon creation. This method takes time linear in the number of inner nodes.
+	 * 
+	 * @param pool the pool to attach, or {@code null} to stop interning discriminators
+	 */
+	public void setDiscriminatorPool(@Nullable DiscriminatorPool<D> pool) {
+		if(pool == discriminatorPool) {
+			return;
+		}
+		for(BDTNode<D> inner : innerNodes) {
+			if(pool != null) {
+				inner.discriminator = pool.intern(inner.discriminator);
+			}
+			if(discriminatorPool != null) {
+				discriminatorPool.release(inner.discriminator);
+			}
+		}
+		this.discriminatorPool = pool;
+	}
+	
+	/**
+	 * Retrieves the pool used for interning the discriminators of this tree.
+	 * @return the discriminator pool, or {@code null} if discriminators are not interned
+	 */
+	@Nullable
+	public DiscriminatorPool<D> getDiscriminatorPool() {
+		return discriminatorPool;
+	}
+	
+	/**
+	 * Retrieves the ID of the discriminator of an inner node in the attached discriminator pool.
+	 * 
+	 * @param innerNode the inner node
+	 * @return the ID of the discriminator of {@code innerNode}
+	 * @throws IllegalStateException if no discriminator pool is attached to this tree
+	 */
+	public int getDiscriminatorId(BDTNode<D> innerNode) {
+		if(discriminatorPool == null) {
+			throw new IllegalStateException("No discriminator pool attached");
+		}
+		return discriminatorPool.getId(innerNode.getDiscriminator());
+	}
+	
+	/**
+	 * Counts the number of distinct discriminators used by the inner nodes of this tree. If a
+	 * discriminator pool is attached, discriminators are compared by identity, otherwise by
+	 * their {@link Object#equals(Object) equals} method.
+	 * 
+	 * @return the number of distinct discriminators
+	 */
+	public int countDistinctDiscriminators() {
+		Set<D> distinct = (discriminatorPool != null)
+				? Collections.newSetFromMap(new IdentityHashMap<D,Boolean>())
+				: new HashSet<D>();
+		for(BDTNode<D> inner : innerNodes) {
+			distinct.add(inner.discriminator);
+		}
+		return distinct.size();
+	}
+	
+	@Nullable
+	private D intern(@Nullable D discriminator) {
+		if(discriminatorPool == null) {
+			return discriminator;
+		}
+		return discriminatorPool.intern(discriminator);
+	}
+	
+	/**
+	 * Registers a listener that is notified of all subsequent modifications of this tree.
+	 * 
+	 * @param listener the listener
+	 * @see BDTListener
+	 */
+	public void addListener(BDTListener<? super D> listener) {
+		listeners.add(listener);
+	}
+	
+	/**
+	 * Removes a previously registered listener.
+	 * 
+	 * @param listener the listener
+	 * @return {@code true} if the listener was registered, {@code false} otherwise
+	 */
+	public boolean removeListener(BDTListener<? super D> listener) {
+		return listeners.remove(listener);
+	}
+	
+	/**
+	 * Begins a batch of modifications. Until the matching call to {@link #endBatch()}, events are
+	 * not delivered to listeners, but collected and delivered as a single batch afterwards.
+	 * Batches may be nested, in which case the events are delivered when the outermost batch ends.
+	 */
+	public void beginBatch() {
+		batchDepth++;
+	}
+	
+	/**
+	 * Ends a batch of modifications begun by {@link #beginBatch()}, delivering all collected events
+	 * to the listeners if this is the outermost batch.
+	 * 
+	 * @throws IllegalStateException if no batch has been begun
+	 */
+	public void endBatch() {
+		if(batchDepth == 0) {
+			throw new IllegalStateException("No batch in progress");
+		}
+		batchDepth--;
+		deliverEvents();
+	}
+	
+	private void addEvent(BDTEvent.Type type, BDTNode<D> node) {
+		if(listeners.isEmpty()) {
+			return;
+		}
+		pendingEvents.add(new BDTEvent<>(type, node));
+	}
+	
+	private void deliverEvents() {
+		if(batchDepth > 0 || pendingEvents.isEmpty()) {
+			return;
+		}
+		List<BDTEvent<D>> events = Collections.unmodifiableList(pendingEvents);
+		try {
+			for(BDTListener<? super D> listener : listeners) {
+				listener.handleEvents(this, events);
+			}
+		}
+		finally {
+			pendingEvents.clear();
+		}
+	}
+	
 	
 	/**
 	 * Retrieves the list of all nodes.
@@ -201,13 +557,16 @@ public class BinaryDTree<D> {
 			
 			if(splitNode.isInner() && splitNode != leaf) {
 				D newDiscriminator = discTransformer.apply(splitNode.getDiscriminator());
-				split(thisNode, newDiscriminator);
+				splitLeaf(thisNode, newDiscriminator, false);
 				
 				stack.push(new SplitRecord<>(thisNode.getFalseChild(), splitNode.getFalseChild()));
 				stack.push(new SplitRecord<>(thisNode.getTrueChild(), splitNode.getTrueChild()));
 			}
 		}
 		
+		updateSnapshot(leaf);
+		deliverEvents();
+		
 		return mapping;
 	}
 	
@@ -240,6 +599,12 @@ public class BinaryDTree<D> {
 	 */
 	@Nonnull
 	public void split(BDTNode<D> leaf, D discriminator, boolean repChild) {
+		splitLeaf(leaf, discriminator, repChild);
+		updateSnapshot(leaf);
+		deliverEvents();
+	}
+	
+	private void splitLeaf(BDTNode<D> leaf, D discriminator, boolean repChild) {
 		int oldLeafId = leaf.getLeafId();
 		BDTNode<D> repLeaf = replaceLeaf(leaf, oldLeafId);
 		leaves.set(oldLeafId, repLeaf);
@@ -254,10 +619,18 @@ public class BinaryDTree<D> {
 			newTrueChild = newLeaf;
 		}
 		makeInner(leaf, discriminator, newFalseChild, newTrueChild);
+		
+		if(siftStatistics != null) {
+			siftStatistics.ensureNodeCapacity(nodes.size());
+		}
+		
+		addEvent(BDTEvent.Type.NODE_CREATED, repLeaf);
+		addEvent(BDTEvent.Type.NODE_CREATED, newLeaf);
+		addEvent(BDTEvent.Type.LEAF_SPLIT, leaf);
 	}
 	
 	private void makeInner(BDTNode<D> leaf, D discriminator, BDTNode<D> newFalseChild, BDTNode<D> newTrueChild) {
-		leaf.makeInner(innerNodes.size(), discriminator, newFalseChild, newTrueChild);
+		leaf.makeInner(innerNodes.size(), intern(discriminator), newFalseChild, newTrueChild);
 		innerNodes.add(leaf);
 	}
 	
@@ -412,7 +785,15 @@ public class BinaryDTree<D> {
 	}
 	
 	@Nonnull
-	public BDTNode<D> sift(BDTNode<D> start, Predicate<? super D> pred) {
+	public BDTNode<D> sift(BDTNode<D> start, final Predicate<? super D> pred) {
+		if(instrumented) {
+			return siftInstrumented(start, null, new BDTEvaluator<Object,D>() {
+				@Override
+				public boolean evaluate(Object object, D discriminator) {
+					return pred.apply(discriminator);
+				}
+			});
+		}
 		BDTNode<D> curr = start;
 		
 		while(curr.isInner()) {
@@ -431,6 +812,9 @@ public class BinaryDTree<D> {
 	
 	@Nonnull
 	public <X> BDTNode<D> sift(BDTNode<D> start, @Nullable X object, BDTEvaluator<? super X,? super D> evaluator) {
+		if(instrumented) {
+			return siftInstrumented(start, object, evaluator);
+		}
 		BDTNode<D> curr = start;
 		
 		while(curr.isInner()) {
@@ -442,6 +826,174 @@ public class BinaryDTree<D> {
 		return curr;
 	}
 	
+	private <X> BDTNode<D> siftInstrumented(BDTNode<D> start, @Nullable X object, BDTEvaluator<? super X,? super D> evaluator) {
+		SiftStatistics stats = siftStatistics;
+		BDTEvaluationListener<? super D> listener = evaluationListener;
+		BDTNode<D> curr = start;
+		
+		while(curr.isInner()) {
+			if(stats != null) {
+				stats.recordEvaluations(curr.nodeId, curr.getDepth(), 1);
+			}
+			D discr = curr.getDiscriminator();
+			boolean eval;
+			if(listener != null) {
+				long startTime = System.nanoTime();
+				eval = evaluator.evaluate(object, discr);
+				listener.evaluated(curr, object, discr, eval, System.nanoTime() - startTime);
+			}
+			else {
+				eval = evaluator.evaluate(object, discr);
+			}
+			curr = curr.getChild(eval);
+		}
+		if(stats != null) {
+			stats.recordLeaf(curr.nodeId, 1);
+		}
+		
+		return curr;
+	}
+	
+	private static final class SiftGroup<D> {
+		private final BDTNode<D> node;
+		private final int[] indices;
+		
+		public SiftGroup(BDTNode<D> node, int[] indices) {
+			this.node = node;
+			this.indices = indices;
+		}
+	}
+	
+	/**
+	 * Sifts a whole batch of objects into the tree, starting at the root.
+	 * 
+	 * @see #siftAll(BDTNode, Collection, BDTBatchEvaluator)
+	 */
+	@Nonnull
+	public <X> List<BDTNode<D>> siftAll(Collection<? extends X> objects, BDTBatchEvaluator<? super X,? super D> evaluator) {
+		return siftAll(root, objects, evaluator);
+	}
+	
+	/**
+	 * Sifts a whole batch of objects into the tree, using a single-object evaluator.
+	 * The objects are moved through the tree in the same level-synchronous fashion as in
+	 * {@link #siftAll(BDTNode, Collection, BDTBatchEvaluator)}, i.e., all evaluations against
+	 * the discriminator of an inner node are performed consecutively.
+	 * 
+	 * @see #siftAll(BDTNode, Collection, BDTBatchEvaluator)
+	 */
+	@Nonnull
+	public <X> List<BDTNode<D>> siftAll(Collection<? extends X> objects, BDTEvaluator<? super X,? super D> evaluator) {
+		return siftAll(root, objects, new BDTBatchEvaluatorAdapter<X,D>(evaluator));
+	}
+	
+	/**
+	 * Sifts a whole batch of objects into the tree.
+	 * <p>
+	 * In contrast to sifting every object individually, the batch is moved through the tree
+	 * one level at a time: all objects that have reached the same inner node are grouped, and
+	 * evaluated against this node's discriminator with a single call to
+	 * {@link BDTBatchEvaluator#evaluate(List, Object, boolean[])}. Hence, the evaluator is
+	 * invoked at most once per inner node.
+	 * 
+	 * @param start the node to start sifting at
+	 * @param objects the objects to sift
+	 * @param evaluator the batch evaluator
+	 * @return a list containing, for each object (in the iteration order of {@code objects}),
+	 * the leaf the object was sifted into
+	 */
+	@Nonnull
+	@SuppressWarnings("unchecked")
+	public <X> List<BDTNode<D>> siftAll(BDTNode<D> start, Collection<? extends X> objects, BDTBatchEvaluator<? super X,? super D> evaluator) {
+		List<? extends X> objList = new ArrayList<>(objects);
+		int num = objList.size();
+		
+		BDTNode<D>[] result = new BDTNode[num];
+		if(num == 0) {
+			return Arrays.asList(result);
+		}
+		
+		int[] allIndices = new int[num];
+		for(int i = 0; i < num; i++) {
+			allIndices[i] = i;
+		}
+		
+		boolean[] outcomes = new boolean[num];
+		
+		// FIFO processing ensures that all groups on one level are processed
+		// before any group on the next level
+		Deque<SiftGroup<D>> queue = new ArrayDeque<>();
+		queue.offer(new SiftGroup<>(start, allIndices));
+		
+		SiftStatistics stats = siftStatistics;
+		BDTEvaluationListener<? super D> listener = evaluationListener;
+		
+		while(!queue.isEmpty()) {
+			SiftGroup<D> group = queue.poll();
+			BDTNode<D> node = group.node;
+			int[] indices = group.indices;
+			
+			if(node.isLeaf()) {
+				for(int idx : indices) {
+					result[idx] = node;
+				}
+				if(stats != null) {
+					stats.recordLeaf(node.nodeId, indices.length);
+				}
+				continue;
+			}
+			
+			if(stats != null) {
+				stats.recordEvaluations(node.nodeId, node.getDepth(), indices.length);
+			}
+			
+			List<X> batch = new ArrayList<>(indices.length);
+			for(int idx : indices) {
+				batch.add(objList.get(idx));
+			}
+			D discr = node.getDiscriminator();
+			if(listener != null) {
+				long startTime = System.nanoTime();
+				evaluator.evaluate(batch, discr, outcomes);
+				long nanos = (System.nanoTime() - startTime) / indices.length;
+				for(int i = 0; i < indices.length; i++) {
+					listener.evaluated(node, batch.get(i), discr, outcomes[i], nanos);
+				}
+			}
+			else {
+				evaluator.evaluate(batch, discr, outcomes);
+			}
+			
+			int numTrue = 0;
+			for(int i = 0; i < indices.length; i++) {
+				if(outcomes[i]) {
+					numTrue++;
+				}
+			}
+			
+			int[] falseIndices = new int[indices.length - numTrue];
+			int[] trueIndices = new int[numTrue];
+			int falsePos = 0, truePos = 0;
+			for(int i = 0; i < indices.length; i++) {
+				if(outcomes[i]) {
+					trueIndices[truePos++] = indices[i];
+				}
+				else {
+					falseIndices[falsePos++] = indices[i];
+				}
+			}
+			
+			if(falseIndices.length > 0) {
+				queue.offer(new SiftGroup<>(node.getFalseChild(), falseIndices));
+			}
+			if(trueIndices.length > 0) {
+				queue.offer(new SiftGroup<>(node.getTrueChild(), trueIndices));
+			}
+		}
+		
+		return Arrays.asList(result);
+	}
+	
 	private static final class IDPool {
 		private final List<Integer> nodeIds = new ArrayList<>();
 		private int nodeIdCursor = -1;
@@ -515,11 +1067,15 @@ public class BinaryDTree<D> {
 	public BDTNodeMap<BDTNode<D>> replaceDiscriminator(BDTNode<D> innerNode, D newDiscriminator, BDTEvaluator<? super BDTNode<D>, ? super D> leafEvaluator) {
 		assert innerNode.isInner();
 		
-		// Create markings, and mark the inner node to ensure
+		// Reuse markings, and mark the inner node to ensure
 		// markings do not get propagated unnecessarily high
-		BDTMarking trueMark = new BDTMarking(this, innerNode.nodeId);
+		if(trueMark == null) {
+			trueMark = new BDTSubtreeMarking();
+			falseMark = new BDTSubtreeMarking();
+		}
+		trueMark.clear();
 		trueMark.mark(innerNode);
-		BDTMarking falseMark = new BDTMarking(this, innerNode.nodeId);
+		falseMark.clear();
 		falseMark.mark(innerNode);
 		
 		boolean falseEmpty = true;
@@ -528,6 +1084,8 @@ public class BinaryDTree<D> {
 		stack.push(innerNode);
 		
 		IDPool idPool = new IDPool();
+		// Discriminators to release after the subtree has been rewritten
+		List<D> oldDiscriminators = (discriminatorPool != null) ? new ArrayList<D>() : null;
 		
 		while(!stack.isEmpty()) {
 			BDTNode<D> curr = stack.pop();
@@ -537,11 +1095,22 @@ public class BinaryDTree<D> {
 			}
 			
 			if(curr.isInner()) {
+				if(oldDiscriminators != null) {
+					oldDiscriminators.add(curr.discriminator);
+				}
 				stack.push(curr.getTrueChild());
 				stack.push(curr.getFalseChild());
 			}
 			else {
-				boolean leafEval = leafEvaluator.evaluate(curr, newDiscriminator);
+				boolean leafEval;
+				if(evaluationListener != null) {
+					long startTime = System.nanoTime();
+					leafEval = leafEvaluator.evaluate(curr, newDiscriminator);
+					evaluationListener.evaluated(innerNode, curr, newDiscriminator, leafEval, System.nanoTime() - startTime);
+				}
+				else {
+					leafEval = leafEvaluator.evaluate(curr, newDiscriminator);
+				}
 				if(leafEval) {
 					trueMark.markAndPropagate(curr);
 					trueEmpty = false;
@@ -580,9 +1149,143 @@ public class BinaryDTree<D> {
 		
 		incorporateSubTree(newTrueChild, trueSubtree, pairList, idPool);
 		
-		innerNode.discriminator = newDiscriminator;
+		innerNode.discriminator = intern(newDiscriminator);
+		if(oldDiscriminators != null) {
+			for(D oldDiscriminator : oldDiscriminators) {
+				discriminatorPool.release(oldDiscriminator);
+			}
+		}
+		restructureCount++;
+		
+		updateSnapshot(innerNode);
+		
+		BDTNodeMap<BDTNode<D>> mapping = pairList.toNodeMap();
+		if(siftStatistics != null || !listeners.isEmpty()) {
+			// The reassigned IDs are recorded now, as the nodes in the mapping may be
+			// replaced by further rewrites before the event is delivered
+			BDTEvent<D> event = createRewriteEvent(innerNode, mapping);
+			if(siftStatistics != null) {
+				int[] oldIds = event.oldIds(NodeType.ANY);
+				siftStatistics.moveNodeCounts(oldIds, event.newIds(NodeType.ANY), oldIds.length);
+			}
+			if(!listeners.isEmpty()) {
+				pendingEvents.add(event);
+			}
+		}
+		deliverEvents();
 		
-		return pairList.toNodeMap();
+		return mapping;
+	}
+	
+	private BDTEvent<D> createRewriteEvent(BDTNode<D> subtreeRoot, BDTNodeMap<BDTNode<D>> mapping) {
+		int[] oldNodeIds = new int[16];
+		int[] newNodeIds = new int[16];
+		int numNodes = 0;
+		int[] oldInnerIds = new int[16];
+		int[] newInnerIds = new int[16];
+		int numInner = 0;
+		for(BDTNode<D> node : subtreeNodes(subtreeRoot)) {
+			if(node == subtreeRoot) {
+				continue;
+			}
+			BDTNode<D> orig = mapping.get(node);
+			if(numNodes == oldNodeIds.length) {
+				oldNodeIds = Arrays.copyOf(oldNodeIds, numNodes * 2);
+				newNodeIds = Arrays.copyOf(newNodeIds, numNodes * 2);
+			}
+			oldNodeIds[numNodes] = orig.nodeId;
+			newNodeIds[numNodes] = node.nodeId;
+			numNodes++;
+			if(node.isInner()) {
+				if(numInner == oldInnerIds.length) {
+					oldInnerIds = Arrays.copyOf(oldInnerIds, numInner * 2);
+					newInnerIds = Arrays.copyOf(newInnerIds, numInner * 2);
+				}
+				oldInnerIds[numInner] = orig.getInnerId();
+				newInnerIds[numInner] = node.getInnerId();
+				numInner++;
+			}
+		}
+		return new BDTEvent<>(BDTEvent.Type.SUBTREE_REWRITTEN, subtreeRoot, mapping,
+				Arrays.copyOf(oldNodeIds, numNodes), Arrays.copyOf(newNodeIds, numNodes),
+				Arrays.copyOf(oldInnerIds, numInner), Arrays.copyOf(newInnerIds, numInner));
+	}
+	
+	/**
+	 * Rearranges the discriminators within a subtree in order to reduce the expected cost of
+	 * sifting, given observed per-leaf sift frequencies and (optionally) per-discriminator
+	 * evaluation costs. Every leaf retains its leaf ID, and only discriminators already occurring
+	 * in the subtree are used.
+	 * <p>
+	 * The subtree is rebuilt greedily top-down by successive invocations of
+	 * {@link #replaceDiscriminator(BDTNode, Object, BDTEvaluator)}: each inner node receives the
+	 * discriminator from its subtree that maximizes the weighted entropy of the induced partition
+	 * of leaves per unit of cost. This is a heuristic, i.e., the resulting expected cost (see
+	 * {@link #expectedSiftCost(BDTNode, DoubleBDTNodeMap, Function)}) is not guaranteed to be
+	 * minimal. The leaf evaluator is only invoked for outcomes not implied by the structure of
+	 * the subtree, and at most once per leaf and discriminator. All modifications are delivered
+	 * to listeners as a single batch, in which every rewrite is described by its own
+	 * {@link BDTEvent.Type#SUBTREE_REWRITTEN} event (see {@link BDTEvent#getOldIds(NodeType)}).
+	 * 
+	 * @param subtreeRoot the root of the subtree to restructure
+	 * @param leafEvaluator the evaluator for determining the outcome of a discriminator for a leaf
+	 * @param leafWeights the weights (e.g., sift frequencies) of the leaves, indexed by leaf IDs
+	 * @param discriminatorCosts the evaluation costs of discriminators, which must be positive, or
+	 * {@code null} if all discriminators have the same cost
+	 * @return the number of inner nodes whose discriminator was replaced
+	 * @throws IllegalArgumentException if {@code leafWeights} is not indexed by leaf IDs
+	 */
+	public int restructure(BDTNode<D> subtreeRoot, BDTEvaluator<? super BDTNode<D>,? super D> leafEvaluator,
+			DoubleBDTNodeMap leafWeights, @Nullable Function<? super D,? extends Number> discriminatorCosts) {
+		if(leafWeights.type != NodeType.LEAF) {
+			throw new IllegalArgumentException("Leaf weights must be indexed by leaf IDs");
+		}
+		BDTRestructurer<D> restructurer = new BDTRestructurer<>(this, leafEvaluator, leafWeights, discriminatorCosts);
+		beginBatch();
+		try {
+			return restructurer.restructure(subtreeRoot);
+		}
+		finally {
+			endBatch();
+		}
+	}
+	
+	/**
+	 * Computes the expected cost of sifting an object from the given node to a leaf in its
+	 * subtree, i.e., the sum of the costs of the discriminators along the path to each leaf,
+	 * weighted by the leaf weights.
+	 * 
+	 * @param subtreeRoot the node from which objects are sifted
+	 * @param leafWeights the weights (e.g., sift frequencies) of the leaves
+	 * @param discriminatorCosts the evaluation costs of discriminators, or {@code null} if
+	 * all discriminators have a cost of {@code 1}
+	 * @return the expected sift cost, which is not normalized by the total weight
+	 */
+	public double expectedSiftCost(BDTNode<D> subtreeRoot, DoubleBDTNodeMap leafWeights, @Nullable Function<? super D,? extends Number> discriminatorCosts) {
+		double total = 0.0;
+		
+		Deque<BDTNode<D>> stack = new ArrayDeque<>();
+		Deque<Double> pathCosts = new ArrayDeque<>();
+		stack.push(subtreeRoot);
+		pathCosts.push(0.0);
+		
+		while(!stack.isEmpty()) {
+			BDTNode<D> node = stack.pop();
+			double pathCost = pathCosts.pop();
+			if(node.isLeaf()) {
+				total += leafWeights.get(node) * pathCost;
+			}
+			else {
+				D discriminator = node.getDiscriminator();
+				double cost = (discriminatorCosts != null) ? discriminatorCosts.apply(discriminator).doubleValue() : 1.0;
+				stack.push(node.getTrueChild());
+				pathCosts.push(pathCost + cost);
+				stack.push(node.getFalseChild());
+				pathCosts.push(pathCost + cost);
+			}
+		}
+		
+		return total;
 	}
 	
 	private void incorporateSubTree(BDTNode<D> newRoot, ExtractedBDTree<D> subtree, BDTNodePairList<D> pairList, IDPool idPool) {
@@ -615,7 +1318,8 @@ public class BinaryDTree<D> {
 				pairList.addPair(newNode, origNode);
 				
 				if(extractedNode.isLeaf()) {
-					int leafId = extractedNode.typeId;
+					// Leaves retain their leaf IDs
+					int leafId = origNode.typeId;
 					newNode.typeId = leafId;
 					leaves.set(leafId, newNode);
 				}
@@ -624,7 +1328,7 @@ public class BinaryDTree<D> {
 					
 					//
 					int innerId = idPool.fetchInnerID();
-					newNode.makeInner(innerId, extractedNode.getDiscriminator(), newFc, null);
+					newNode.makeInner(innerId, intern(extractedNode.getDiscriminator()), newFc, null);
 					innerNodes.set(innerId, newNode);
 					
 					replaceStack.push(rec); // For second visit
@@ -708,76 +1412,250 @@ public class BinaryDTree<D> {
 	}
 	
 	
-	private static final class VisitRecord<D,P,C> {
-		private final BDTNode<D> node;
-		private final P parentData;
-		private final VisitRecord<D,P,C> parentRec;
+	/**
+	 * Reusable stack for {@link BinaryDTree#visit(BDTVisitor, BDTNode, Object)}. The stack contains
+	 * one frame for each node on the path from the subtree root to the currently visited node,
+	 * stored in parallel arrays that are only reallocated if the depth exceeds their capacity.
+	 */
+	private static final class VisitStack {
+		private static final int DEFAULT_CAPACITY = 64;
 		
-		private int state = 0;
-		private C falseChildData;
-		private C trueChildData;
+		// Frame states
+		private static final byte STATE_NEW = 0;
+		private static final byte STATE_TRUE_VISITED = 1;
+		private static final byte STATE_FALSE_VISITED = 2;
 		
-		public VisitRecord(BDTNode<D> node, P parentData, VisitRecord<D,P,C> parentRec) {
-			this.node = node;
-			this.parentData = parentData;
-			this.parentRec = parentRec;
+		private static final ThreadLocal<VisitStack> CACHE = new ThreadLocal<VisitStack>() {
+			@Override
+			protected VisitStack initialValue() {
+				return new VisitStack();
+			}
+		};
+		
+		/**
+		 * Obtains a visit stack for the current thread. If the cached stack is already in use
+		 * (i.e., in case of a nested visit), a fresh stack is returned.
+		 * @return a visit stack, which must be released after use
+		 */
+		public static VisitStack acquire() {
+			VisitStack stack = CACHE.get();
+			if(stack.inUse) {
+				stack = new VisitStack();
+			}
+			stack.inUse = true;
+			return stack;
+		}
+		
+		private boolean inUse;
+		private BDTNode<?>[] nodes = new BDTNode<?>[DEFAULT_CAPACITY];
+		private byte[] states = new byte[DEFAULT_CAPACITY];
+		private Object[] parentData = new Object[DEFAULT_CAPACITY];
+		private Object[] falseParentData = new Object[DEFAULT_CAPACITY];
+		private Object[] falseChildData = new Object[DEFAULT_CAPACITY];
+		private Object[] trueChildData = new Object[DEFAULT_CAPACITY];
+		private final ChildData<Object> childData = new ChildData<>();
+		
+		public void push(int idx, BDTNode<?> node, Object data) {
+			if(idx == nodes.length) {
+				grow();
+			}
+			nodes[idx] = node;
+			states[idx] = STATE_NEW;
+			parentData[idx] = data;
+		}
+		
+		/**
+		 * Releases this stack, clearing the frames up to the given index to not retain
+		 * references to nodes and user data.
+		 * @param maxIdx the maximum index of a frame used since acquiring this stack
+		 */
+		public void release(int maxIdx) {
+			int end = maxIdx + 1;
+			Arrays.fill(nodes, 0, end, null);
+			Arrays.fill(parentData, 0, end, null);
+			Arrays.fill(falseParentData, 0, end, null);
+			Arrays.fill(falseChildData, 0, end, null);
+			Arrays.fill(trueChildData, 0, end, null);
+			childData.reset();
+			inUse = false;
+		}
+		
+		private void grow() {
+			int newCap = nodes.length + (nodes.length >> 1);
+			nodes = Arrays.copyOf(nodes, newCap);
+			states = Arrays.copyOf(states, newCap);
+			parentData = Arrays.copyOf(parentData, newCap);
+			falseParentData = Arrays.copyOf(falseParentData, newCap);
+			falseChildData = Arrays.copyOf(falseChildData, newCap);
+			trueChildData = Arrays.copyOf(trueChildData, newCap);
 		}
 	}
 	
-	public <P,C> C visit(BDTVisitor<D,P,C> visitor, BDTNode<D> subTreeRoot, P rootData) {
-		Deque<VisitRecord<D,P,C>> stack = new ArrayDeque<>();
-		stack.push(new VisitRecord<D,P,C>(subTreeRoot, rootData, null));
-		
-		ChildData<P> childrenData = new ChildData<>();
+	/**
+	 * Visits the subtree rooted at the given node, in a combined pre-/postorder traversal
+	 * controlled by the given visitor (see {@link BDTVisitor}). The "true" child of an inner node is
+	 * visited before the "false" child. If {@link BDTVisitor#visitInnerPre(BDTNode, Object, ChildData)}
+	 * returns {@code false} for some node, {@code null} is passed to the parent as the data resulting
+	 * from visiting this node.
+	 * <p>
+	 * The traversal does not allocate any objects per visited node: it uses a stack of frames
+	 * for the inner nodes on the current path, which is cached per thread and reused by subsequent
+	 * visits.
+	 * 
+	 * @param visitor the visitor
+	 * @param subTreeRoot the root of the subtree to visit
+	 * @param rootData the data to pass to the subtree root
+	 * @return the data resulting from visiting the subtree root
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public <P,C> C visit(BDTVisitor<D,P,C> visitor, BDTNode<D> subTreeRoot, @Nullable P rootData) {
+		if(subTreeRoot.isLeaf()) {
+			return visitor.visitLeaf(subTreeRoot, rootData);
+		}
 		
-		while(!stack.isEmpty()) {
-			VisitRecord<D, P, C> rec = stack.peek();
+		VisitStack stack = VisitStack.acquire();
+		int maxTop = 0;
+		try {
+			ChildData<P> childrenData = (ChildData<P>)stack.childData;
 			
-			BDTNode<D> node = rec.node;
-			if(rec.state == 0 && node.isInner()) {
-				childrenData.reset();
-				if(visitor.visitInnerPre(node, rec.parentData, childrenData)) {
-					stack.push(new VisitRecord<D,P,C>(node.getFalseChild(), childrenData.getFalseChildData(), rec));
-					stack.push(new VisitRecord<D,P,C>(node.getTrueChild(), childrenData.getTrueChildData(), rec));
-					rec.state++;
-				}
-				else {
-					stack.pop();
-				}
-			}
-			else {
-				stack.pop();
+			// Frames are only created for inner nodes, leaves are visited directly
+			int top = 0;
+			stack.push(0, subTreeRoot, rootData);
+			
+			while(true) {
+				BDTNode<D> node = (BDTNode<D>)stack.nodes[top];
+				byte state = stack.states[top];
 				
-				C childData;
-				if(rec.state == 0) { // && !node.isInner
-					childData = visitor.visitLeaf(node, rec.parentData);
+				C result;
+				if(state == VisitStack.STATE_NEW) {
+					childrenData.reset();
+					if(!visitor.visitInnerPre(node, (P)stack.parentData[top], childrenData)) {
+						result = null;
+					}
+					else {
+						stack.falseParentData[top] = childrenData.getFalseChildData();
+						stack.states[top] = VisitStack.STATE_TRUE_VISITED;
+						BDTNode<D> trueChild = node.getTrueChild();
+						if(trueChild.isLeaf()) {
+							stack.trueChildData[top] = visitor.visitLeaf(trueChild, childrenData.getTrueChildData());
+						}
+						else {
+							stack.push(++top, trueChild, childrenData.getTrueChildData());
+							if(top > maxTop) {
+								maxTop = top;
+							}
+						}
+						continue;
+					}
 				}
-				else { // rec.state == 3
-					childData = visitor.visitInnerPost(node, rec.parentData, rec.falseChildData, rec.trueChildData);
+				else if(state == VisitStack.STATE_TRUE_VISITED) {
+					stack.states[top] = VisitStack.STATE_FALSE_VISITED;
+					BDTNode<D> falseChild = node.getFalseChild();
+					P falseParentData = (P)stack.falseParentData[top];
+					if(falseChild.isLeaf()) {
+						stack.falseChildData[top] = visitor.visitLeaf(falseChild, falseParentData);
+					}
+					else {
+						stack.push(++top, falseChild, falseParentData);
+						if(top > maxTop) {
+							maxTop = top;
+						}
+					}
+					continue;
+				}
+				else { // state == STATE_FALSE_VISITED
+					result = visitor.visitInnerPost(node, (P)stack.parentData[top],
+							(C)stack.falseChildData[top], (C)stack.trueChildData[top]);
 				}
 				
-				VisitRecord<D,P,C> parentRec = rec.parentRec;
-				
-				if(parentRec == null) {
-					return childData; // sub tree root
+				// Report the result to the parent frame
+				if(top == 0) {
+					return result; // sub tree root
 				}
-				if(parentRec.state == 1) {
-					parentRec.trueChildData = childData;
+				top--;
+				if(stack.states[top] == VisitStack.STATE_TRUE_VISITED) {
+					stack.trueChildData[top] = result;
 				}
-				else { // parentRec.state == 2
-					assert parentRec.state == 2;
-					parentRec.falseChildData = childData;
+				else {
+					stack.falseChildData[top] = result;
 				}
-				parentRec.state++;
 			}
 		}
-		
-		throw new AssertionError("This line should not be reached");
+		finally {
+			stack.release(maxTop);
+		}
 	}
 	
 	
 	
 	
+	/**
+	 * Visits the subtree rooted at the given node in parallel, using the default threshold.
+	 * 
+	 * @see #visitParallel(BDTVisitor, BDTNode, Object, ForkJoinPool, int)
+	 */
+	@Nullable
+	public <P,C> C visitParallel(BDTVisitor<D,P,C> visitor, BDTNode<D> subTreeRoot, @Nullable P rootData, ForkJoinPool pool) {
+		return visitParallel(visitor, subTreeRoot, rootData, pool, DEFAULT_PARALLEL_VISIT_THRESHOLD);
+	}
+	
+	/**
+	 * Visits the subtree rooted at the given node in parallel, using the workers of the given
+	 * pool. If both children of an inner node have subtrees of at least {@code threshold} nodes,
+	 * these subtrees are visited by separate tasks; smaller subtrees are visited sequentially
+	 * (see {@link #visit(BDTVisitor, BDTNode, Object)}).
+	 * <p>
+	 * The results of the children are combined exactly as in a sequential visit, and the result
+	 * is the same as that of {@link #visit(BDTVisitor, BDTNode, Object)}, provided the visitor is
+	 * <i>pure</i>, i.e., its methods do not depend on the order in which nodes are visited. The
+	 * visitor is called concurrently from several threads, and hence must be thread-safe. The tree
+	 * must not be modified during the visit.
+	 * 
+	 * @param visitor the visitor
+	 * @param subTreeRoot the root of the subtree to visit
+	 * @param rootData the data to pass to the subtree root
+	 * @param pool the pool to use for the visit
+	 * @param threshold the minimum size of two sibling subtrees to be visited in parallel
+	 * @return the data resulting from visiting the subtree root
+	 */
+	@Nullable
+	public <P,C> C visitParallel(BDTVisitor<D,P,C> visitor, BDTNode<D> subTreeRoot, @Nullable P rootData, ForkJoinPool pool, @Nonnegative int threshold) {
+		if(threshold < 1) {
+			throw new IllegalArgumentException("Threshold must be positive, is " + threshold);
+		}
+		return pool.invoke(new BDTVisitTask<>(this, visitor, subTreeRoot, rootData, threshold));
+	}
+	
+	/**
+	 * Creates a spliterator over the nodes of the given type in the given subtree. The size of
+	 * the spliterator is exactly known if {@code subtreeRoot} is the root of this tree.
+	 * 
+	 * @param subtreeRoot the root of the subtree
+	 * @param type the type of nodes to return
+	 * @return the spliterator
+	 */
+	@Nonnull
+	public BDTSubtreeSpliterator<D> subtreeSpliterator(BDTNode<D> subtreeRoot, NodeType type) {
+		long exactSize = (subtreeRoot == root) ? getNumNodes(type) : -1L;
+		return new BDTSubtreeSpliterator<>(subtreeRoot, type, exactSize);
+	}
+	
+	/**
+	 * Applies the given procedure to all nodes of the given type in the given subtree, in parallel
+	 * using the workers of the given pool.
+	 * 
+	 * @param subtreeRoot the root of the subtree
+	 * @param type the type of nodes to apply the procedure to
+	 * @param procedure the procedure, which must be safe to be called concurrently
+	 * @param pool the pool to use
+	 * 
+	 * @see AbstractSubtreeSpliterator#forEachRemaining(NodeProcedure, ForkJoinPool)
+	 */
+	public void forEachParallel(BDTNode<D> subtreeRoot, NodeType type, NodeProcedure<? super BDTNode<D>> procedure, ForkJoinPool pool) {
+		subtreeSpliterator(subtreeRoot, type).forEachRemaining(procedure, pool);
+	}
+	
 	public Iterator<BDTNode<D>> subtreeNodesIterator(BDTNode<D> subtreeRoot, NodeType type) {
 		return new BDTSubtreeNodesIterator<>(subtreeRoot, type);
 	}
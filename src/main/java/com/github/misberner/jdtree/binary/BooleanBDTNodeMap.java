@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.BitSet;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.NodeType;
+
+/**
+ * A node map with {@code boolean} values (flags), stored in a {@link BitSet} indexed by node IDs.
+ * See {@link AbstractPrimitiveBDTNodeMap} for the growth semantics.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public class BooleanBDTNodeMap extends AbstractPrimitiveBDTNodeMap {
+	
+	private final boolean initVal;
+	private final BitSet values;
+	private int capacity;
+	
+	public BooleanBDTNodeMap(BinaryDTree<?> dtree, boolean initVal, NodeType type) {
+		super(dtree, type);
+		this.initVal = initVal;
+		this.capacity = dtree.getNumNodes(type);
+		this.values = new BitSet(capacity);
+		if(initVal) {
+			values.set(0, capacity);
+		}
+	}
+	
+	public BooleanBDTNodeMap(BinaryDTree<?> dtree, NodeType type) {
+		this(dtree, false, type);
+	}
+	
+	public BooleanBDTNodeMap(BinaryDTree<?> dtree) {
+		this(dtree, NodeType.ANY);
+	}
+	
+	public boolean get(BDTNode<?> node) {
+		int id = readId(node);
+		return (id < 0) ? initVal : values.get(id);
+	}
+	
+	public void put(BDTNode<?> node, boolean value) {
+		values.set(writeId(node), value);
+	}
+	
+	/**
+	 * Sets the values of all nodes of the tree to the given value.
+	 * 
+	 * @param value the value
+	 */
+	public void fill(boolean value) {
+		growToTree();
+		values.set(0, capacity, value);
+	}
+	
+	/**
+	 * Retrieves the number of nodes mapped to {@code true}.
+	 * 
+	 * @return the number of nodes mapped to {@code true}
+	 */
+	public int cardinality() {
+		growToTree();
+		return values.cardinality();
+	}
+
+	@Override
+	protected int capacity() {
+		return capacity;
+	}
+
+	@Override
+	protected void grow(int newCapacity) {
+		if(initVal) {
+			values.set(capacity, newCapacity);
+		}
+		capacity = newCapacity;
+	}
+
+	@Override
+	protected void copy(int[] fromIds, int[] toIds, int num) {
+		BitSet tmp = new BitSet(num);
+		for(int i = 0; i < num; i++) {
+			tmp.set(i, values.get(fromIds[i]));
+		}
+		for(int i = 0; i < num; i++) {
+			values.set(toIds[i], tmp.get(i));
+		}
+	}
+
+}
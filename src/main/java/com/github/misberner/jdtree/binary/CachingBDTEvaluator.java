@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * A {@link BDTEvaluator} that memoizes the outcomes of another evaluator.
+ * <p>
+ * Outcomes are cached per (object, discriminator) pair, where objects and discriminators
+ * are compared using their {@link Object#equals(Object) equals} method. Eviction is controlled
+ * by the Guava {@link CacheBuilder} specified upon construction, the static factory methods
+ * provide size-bounded (LRU) and weight-bounded caches. Hits, misses and evictions are
+ * always recorded, and can be obtained via {@link #getStats()}.
+ * <p>
+ * A caching evaluator is thread-safe if the underlying evaluator is. Concurrent evaluations of
+ * the same (object, discriminator) pair that miss the cache invoke the underlying evaluator only
+ * once.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <X> type of the objects to be evaluated
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+public class CachingBDTEvaluator<X,D> implements BDTEvaluator<X,D> {
+	
+	/**
+	 * Weigher for determining the weight of cache entries in a weight-bounded
+	 * caching evaluator.
+	 *
+	 * @param <X> type of the objects to be evaluated
+	 * @param <D> discriminator type
+	 */
+	public static interface EntryWeigher<X,D> {
+		/**
+		 * Determines the weight of the cache entry for the given object and discriminator.
+		 * @param object the evaluated object
+		 * @param discriminator the discriminator
+		 * @return the (non-negative) weight of the entry
+		 */
+		@Nonnegative
+		public int weigh(@Nullable X object, @Nullable D discriminator);
+	}
+	
+	/**
+	 * Creates a caching evaluator which retains at most the given number of outcomes,
+	 * evicting the least recently used ones first.
+	 * 
+	 * @param delegate the evaluator whose outcomes to cache
+	 * @param maximumSize the maximum number of cached outcomes
+	 * @return the caching evaluator
+	 */
+	@Nonnull
+	public static <X,D> CachingBDTEvaluator<X,D> sizeBounded(BDTEvaluator<? super X,? super D> delegate, @Nonnegative long maximumSize) {
+		return new CachingBDTEvaluator<>(delegate, CacheBuilder.newBuilder().maximumSize(maximumSize));
+	}
+	
+	/**
+	 * Creates a caching evaluator whose cached outcomes have a total weight of at most
+	 * the given value.
+	 * 
+	 * @param delegate the evaluator whose outcomes to cache
+	 * @param maximumWeight the maximum total weight of the cached outcomes
+	 * @param weigher the weigher determining the weight of an individual cache entry
+	 * @return the caching evaluator
+	 */
+	@Nonnull
+	public static <X,D> CachingBDTEvaluator<X,D> weightBounded(BDTEvaluator<? super X,? super D> delegate,
+			@Nonnegative long maximumWeight, final EntryWeigher<? super X,? super D> weigher) {
+		CacheBuilder<Object,Object> builder = CacheBuilder.newBuilder()
+				.maximumWeight(maximumWeight)
+				.weigher(new Weigher<Object,Object>() {
+					@Override
+					@SuppressWarnings("unchecked")
+					public int weigh(Object key, Object value) {
+						Key k = (Key)key;
+						return weigher.weigh((X)k.object, (D)k.discriminator);
+					}
+				});
+		return new CachingBDTEvaluator<>(delegate, builder);
+	}
+	
+	@Nonnull
+	private final BDTEvaluator<? super X,? super D> delegate;
+	@Nonnull
+	private final Cache<Key,Boolean> cache;
+	
+	/**
+	 * Constructor. The cache is built using the specified builder, which allows
+	 * to control the eviction policy. Statistics recording will be enabled in any case.
+	 * 
+	 * @param delegate the evaluator whose outcomes to cache
+	 * @param cacheBuilder the builder for the outcome cache
+	 */
+	public CachingBDTEvaluator(BDTEvaluator<? super X,? super D> delegate, CacheBuilder<Object,Object> cacheBuilder) {
+		this.delegate = delegate;
+		this.cache = cacheBuilder.recordStats().build();
+	}
+
+	@Override
+	public boolean evaluate(@Nullable final X object, @Nullable final D discriminator) {
+		try {
+			// Concurrent misses for the same key wait for a single evaluation
+			return cache.get(new Key(object, discriminator), new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return Boolean.valueOf(delegate.evaluate(object, discriminator));
+				}
+			}).booleanValue();
+		}
+		catch(ExecutionException | UncheckedExecutionException | ExecutionError ex) {
+			throw Throwables.propagate(ex.getCause());
+		}
+	}
+	
+	/**
+	 * Retrieves the hit, miss and eviction statistics of this cache.
+	 * @return the cache statistics
+	 */
+	@Nonnull
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+	
+	/**
+	 * Retrieves the (approximate) number of cached outcomes.
+	 * @return the number of cached outcomes
+	 */
+	public long size() {
+		return cache.size();
+	}
+	
+	/**
+	 * Removes all cached outcomes.
+	 */
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+	
+	/**
+	 * Removes the cached outcome for the given object and discriminator, if any.
+	 * @param object the object
+	 * @param discriminator the discriminator
+	 */
+	public void invalidate(@Nullable X object, @Nullable D discriminator) {
+		cache.invalidate(new Key(object, discriminator));
+	}
+	
+	
+	private static final class Key {
+		private final Object object;
+		private final Object discriminator;
+		private final int hashCode;
+		
+		public Key(Object object, Object discriminator) {
+			this.object = object;
+			this.discriminator = discriminator;
+			this.hashCode = Objects.hashCode(object, discriminator);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(obj == this) {
+				return true;
+			}
+			if(!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key)obj;
+			return hashCode == other.hashCode
+					&& Objects.equal(object, other.object)
+					&& Objects.equal(discriminator, other.discriminator);
+		}
+	}
+
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Predicate;
+
+/**
+ * A compact binary discrimination tree, storing parent, children, depth and type IDs in
+ * parallel {@code int} arrays indexed by node ID, and discriminators in a single array
+ * indexed by inner node ID.
+ * <p>
+ * In contrast to {@link BinaryDTree}, nodes are not represented as objects, but referred
+ * to by their node IDs. The assignment of node, leaf and inner node IDs is exactly the same
+ * as in {@link BinaryDTree} (see {@link AbstractCompactBDTree}), hence a compact tree
+ * can be converted to and from a {@link BinaryDTree} without affecting any IDs.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+public class CompactBinaryDTree<D> extends AbstractCompactBDTree {
+	
+	/**
+	 * Creates a compact copy of the given tree, preserving all node, leaf and inner node IDs.
+	 * 
+	 * @param tree the tree to copy
+	 * @return the compact copy
+	 */
+	@Nonnull
+	public static <D> CompactBinaryDTree<D> copyOf(BinaryDTree<? extends D> tree) {
+		CompactBinaryDTree<D> result = new CompactBinaryDTree<>(tree.getNumNodes());
+		result.copyStructure(tree);
+		
+		result.discriminators = new Object[result.innerNodes.length];
+		for(BDTNode<? extends D> inner : tree.getInnerNodes()) {
+			result.discriminators[inner.getInnerId()] = inner.getDiscriminator();
+		}
+		
+		return result;
+	}
+	
+	
+	@Nonnull
+	private Object[] discriminators;
+	
+	/**
+	 * Initializes a new compact binary discrimination tree with a single (root) leaf. The root
+	 * has a node ID of {@code 0} and a leaf ID of {@code 0}.
+	 */
+	public CompactBinaryDTree() {
+		this(0);
+	}
+	
+	/**
+	 * Initializes a new compact binary discrimination tree with a single (root) leaf,
+	 * reserving space for the given number of nodes.
+	 * 
+	 * @param expectedNodes the expected number of nodes
+	 */
+	public CompactBinaryDTree(@Nonnegative int expectedNodes) {
+		super(expectedNodes);
+		this.discriminators = new Object[innerNodes.length];
+	}
+	
+	/**
+	 * Retrieves the discriminator of the given inner node.
+	 * @param node the node ID
+	 * @return the discriminator of the node
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public D getDiscriminator(int node) {
+		assert isInner(node) : "Only inner nodes have discriminators";
+		return (D)discriminators[typeIds[node]];
+	}
+	
+	/**
+	 * Splits a leaf, turning it into an inner node with two children (leaves).
+	 * 
+	 * @param leaf the leaf to split
+	 * @param discriminator the discriminator for the new inner node
+	 */
+	public void split(int leaf, @Nullable D discriminator) {
+		split(leaf, discriminator, false);
+	}
+	
+	/**
+	 * Splits a leaf, turning it into an inner node with two children (leaves).
+	 * The {@code repChild} parameter allows controlling which of the newly
+	 * created children will be assigned the leaf ID of the split node.
+	 * 
+	 * @param leaf the leaf to split
+	 * @param discriminator the discriminator for the new inner node
+	 * @param repChild the child of the newly split node that will be assigned
+	 * the leaf ID of {@code leaf}.
+	 */
+	public void split(int leaf, @Nullable D discriminator, boolean repChild) {
+		int innerId = splitStructure(leaf, repChild);
+		if(innerId == discriminators.length) {
+			discriminators = Arrays.copyOf(discriminators, innerNodes.length);
+		}
+		discriminators[innerId] = discriminator;
+	}
+	
+	/**
+	 * Splits a leaf according to another compact discrimination tree, analogously to
+	 * {@link BinaryDTree#split(BDTNode, BinaryDTree, Function)}.
+	 * 
+	 * @param leaf the leaf to split
+	 * @param splitTree the tree according to which to split
+	 * @param discTransformer the transformer for transforming the discriminators
+	 * @return an array mapping the node IDs of {@code splitTree} to the IDs of the
+	 * newly created/split nodes in this tree
+	 */
+	@Nonnull
+	public <E> int[] split(int leaf, CompactBinaryDTree<E> splitTree, Function<? super E,? extends D> discTransformer) {
+		// Copy the structure of the split tree first, to be aliasing-safe
+		int splitNodes = splitTree.getNumNodes();
+		int[] mapping = new int[splitNodes];
+		
+		int[] stack = new int[32];
+		int sp = 0;
+		stack[sp++] = leaf;
+		stack[sp++] = splitTree.getRoot();
+		
+		int[] splitChildren = Arrays.copyOf(splitTree.children, 2 * splitNodes);
+		List<E> splitDiscrs = new ArrayList<>(splitTree.getNumInnerNodes());
+		for(int i = 0; i < splitTree.getNumInnerNodes(); i++) {
+			splitDiscrs.add(splitTree.getDiscriminator(splitTree.getInnerNode(i)));
+		}
+		int[] splitTypeIds = Arrays.copyOf(splitTree.typeIds, splitNodes);
+		
+		while(sp > 0) {
+			int splitNode = stack[--sp];
+			int thisNode = stack[--sp];
+			mapping[splitNode] = thisNode;
+			
+			int fc = splitChildren[splitNode << 1];
+			if(fc != NO_NODE) {
+				D newDiscr = discTransformer.apply(splitDiscrs.get(splitTypeIds[splitNode]));
+				split(thisNode, newDiscr);
+				
+				if(sp + 4 > stack.length) {
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				stack[sp++] = getFalseChild(thisNode);
+				stack[sp++] = fc;
+				stack[sp++] = getTrueChild(thisNode);
+				stack[sp++] = splitChildren[(splitNode << 1) + 1];
+			}
+		}
+		
+		return mapping;
+	}
+	
+	@Nonnull
+	public int[] split(int leaf, CompactBinaryDTree<? extends D> splitTree) {
+		return split(leaf, splitTree, Functions.<D>identity());
+	}
+	
+	@Nullable
+	public D separator(int n1, int n2) {
+		if(n1 == n2) {
+			throw new IllegalArgumentException("Identical nodes cannot be separated");
+		}
+		return getDiscriminator(leastCommonAncestor(n1, n2));
+	}
+	
+	public int sift(Predicate<? super D> pred) {
+		return sift(getRoot(), pred);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public int sift(int start, Predicate<? super D> pred) {
+		int[] children = this.children;
+		int[] typeIds = this.typeIds;
+		Object[] discriminators = this.discriminators;
+		
+		int curr = start;
+		int base;
+		while(children[base = curr << 1] != NO_NODE) {
+			D discr = (D)discriminators[typeIds[curr]];
+			curr = pred.apply(discr) ? children[base + 1] : children[base];
+		}
+		return curr;
+	}
+	
+	public <X> int sift(@Nullable X object, BDTEvaluator<? super X,? super D> evaluator) {
+		return sift(getRoot(), object, evaluator);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public <X> int sift(int start, @Nullable X object, BDTEvaluator<? super X,? super D> evaluator) {
+		int[] children = this.children;
+		int[] typeIds = this.typeIds;
+		Object[] discriminators = this.discriminators;
+		
+		int curr = start;
+		int base;
+		while(children[base = curr << 1] != NO_NODE) {
+			D discr = (D)discriminators[typeIds[curr]];
+			curr = evaluator.evaluate(object, discr) ? children[base + 1] : children[base];
+		}
+		return curr;
+	}
+	
+	/**
+	 * Converts this compact tree into a {@link BinaryDTree}, preserving all node, leaf and
+	 * inner node IDs.
+	 * 
+	 * @return a {@link BinaryDTree} with the same structure as this tree
+	 */
+	@Nonnull
+	@SuppressWarnings("unchecked")
+	public BinaryDTree<D> toBinaryDTree() {
+		BDTNode<D>[] nodes = new BDTNode[numNodes];
+		BDTNode<D>[] leaves = new BDTNode[numLeaves];
+		BDTNode<D>[] inner = new BDTNode[numInner];
+		
+		BDTNode<D> root = new BDTNode<>(null, 0, typeIds[0]);
+		nodes[0] = root;
+		
+		int[] stack = new int[32];
+		int sp = 0;
+		stack[sp++] = 0;
+		
+		while(sp > 0) {
+			int id = stack[--sp];
+			BDTNode<D> node = nodes[id];
+			int base = id << 1;
+			int fc = children[base];
+			if(fc == NO_NODE) {
+				leaves[typeIds[id]] = node;
+				continue;
+			}
+			int tc = children[base + 1];
+			BDTNode<D> falseChild = new BDTNode<>(node, fc, typeIds[fc]);
+			BDTNode<D> trueChild = new BDTNode<>(node, tc, typeIds[tc]);
+			nodes[fc] = falseChild;
+			nodes[tc] = trueChild;
+			
+			int innerId = typeIds[id];
+			node.makeInner(innerId, (D)discriminators[innerId], falseChild, trueChild);
+			inner[innerId] = node;
+			
+			if(sp + 2 > stack.length) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			stack[sp++] = tc;
+			stack[sp++] = fc;
+		}
+		
+		return new BinaryDTree<>(nodes[0], new ArrayList<>(Arrays.asList(nodes)),
+				new ArrayList<>(Arrays.asList(inner)), new ArrayList<>(Arrays.asList(leaves)));
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.Arrays;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.NodeType;
+
+/**
+ * A node map with primitive {@code double} values, stored in an array indexed by node IDs.
+ * See {@link AbstractPrimitiveBDTNodeMap} for the growth semantics.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public class DoubleBDTNodeMap extends AbstractPrimitiveBDTNodeMap {
+	
+	private final double initVal;
+	private double[] values;
+	
+	public DoubleBDTNodeMap(BinaryDTree<?> dtree, double initVal, NodeType type) {
+		super(dtree, type);
+		this.initVal = initVal;
+		this.values = new double[dtree.getNumNodes(type)];
+		if(initVal != 0.0) {
+			Arrays.fill(values, initVal);
+		}
+	}
+	
+	public DoubleBDTNodeMap(BinaryDTree<?> dtree, NodeType type) {
+		this(dtree, 0.0, type);
+	}
+	
+	public DoubleBDTNodeMap(BinaryDTree<?> dtree) {
+		this(dtree, NodeType.ANY);
+	}
+	
+	public double get(BDTNode<?> node) {
+		int id = readId(node);
+		return (id < 0) ? initVal : values[id];
+	}
+	
+	public void put(BDTNode<?> node, double value) {
+		int id = writeId(node);
+		values[id] = value;
+	}
+	
+	/**
+	 * Adds the given amount to the value of a node.
+	 * 
+	 * @param node the node
+	 * @param delta the amount to add
+	 * @return the new value of the node
+	 */
+	public double add(BDTNode<?> node, double delta) {
+		int id = writeId(node);
+		return values[id] += delta;
+	}
+	
+	/**
+	 * Sets the values of all nodes of the tree to the given value.
+	 * 
+	 * @param value the value
+	 */
+	public void fill(double value) {
+		growToTree();
+		Arrays.fill(values, value);
+	}
+	
+	/**
+	 * Adds the given amount to the values of all nodes of the tree.
+	 * 
+	 * @param delta the amount to add
+	 */
+	public void addToAll(double delta) {
+		growToTree();
+		int num = dtree.getNumNodes(type);
+		for(int i = 0; i < num; i++) {
+			values[i] += delta;
+		}
+	}
+
+	@Override
+	protected int capacity() {
+		return values.length;
+	}
+
+	@Override
+	protected void grow(int newCapacity) {
+		int oldCapacity = values.length;
+		values = Arrays.copyOf(values, newCapacity);
+		if(initVal != 0.0) {
+			Arrays.fill(values, oldCapacity, newCapacity, initVal);
+		}
+	}
+
+	@Override
+	protected void copy(int[] fromIds, int[] toIds, int num) {
+		double[] tmp = new double[num];
+		for(int i = 0; i < num; i++) {
+			tmp[i] = values[fromIds[i]];
+		}
+		for(int i = 0; i < num; i++) {
+			values[toIds[i]] = tmp[i];
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Evaluator operating directly on the encoded discriminators of a {@link FrozenBDTree},
+ * thus avoiding the need to decode the discriminators during a sift.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <X> type of the object to be evaluated
+ */
+public interface FrozenBDTEvaluator<X> {
+	
+	/**
+	 * Evaluates an object with respect to an encoded discriminator.
+	 * <p>
+	 * The buffer is shared between all threads and must only be accessed using absolute
+	 * {@code get} methods, i.e., neither its position nor its limit may be changed.
+	 * 
+	 * @param object the object to be evaluated
+	 * @param buffer the (read-only) buffer containing the encoded discriminator
+	 * @param offset the offset of the encoded discriminator within the buffer
+	 * @param length the length of the encoded discriminator, in bytes
+	 * @return the outcome
+	 */
+	public boolean evaluate(X object, ByteBuffer buffer, int offset, int length);
+
+}
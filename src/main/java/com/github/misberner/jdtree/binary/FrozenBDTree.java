@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.NodeType;
+import com.github.misberner.jdtree.io.ByteBufferInputStream;
+import com.github.misberner.jdtree.io.Codec;
+
+/**
+ * A read-only ("frozen") binary discrimination tree residing in a memory-mapped file.
+ * <p>
+ * The file consists of a header, a node table with fixed-width records (parent, "false" child,
+ * "true" child, type-specific ID and depth) indexed by node ID, tables mapping leaf IDs and inner
+ * node IDs to node IDs, an offset index for the discriminators indexed by inner node ID, and
+ * finally the discriminators themselves, encoded using a {@link Codec}. All operations
+ * access the mapped file directly, hence opening a frozen tree takes constant time regardless
+ * of its size, and several processes opening the same file share the page cache.
+ * <p>
+ * Nodes are referred to by their node IDs, which are the same as in the {@link BinaryDTree}
+ * the frozen tree was created from (see {@link #write(BinaryDTree, Path, Codec)}), as are all
+ * leaf and inner node IDs. Discriminators are only decoded when they are requested via
+ * {@link #getDiscriminator(int)} or when sifting with a {@link BDTEvaluator}; sifting with a
+ * {@link FrozenBDTEvaluator} operates on the encoded discriminators directly.
+ * <p>
+ * A frozen tree is immutable, and can safely be used by several threads concurrently,
+ * provided the discriminator codec is thread-safe.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+public final class FrozenBDTree<D> {
+	
+	/**
+	 * The magic number at the start of every frozen tree file ({@code "JDTF"}).
+	 */
+	public static final int MAGIC = 0x4A445446;
+	
+	/**
+	 * The current format version.
+	 */
+	public static final int VERSION = 1;
+	
+	/**
+	 * The value used for denoting a non-existing node, e.g., the parent of the root
+	 * or the children of a leaf.
+	 */
+	public static final int NO_NODE = -1;
+	
+	private static final int HEADER_SIZE = 24;
+	private static final int NODE_RECORD_SIZE = 20;
+	
+	private static final int PARENT = 0;
+	private static final int FALSE_CHILD = 4;
+	private static final int TRUE_CHILD = 8;
+	private static final int TYPE_ID = 12;
+	private static final int DEPTH = 16;
+	
+	
+	/**
+	 * Writes the given tree to a file in the frozen tree format. An existing file
+	 * is overwritten.
+	 * 
+	 * @param tree the tree to write
+	 * @param file the file to write to
+	 * @param discriminatorCodec the codec for encoding the discriminators
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static <D> void write(BinaryDTree<D> tree, Path file, Codec<? super D> discriminatorCodec) throws IOException {
+		int numNodes = tree.getNumNodes();
+		int numLeaves = tree.getNumLeaves();
+		int numInner = tree.getNumInnerNodes();
+		
+		long dataOffset = HEADER_SIZE + (long)numNodes * NODE_RECORD_SIZE
+				+ 4L * numLeaves + 4L * numInner + 4L * (numInner + 1);
+		
+		try(FileChannel fc = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			// Write the discriminators first, remembering their offsets
+			int[] discrOffsets = new int[numInner + 1];
+			fc.position(dataOffset);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(fc)));
+			for(int i = 0; i < numInner; i++) {
+				discrOffsets[i] = out.size();
+				discriminatorCodec.encode(tree.getInnerNodes().get(i).getDiscriminator(), out);
+			}
+			discrOffsets[numInner] = out.size();
+			out.flush();
+			
+			// DataOutputStream.size() saturates at Integer.MAX_VALUE
+			if(dataOffset + discrOffsets[numInner] >= Integer.MAX_VALUE) {
+				throw new IOException("Tree exceeds maximum frozen tree size");
+			}
+			
+			fc.position(0L);
+			out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(fc)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(numNodes);
+			out.writeInt(numLeaves);
+			out.writeInt(numInner);
+			out.writeInt(0); // reserved
+			
+			for(BDTNode<D> node : tree.getNodes()) {
+				BDTNode<D> parent = node.getParent();
+				out.writeInt((parent == null) ? NO_NODE : parent.nodeId);
+				if(node.isInner()) {
+					out.writeInt(node.getFalseChild().nodeId);
+					out.writeInt(node.getTrueChild().nodeId);
+				}
+				else {
+					out.writeInt(NO_NODE);
+					out.writeInt(NO_NODE);
+				}
+				out.writeInt(node.typeId);
+				out.writeInt(node.getDepth());
+			}
+			for(BDTNode<D> leaf : tree.getLeaves()) {
+				out.writeInt(leaf.nodeId);
+			}
+			for(BDTNode<D> inner : tree.getInnerNodes()) {
+				out.writeInt(inner.nodeId);
+			}
+			for(int offset : discrOffsets) {
+				out.writeInt(offset);
+			}
+			out.flush();
+		}
+	}
+	
+	/**
+	 * Opens a frozen tree file, mapping it into memory.
+	 * 
+	 * @param file the file to open
+	 * @param discriminatorCodec the codec for decoding the discriminators
+	 * @return the frozen tree
+	 * @throws IOException if an I/O error occurs, or the file is not a valid frozen tree file
+	 */
+	@Nonnull
+	public static <D> FrozenBDTree<D> open(Path file, Codec<? extends D> discriminatorCodec) throws IOException {
+		try(FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = fc.size();
+			if(size > Integer.MAX_VALUE) {
+				throw new IOException("File " + file + " exceeds maximum frozen tree size");
+			}
+			if(size < HEADER_SIZE) {
+				throw new IOException("File " + file + " is not a frozen tree file");
+			}
+			ByteBuffer buffer = fc.map(MapMode.READ_ONLY, 0L, size);
+			return new FrozenBDTree<>(buffer, discriminatorCodec);
+		}
+	}
+	
+	
+	@Nonnull
+	private final ByteBuffer buffer;
+	@Nonnull
+	private final Codec<? extends D> discriminatorCodec;
+	
+	private final int numNodes;
+	private final int numLeaves;
+	private final int numInner;
+	
+	private final int leafTableOffset;
+	private final int innerTableOffset;
+	private final int discrIndexOffset;
+	private final int discrDataOffset;
+	
+	private FrozenBDTree(ByteBuffer buffer, Codec<? extends D> discriminatorCodec) throws IOException {
+		this.buffer = buffer;
+		this.discriminatorCodec = discriminatorCodec;
+		
+		int magic = buffer.getInt(0);
+		if(magic != MAGIC) {
+			throw new IOException("Not a frozen tree file (magic number " + Integer.toHexString(magic) + ")");
+		}
+		int version = buffer.getInt(4);
+		if(version != VERSION) {
+			throw new IOException("Unsupported format version " + version);
+		}
+		this.numNodes = buffer.getInt(8);
+		this.numLeaves = buffer.getInt(12);
+		this.numInner = buffer.getInt(16);
+		if(numNodes < 1 || numLeaves < 1 || numInner < 0 || numLeaves + numInner != numNodes) {
+			throw new IOException("Inconsistent node counts " + numNodes + "/" + numLeaves + "/" + numInner);
+		}
+		
+		this.leafTableOffset = HEADER_SIZE + numNodes * NODE_RECORD_SIZE;
+		this.innerTableOffset = leafTableOffset + 4 * numLeaves;
+		this.discrIndexOffset = innerTableOffset + 4 * numInner;
+		this.discrDataOffset = discrIndexOffset + 4 * (numInner + 1);
+		
+		if(discrDataOffset > buffer.capacity()
+				|| discrDataOffset + (long)buffer.getInt(discrIndexOffset + 4 * numInner) != buffer.capacity()) {
+			throw new IOException("Frozen tree file is truncated or corrupt");
+		}
+	}
+	
+	/**
+	 * Retrieves the node ID of the root node. This is always {@code 0}.
+	 * @return the node ID of the root node
+	 */
+	public int getRoot() {
+		return 0;
+	}
+	
+	@Nonnegative
+	public int getNumNodes() {
+		return numNodes;
+	}
+	
+	@Nonnegative
+	public int getNumLeaves() {
+		return numLeaves;
+	}
+	
+	@Nonnegative
+	public int getNumInnerNodes() {
+		return numInner;
+	}
+	
+	@Nonnegative
+	public int getNumNodes(NodeType type) {
+		if(type == NodeType.ANY) {
+			return numNodes;
+		}
+		if(type == NodeType.INNER) {
+			return numInner;
+		}
+		return numLeaves;
+	}
+	
+	/**
+	 * Retrieves the node ID of the leaf with the given leaf ID.
+	 * @param leafId the leaf ID
+	 * @return the node ID of the respective leaf
+	 */
+	public int getLeaf(@Nonnegative int leafId) {
+		checkIndex(leafId, numLeaves);
+		return buffer.getInt(leafTableOffset + 4 * leafId);
+	}
+	
+	/**
+	 * Retrieves the node ID of the inner node with the given inner node ID.
+	 * @param innerId the inner node ID
+	 * @return the node ID of the respective inner node
+	 */
+	public int getInnerNode(@Nonnegative int innerId) {
+		checkIndex(innerId, numInner);
+		return buffer.getInt(innerTableOffset + 4 * innerId);
+	}
+	
+	/**
+	 * Retrieves the parent of the given node.
+	 * @param node the node ID
+	 * @return the node ID of the parent, or {@link #NO_NODE} if {@code node} is the root
+	 */
+	public int getParent(int node) {
+		return field(node, PARENT);
+	}
+	
+	public int getDepth(int node) {
+		return field(node, DEPTH);
+	}
+	
+	public boolean isLeaf(int node) {
+		return field(node, FALSE_CHILD) == NO_NODE;
+	}
+	
+	public boolean isInner(int node) {
+		return field(node, FALSE_CHILD) != NO_NODE;
+	}
+	
+	@Nonnegative
+	public int getLeafId(int node) {
+		assert isLeaf(node) : "Only leaves have valid leaf ids";
+		return field(node, TYPE_ID);
+	}
+	
+	@Nonnegative
+	public int getInnerId(int node) {
+		assert isInner(node) : "Only inner nodes have valid inner node ids";
+		return field(node, TYPE_ID);
+	}
+	
+	public int getFalseChild(int node) {
+		assert isInner(node) : "Only inner nodes have children";
+		return field(node, FALSE_CHILD);
+	}
+	
+	public int getTrueChild(int node) {
+		assert isInner(node) : "Only inner nodes have children";
+		return field(node, TRUE_CHILD);
+	}
+	
+	public int getChild(int node, boolean label) {
+		assert isInner(node) : "Only inner nodes have children";
+		return field(node, label ? TRUE_CHILD : FALSE_CHILD);
+	}
+	
+	/**
+	 * Retrieves and decodes the discriminator of the given inner node.
+	 * @param node the node ID
+	 * @return the discriminator
+	 */
+	@Nullable
+	public D getDiscriminator(int node) {
+		assert isInner(node) : "Only inner nodes have discriminators";
+		return decodeDiscriminator(field(node, TYPE_ID));
+	}
+	
+	/**
+	 * Retrieves a read-only view of the encoded discriminator of the given inner node.
+	 * @param node the node ID
+	 * @return a buffer containing exactly the encoded discriminator
+	 */
+	@Nonnull
+	public ByteBuffer getEncodedDiscriminator(int node) {
+		assert isInner(node) : "Only inner nodes have discriminators";
+		return discriminatorSlice(field(node, TYPE_ID));
+	}
+	
+	public int leastCommonAncestor(int n1, int n2) {
+		int curr1 = n1, curr2 = n2;
+		int d1 = getDepth(curr1), d2 = getDepth(curr2);
+		
+		while(d1 > d2) {
+			curr1 = getParent(curr1);
+			d1--;
+		}
+		while(d2 > d1) {
+			curr2 = getParent(curr2);
+			d2--;
+		}
+		while(curr1 != curr2) {
+			curr1 = getParent(curr1);
+			curr2 = getParent(curr2);
+		}
+		return curr1;
+	}
+	
+	@Nullable
+	public D separator(int n1, int n2) {
+		if(n1 == n2) {
+			throw new IllegalArgumentException("Identical nodes cannot be separated");
+		}
+		return getDiscriminator(leastCommonAncestor(n1, n2));
+	}
+	
+	public <X> int sift(@Nullable X object, BDTEvaluator<? super X,? super D> evaluator) {
+		return sift(getRoot(), object, evaluator);
+	}
+	
+	public <X> int sift(int start, @Nullable X object, BDTEvaluator<? super X,? super D> evaluator) {
+		int curr = start;
+		int fc;
+		while((fc = field(curr, FALSE_CHILD)) != NO_NODE) {
+			D discr = decodeDiscriminator(field(curr, TYPE_ID));
+			curr = evaluator.evaluate(object, discr) ? field(curr, TRUE_CHILD) : fc;
+		}
+		return curr;
+	}
+	
+	public <X> int sift(@Nullable X object, FrozenBDTEvaluator<? super X> evaluator) {
+		return sift(getRoot(), object, evaluator);
+	}
+	
+	public <X> int sift(int start, @Nullable X object, FrozenBDTEvaluator<? super X> evaluator) {
+		ByteBuffer buffer = this.buffer;
+		int curr = start;
+		int fc;
+		while((fc = field(curr, FALSE_CHILD)) != NO_NODE) {
+			int idxPos = discrIndexOffset + 4 * field(curr, TYPE_ID);
+			int begin = buffer.getInt(idxPos);
+			int end = buffer.getInt(idxPos + 4);
+			boolean eval = evaluator.evaluate(object, buffer, discrDataOffset + begin, end - begin);
+			curr = eval ? field(curr, TRUE_CHILD) : fc;
+		}
+		return curr;
+	}
+	
+	
+	private int field(int node, int fieldOffset) {
+		return buffer.getInt(HEADER_SIZE + node * NODE_RECORD_SIZE + fieldOffset);
+	}
+	
+	private ByteBuffer discriminatorSlice(int innerId) {
+		int idxPos = discrIndexOffset + 4 * innerId;
+		int begin = discrDataOffset + buffer.getInt(idxPos);
+		int end = discrDataOffset + buffer.getInt(idxPos + 4);
+		ByteBuffer slice = buffer.duplicate();
+		((Buffer)slice).limit(end).position(begin);
+		return slice.slice().asReadOnlyBuffer();
+	}
+	
+	private D decodeDiscriminator(int innerId) {
+		try {
+			return discriminatorCodec.decode(new DataInputStream(new ByteBufferInputStream(discriminatorSlice(innerId))));
+		}
+		catch(IOException ex) {
+			throw new IllegalStateException("Could not decode discriminator of inner node " + innerId, ex);
+		}
+	}
+	
+	private static void checkIndex(int index, int size) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+		}
+	}
+
+}
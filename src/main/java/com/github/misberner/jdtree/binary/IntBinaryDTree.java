@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * A compact binary discrimination tree with primitive {@code int} discriminators.
+ * <p>
+ * Discriminators are stored unboxed in an {@code int} array indexed by inner node ID,
+ * and are evaluated using an {@link IntBDTEvaluator}, hence sifting does not allocate
+ * any objects. Apart from the discriminator type, this class behaves exactly like
+ * {@link CompactBinaryDTree}; in particular, node, leaf and inner node IDs are assigned
+ * in the same way as in {@link BinaryDTree}.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public class IntBinaryDTree extends AbstractCompactBDTree {
+	
+	/**
+	 * Creates a copy of the given tree with unboxed discriminators, preserving all node,
+	 * leaf and inner node IDs. The tree must not contain {@code null} discriminators.
+	 * 
+	 * @param tree the tree to copy
+	 * @return the copy
+	 */
+	@Nonnull
+	public static IntBinaryDTree copyOf(BinaryDTree<? extends Integer> tree) {
+		IntBinaryDTree result = new IntBinaryDTree(tree.getNumNodes());
+		result.copyStructure(tree);
+		
+		result.discriminators = new int[result.innerNodes.length];
+		for(BDTNode<? extends Integer> inner : tree.getInnerNodes()) {
+			Integer discr = inner.getDiscriminator();
+			if(discr == null) {
+				throw new IllegalArgumentException("Inner node " + inner.getNodeId() + " has a null discriminator");
+			}
+			result.discriminators[inner.getInnerId()] = discr.intValue();
+		}
+		
+		return result;
+	}
+	
+	
+	@Nonnull
+	private int[] discriminators;
+	
+	/**
+	 * Initializes a new discrimination tree with a single (root) leaf. The root
+	 * has a node ID of {@code 0} and a leaf ID of {@code 0}.
+	 */
+	public IntBinaryDTree() {
+		this(0);
+	}
+	
+	/**
+	 * Initializes a new discrimination tree with a single (root) leaf,
+	 * reserving space for the given number of nodes.
+	 * 
+	 * @param expectedNodes the expected number of nodes
+	 */
+	public IntBinaryDTree(@Nonnegative int expectedNodes) {
+		super(expectedNodes);
+		this.discriminators = new int[innerNodes.length];
+	}
+	
+	/**
+	 * Retrieves the discriminator of the given inner node.
+	 * @param node the node ID
+	 * @return the discriminator of the node
+	 */
+	public int getDiscriminator(int node) {
+		assert isInner(node) : "Only inner nodes have discriminators";
+		return discriminators[typeIds[node]];
+	}
+	
+	/**
+	 * Splits a leaf, turning it into an inner node with two children (leaves).
+	 * 
+	 * @param leaf the leaf to split
+	 * @param discriminator the discriminator for the new inner node
+	 */
+	public void split(int leaf, int discriminator) {
+		split(leaf, discriminator, false);
+	}
+	
+	/**
+	 * Splits a leaf, turning it into an inner node with two children (leaves).
+	 * The {@code repChild} parameter allows controlling which of the newly
+	 * created children will be assigned the leaf ID of the split node.
+	 * 
+	 * @param leaf the leaf to split
+	 * @param discriminator the discriminator for the new inner node
+	 * @param repChild the child of the newly split node that will be assigned
+	 * the leaf ID of {@code leaf}.
+	 */
+	public void split(int leaf, int discriminator, boolean repChild) {
+		int innerId = splitStructure(leaf, repChild);
+		if(innerId == discriminators.length) {
+			discriminators = Arrays.copyOf(discriminators, innerNodes.length);
+		}
+		discriminators[innerId] = discriminator;
+	}
+	
+	/**
+	 * Splits a leaf according to another discrimination tree, analogously to
+	 * {@link BinaryDTree#split(BDTNode, BinaryDTree)}.
+	 * 
+	 * @param leaf the leaf to split
+	 * @param splitTree the tree according to which to split
+	 * @return an array mapping the node IDs of {@code splitTree} to the IDs of the
+	 * newly created/split nodes in this tree
+	 */
+	@Nonnull
+	public int[] split(int leaf, IntBinaryDTree splitTree) {
+		// Copy the structure of the split tree first, to be aliasing-safe
+		int splitNodes = splitTree.getNumNodes();
+		int[] mapping = new int[splitNodes];
+		
+		int[] splitChildren = Arrays.copyOf(splitTree.children, 2 * splitNodes);
+		int[] splitDiscrs = Arrays.copyOf(splitTree.discriminators, splitTree.getNumInnerNodes());
+		int[] splitTypeIds = Arrays.copyOf(splitTree.typeIds, splitNodes);
+		
+		int[] stack = new int[32];
+		int sp = 0;
+		stack[sp++] = leaf;
+		stack[sp++] = splitTree.getRoot();
+		
+		while(sp > 0) {
+			int splitNode = stack[--sp];
+			int thisNode = stack[--sp];
+			mapping[splitNode] = thisNode;
+			
+			int fc = splitChildren[splitNode << 1];
+			if(fc != NO_NODE) {
+				split(thisNode, splitDiscrs[splitTypeIds[splitNode]]);
+				
+				if(sp + 4 > stack.length) {
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				stack[sp++] = getFalseChild(thisNode);
+				stack[sp++] = fc;
+				stack[sp++] = getTrueChild(thisNode);
+				stack[sp++] = splitChildren[(splitNode << 1) + 1];
+			}
+		}
+		
+		return mapping;
+	}
+	
+	public int separator(int n1, int n2) {
+		if(n1 == n2) {
+			throw new IllegalArgumentException("Identical nodes cannot be separated");
+		}
+		return getDiscriminator(leastCommonAncestor(n1, n2));
+	}
+	
+	public <X> int sift(@Nullable X object, IntBDTEvaluator<? super X> evaluator) {
+		return sift(getRoot(), object, evaluator);
+	}
+	
+	public <X> int sift(int start, @Nullable X object, IntBDTEvaluator<? super X> evaluator) {
+		int[] children = this.children;
+		int[] typeIds = this.typeIds;
+		int[] discriminators = this.discriminators;
+		
+		int curr = start;
+		int base;
+		while(children[base = curr << 1] != NO_NODE) {
+			int discr = discriminators[typeIds[curr]];
+			curr = evaluator.evaluate(object, discr) ? children[base + 1] : children[base];
+		}
+		return curr;
+	}
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Engine for sifting large batches of objects into a {@link BinaryDTree} in parallel.
+ * <p>
+ * The batch is recursively partitioned into chunks, which are sifted by the workers of a
+ * {@link ForkJoinPool}. Chunks of at most {@link #getThreshold() threshold} objects are
+ * sifted sequentially.
+ * <p>
+ * The tree must not be modified while a parallel sift is in progress (see the
+ * thread-safety notes of {@link BinaryDTree}), and the evaluator must be safe to be
+ * called concurrently from several threads.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public class ParallelBDTSifter {
+	
+	/**
+	 * The default maximum number of objects that are sifted sequentially by a single task.
+	 */
+	public static final int DEFAULT_THRESHOLD = 64;
+	
+	@Nonnull
+	private final ForkJoinPool pool;
+	private final boolean ownPool;
+	@Nonnegative
+	private final int threshold;
+	
+	/**
+	 * Constructor. Uses the given pool for sifting.
+	 * 
+	 * @param pool the pool to use
+	 * @param threshold the maximum number of objects to be sifted sequentially by a single task
+	 */
+	public ParallelBDTSifter(ForkJoinPool pool, @Nonnegative int threshold) {
+		this(pool, false, threshold);
+	}
+	
+	/**
+	 * Constructor. Creates a new pool with the given parallelism level, which is
+	 * shut down by {@link #shutdown()}.
+	 * 
+	 * @param parallelism the parallelism level
+	 * @param threshold the maximum number of objects to be sifted sequentially by a single task
+	 */
+	public ParallelBDTSifter(@Nonnegative int parallelism, @Nonnegative int threshold) {
+		this(new ForkJoinPool(parallelism), true, threshold);
+	}
+	
+	/**
+	 * Constructor. Creates a new pool with the given parallelism level, which is
+	 * shut down by {@link #shutdown()}.
+	 * 
+	 * @param parallelism the parallelism level
+	 */
+	public ParallelBDTSifter(@Nonnegative int parallelism) {
+		this(parallelism, DEFAULT_THRESHOLD);
+	}
+	
+	/**
+	 * Constructor. Creates a new pool with a parallelism level equal to the number of
+	 * available processors, which is shut down by {@link #shutdown()}.
+	 */
+	public ParallelBDTSifter() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	private ParallelBDTSifter(ForkJoinPool pool, boolean ownPool, int threshold) {
+		if(threshold < 1) {
+			throw new IllegalArgumentException("Threshold must be positive, is " + threshold);
+		}
+		this.pool = pool;
+		this.ownPool = ownPool;
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * Retrieves the maximum number of objects that are sifted sequentially by a single task.
+	 * @return the sequential threshold
+	 */
+	@Nonnegative
+	public int getThreshold() {
+		return threshold;
+	}
+	
+	/**
+	 * Retrieves the parallelism level of the underlying pool.
+	 * @return the parallelism level
+	 */
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+	
+	/**
+	 * Sifts a batch of objects into the given tree, starting at the root.
+	 * 
+	 * @see #siftAll(BinaryDTree, BDTNode, Collection, BDTEvaluator)
+	 */
+	@Nonnull
+	public <D,X> List<BDTNode<D>> siftAll(BinaryDTree<D> tree, Collection<? extends X> objects, BDTEvaluator<? super X,? super D> evaluator) {
+		return siftAll(tree, tree.getRoot(), objects, evaluator);
+	}
+	
+	/**
+	 * Sifts a batch of objects into the given tree in parallel.
+	 * 
+	 * @param tree the tree to sift the objects into
+	 * @param start the node to start sifting at
+	 * @param objects the objects to sift
+	 * @param evaluator the evaluator, which must be safe to be called concurrently
+	 * @return a list containing, for each object (in the iteration order of {@code objects}),
+	 * the leaf the object was sifted into
+	 */
+	@Nonnull
+	@SuppressWarnings("unchecked")
+	public <D,X> List<BDTNode<D>> siftAll(BinaryDTree<D> tree, BDTNode<D> start, Collection<? extends X> objects, BDTEvaluator<? super X,? super D> evaluator) {
+		List<? extends X> objList = new ArrayList<>(objects);
+		BDTNode<D>[] result = new BDTNode[objList.size()];
+		
+		if(!objList.isEmpty()) {
+			pool.invoke(new SiftTask<>(tree, start, objList, evaluator, result, 0, result.length));
+		}
+		
+		return Arrays.asList(result);
+	}
+	
+	/**
+	 * Shuts down the underlying pool, if it was created by this sifter.
+	 */
+	public void shutdown() {
+		if(ownPool) {
+			pool.shutdown();
+		}
+	}
+	
+	
+	private final class SiftTask<D,X> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final BinaryDTree<D> tree;
+		private final BDTNode<D> start;
+		private final List<? extends X> objects;
+		private final BDTEvaluator<? super X,? super D> evaluator;
+		private final BDTNode<D>[] result;
+		private final int low;
+		private final int high;
+		
+		public SiftTask(BinaryDTree<D> tree, BDTNode<D> start, List<? extends X> objects,
+				BDTEvaluator<? super X,? super D> evaluator, BDTNode<D>[] result, int low, int high) {
+			this.tree = tree;
+			this.start = start;
+			this.objects = objects;
+			this.evaluator = evaluator;
+			this.result = result;
+			this.low = low;
+			this.high = high;
+		}
+
+		@Override
+		protected void compute() {
+			if(high - low <= threshold) {
+				for(int i = low; i < high; i++) {
+					result[i] = tree.sift(start, objects.get(i), evaluator);
+				}
+				return;
+			}
+			int mid = (low + high) >>> 1;
+			invokeAll(new SiftTask<>(tree, start, objects, evaluator, result, low, mid),
+					new SiftTask<>(tree, start, objects, evaluator, result, mid, high));
+		}
+	}
+
+}
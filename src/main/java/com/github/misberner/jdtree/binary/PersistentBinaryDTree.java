@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * A persistent binary discrimination tree, i.e., a binary discrimination tree that retains all
+ * of its previous versions.
+ * <p>
+ * Versions are represented as immutable {@link BDTSnapshot}s. Each modification creates a new
+ * version, which shares all unaffected nodes with its predecessor: {@link #split(BDTSnapshotNode, Object)}
+ * only copies the path from the root to the split leaf, and
+ * {@link #replaceDiscriminator(BDTSnapshotNode, Object, BDTEvaluator)} additionally copies the
+ * affected subtree. The memory consumption thus grows with the size of the modifications, not with
+ * the number of versions times the size of the tree. The current version can be reset to any
+ * previous version in constant time (see {@link #rollback(BDTSnapshot)}), and old versions remain
+ * fully usable for sifting, LCA queries etc.
+ * <p>
+ * Node, leaf and inner node IDs are assigned as in {@link BinaryDTree}. Nodes of a version are
+ * identified by the {@link BDTSnapshotNode} objects of this version; nodes of other versions may
+ * not be passed to the modification methods.
+ * <p>
+ * This class is not thread-safe, but versions may be accessed concurrently.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ */
+@ParametersAreNonnullByDefault
+public class PersistentBinaryDTree<D> {
+	
+	// Bit flags indicating which outcomes occur in a subtree during replaceDiscriminator
+	private static final int FALSE_OUTCOME = 1;
+	private static final int TRUE_OUTCOME = 2;
+	
+	/**
+	 * Creates a persistent tree whose initial version is a copy of the given tree.
+	 * 
+	 * @param tree the tree to copy
+	 * @return the persistent tree
+	 */
+	@Nonnull
+	public static <D> PersistentBinaryDTree<D> copyOf(BinaryDTree<D> tree) {
+		PersistentBinaryDTree<D> result = new PersistentBinaryDTree<>();
+		BDTSnapshotNode<D> root = BDTSnapshotNode.copyOf(tree.getRoot(), new BDTPath());
+		result.current = result.newVersion(root, tree.getNumNodes(), tree.getNumLeaves(), tree.getNumInnerNodes());
+		return result;
+	}
+	
+	@Nonnull
+	private BDTSnapshot<D> current;
+	
+	/**
+	 * Initializes a new persistent binary discrimination tree, whose initial version consists
+	 * of a single (root) leaf.
+	 */
+	public PersistentBinaryDTree() {
+		this.current = newVersion(new BDTSnapshotNode<D>(new BDTPath(), 0, 0), 1, 1, 0);
+	}
+	
+	/**
+	 * Retrieves the current version of this tree.
+	 * @return the current version
+	 */
+	@Nonnull
+	public BDTSnapshot<D> getCurrentVersion() {
+		return current;
+	}
+	
+	/**
+	 * Resets this tree to the given version, in constant time. All versions, including ones
+	 * created after the given version, remain valid.
+	 * 
+	 * @param version the version to reset this tree to, which must be a version of this tree
+	 */
+	public void rollback(BDTSnapshot<D> version) {
+		if(version.owner != this) {
+			throw new IllegalArgumentException("Not a version of this tree");
+		}
+		this.current = version;
+	}
+	
+	@Nonnull
+	public BDTSnapshotNode<D> getRoot() {
+		return current.getRoot();
+	}
+	
+	/**
+	 * Splits a leaf of the current version, creating a new version.
+	 * 
+	 * @param leaf the leaf to split
+	 * @param discriminator the discriminator for the new inner node
+	 * @return the new version
+	 * 
+	 * @see BinaryDTree#split(BDTNode, Object)
+	 */
+	@Nonnull
+	public BDTSnapshot<D> split(BDTSnapshotNode<D> leaf, D discriminator) {
+		return split(leaf, discriminator, false);
+	}
+	
+	/**
+	 * Splits a leaf of the current version, creating a new version.
+	 * 
+	 * @param leaf the leaf to split
+	 * @param discriminator the discriminator for the new inner node
+	 * @param repChild the child of the newly split node that will be assigned the leaf ID of
+	 * {@code leaf}
+	 * @return the new version
+	 * 
+	 * @see BinaryDTree#split(BDTNode, Object, boolean)
+	 */
+	@Nonnull
+	public BDTSnapshot<D> split(BDTSnapshotNode<D> leaf, D discriminator, boolean repChild) {
+		if(!leaf.isLeaf()) {
+			throw new IllegalArgumentException("Can only split leaves");
+		}
+		BDTSnapshotNode<D>[] path = checkedPath(leaf);
+		
+		int numNodes = current.getNumNodes();
+		int numLeaves = current.getNumLeaves();
+		int numInner = current.getNumInnerNodes();
+		
+		BDTSnapshotNode<D> repLeaf = new BDTSnapshotNode<>(new BDTPath(leaf.path, repChild), numNodes, leaf.getLeafId());
+		BDTSnapshotNode<D> newLeaf = new BDTSnapshotNode<>(new BDTPath(leaf.path, !repChild), numNodes + 1, numLeaves);
+		BDTSnapshotNode<D> inner;
+		if(repChild) {
+			inner = new BDTSnapshotNode<>(leaf.path, leaf.getNodeId(), numInner, discriminator, newLeaf, repLeaf);
+		}
+		else {
+			inner = new BDTSnapshotNode<>(leaf.path, leaf.getNodeId(), numInner, discriminator, repLeaf, newLeaf);
+		}
+		
+		BDTSnapshotNode<D> newRoot = BDTSnapshotNode.replacePath(path, leaf.path.labels(), inner);
+		current = newVersion(newRoot, numNodes + 2, numLeaves + 1, numInner + 1);
+		return current;
+	}
+	
+	/**
+	 * Replaces the discriminator of an inner node of the current version, creating a new version.
+	 * The leaves in the subtree of this node are re-arranged according to the outcome of the new
+	 * discriminator, as determined by {@code leafEvaluator}, retaining their leaf IDs. Node and
+	 * inner node IDs of the subtree are reassigned in preorder, using the IDs previously occupied
+	 * by the subtree.
+	 * 
+	 * @param innerNode the inner node whose discriminator to replace
+	 * @param newDiscriminator the new discriminator
+	 * @param leafEvaluator the evaluator determining the outcome of the new discriminator for
+	 * the leaves in the subtree
+	 * @return the new version, or {@code null} if the new discriminator does not split the leaves
+	 * of the subtree (in which case no new version is created)
+	 * 
+	 * @see BinaryDTree#replaceDiscriminator(BDTNode, Object, BDTEvaluator)
+	 */
+	@Nullable
+	public BDTSnapshot<D> replaceDiscriminator(BDTSnapshotNode<D> innerNode, D newDiscriminator,
+			BDTEvaluator<? super BDTSnapshotNode<D>,? super D> leafEvaluator) {
+		if(!innerNode.isInner()) {
+			throw new IllegalArgumentException("Can only replace the discriminator of inner nodes");
+		}
+		BDTSnapshotNode<D>[] path = checkedPath(innerNode);
+		
+		// Determine, for each node of the subtree, whether it contains leaves with a true/false
+		// outcome, and collect the IDs
+		Map<BDTSnapshotNode<D>,Integer> outcomes = new IdentityHashMap<>();
+		List<Integer> nodeIds = new ArrayList<>();
+		List<Integer> innerIds = new ArrayList<>();
+		
+		Deque<BDTSnapshotNode<D>> stack = new ArrayDeque<>();
+		List<BDTSnapshotNode<D>> postorder = new ArrayList<>();
+		stack.push(innerNode);
+		while(!stack.isEmpty()) {
+			BDTSnapshotNode<D> curr = stack.pop();
+			postorder.add(curr);
+			if(curr != innerNode) {
+				nodeIds.add(curr.getNodeId());
+				if(curr.isInner()) {
+					innerIds.add(curr.getInnerId());
+				}
+			}
+			if(curr.isInner()) {
+				stack.push(curr.getFalseChild());
+				stack.push(curr.getTrueChild());
+			}
+		}
+		for(int i = postorder.size() - 1; i >= 0; i--) {
+			BDTSnapshotNode<D> curr = postorder.get(i);
+			int outcome;
+			if(curr.isLeaf()) {
+				outcome = leafEvaluator.evaluate(curr, newDiscriminator) ? TRUE_OUTCOME : FALSE_OUTCOME;
+			}
+			else {
+				outcome = outcomes.get(curr.getFalseChild()) | outcomes.get(curr.getTrueChild());
+			}
+			outcomes.put(curr, outcome);
+		}
+		
+		if(outcomes.get(innerNode) != (TRUE_OUTCOME | FALSE_OUTCOME)) {
+			return null;
+		}
+		
+		Collections.sort(nodeIds);
+		Collections.sort(innerIds);
+		IDCursor ids = new IDCursor(nodeIds, innerIds);
+		
+		BDTSnapshotNode<D> newInner = new BDTSnapshotNode<>(innerNode.path, innerNode.getNodeId(),
+				innerNode.getInnerId(), newDiscriminator, null, null);
+		BDTSnapshotNode<D> falseChild = extract(innerNode, new BDTPath(innerNode.path, false), FALSE_OUTCOME, outcomes, ids);
+		BDTSnapshotNode<D> trueChild = extract(innerNode, new BDTPath(innerNode.path, true), TRUE_OUTCOME, outcomes, ids);
+		newInner.setChildren(falseChild, trueChild);
+		
+		BDTSnapshotNode<D> newRoot = BDTSnapshotNode.replacePath(path, innerNode.path.labels(), newInner);
+		current = newVersion(newRoot, current.getNumNodes(), current.getNumLeaves(), current.getNumInnerNodes());
+		return current;
+	}
+	
+	private static final class IDCursor {
+		private final List<Integer> nodeIds;
+		private final List<Integer> innerIds;
+		private int nodeCursor;
+		private int innerCursor;
+		
+		public IDCursor(List<Integer> nodeIds, List<Integer> innerIds) {
+			this.nodeIds = nodeIds;
+			this.innerIds = innerIds;
+		}
+		
+		public int nextNodeId() {
+			return nodeIds.get(nodeCursor++).intValue();
+		}
+		
+		public int nextInnerId() {
+			return innerIds.get(innerCursor++).intValue();
+		}
+	}
+	
+	private static final class ExtractRecord<D> {
+		private final BDTSnapshotNode<D> origNode;
+		private final BDTPath path;
+		@Nullable
+		private final BDTSnapshotNode<D> parentCopy;
+		
+		public ExtractRecord(BDTSnapshotNode<D> origNode, BDTPath path, @Nullable BDTSnapshotNode<D> parentCopy) {
+			this.origNode = origNode;
+			this.path = path;
+			this.parentCopy = parentCopy;
+		}
+	}
+	
+	/**
+	 * Creates a copy of the subtree rooted at {@code root} that contains only the leaves with the
+	 * given outcome, omitting inner nodes with only one child containing such leaves. IDs are
+	 * assigned in preorder.
+	 */
+	private static <D> BDTSnapshotNode<D> extract(BDTSnapshotNode<D> root, BDTPath path, int outcome,
+			Map<BDTSnapshotNode<D>,Integer> outcomes, IDCursor ids) {
+		BDTSnapshotNode<D> result = null;
+		
+		Deque<ExtractRecord<D>> stack = new ArrayDeque<>();
+		stack.push(new ExtractRecord<>(skip(root, outcome, outcomes), path, null));
+		
+		while(!stack.isEmpty()) {
+			ExtractRecord<D> rec = stack.pop();
+			BDTSnapshotNode<D> orig = rec.origNode;
+			
+			BDTSnapshotNode<D> copy;
+			int nodeId = ids.nextNodeId();
+			if(orig.isLeaf()) {
+				copy = new BDTSnapshotNode<>(rec.path, nodeId, orig.getLeafId());
+			}
+			else {
+				copy = new BDTSnapshotNode<>(rec.path, nodeId, ids.nextInnerId(), orig.getDiscriminator(), null, null);
+			}
+			
+			BDTSnapshotNode<D> parent = rec.parentCopy;
+			if(parent == null) {
+				result = copy;
+			}
+			else if(rec.path.label) {
+				// The false child has already been copied
+				parent.setChildren(parent.getFalseChild(), copy);
+			}
+			else {
+				parent.setChildren(copy, null);
+			}
+			
+			if(orig.isInner()) {
+				// Push the true child first, such that the false child is copied (and numbered) first
+				stack.push(new ExtractRecord<>(skip(orig.getTrueChild(), outcome, outcomes), new BDTPath(rec.path, true), copy));
+				stack.push(new ExtractRecord<>(skip(orig.getFalseChild(), outcome, outcomes), new BDTPath(rec.path, false), copy));
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Descends from the given node as long as only one child of the current node contains leaves
+	 * with the given outcome.
+	 */
+	private static <D> BDTSnapshotNode<D> skip(BDTSnapshotNode<D> node, int outcome, Map<BDTSnapshotNode<D>,Integer> outcomes) {
+		BDTSnapshotNode<D> curr = node;
+		while(curr.isInner()) {
+			boolean falseMatches = (outcomes.get(curr.getFalseChild()) & outcome) != 0;
+			boolean trueMatches = (outcomes.get(curr.getTrueChild()) & outcome) != 0;
+			if(falseMatches && trueMatches) {
+				break;
+			}
+			curr = falseMatches ? curr.getFalseChild() : curr.getTrueChild();
+		}
+		return curr;
+	}
+	
+	private BDTSnapshotNode<D>[] checkedPath(BDTSnapshotNode<D> node) {
+		BDTSnapshotNode<D>[] path = current.nodesOnPath(node.path);
+		if(path == null || path[path.length - 1] != node) {
+			throw new IllegalArgumentException("Node " + node + " does not belong to the current version");
+		}
+		return path;
+	}
+	
+	private BDTSnapshot<D> newVersion(BDTSnapshotNode<D> root, int numNodes, int numLeaves, int numInner) {
+		return new BDTSnapshot<>(root, numNodes, numLeaves, numInner, this);
+	}
+
+}
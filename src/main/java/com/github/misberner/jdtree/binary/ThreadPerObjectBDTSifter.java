@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.SiftStatistics;
+
+/**
+ * Engine for sifting batches of objects into a {@link BinaryDTree} using blocking evaluators,
+ * with one thread per object.
+ * <p>
+ * Each object of a batch is sifted on its own thread, obtained from a {@link ThreadFactory}.
+ * This is intended for evaluators that spend most of their time waiting (e.g., for I/O), in
+ * which case a thread factory creating lightweight threads (such as
+ * {@code Thread.ofVirtual().factory()} on Java 21 and later) allows a very large number of
+ * concurrent sifts. The number of evaluations running at the same time is bounded by
+ * {@link #getMaxConcurrentEvaluations()}, across all batches sifted by this sifter.
+ * <p>
+ * A call to {@link #siftAll(BinaryDTree, BDTNode, Collection, BDTEvaluator) siftAll} does not
+ * return before all threads it started have terminated. If an evaluation fails, or the calling
+ * thread is interrupted, all threads of the batch are interrupted. Threads waiting for an
+ * evaluation permit then stop immediately, whereas running evaluations are only stopped if
+ * they respond to interruption.
+ * <p>
+ * The tree must not be modified while a sift is in progress (see the thread-safety notes of
+ * {@link BinaryDTree}), and the evaluator must be safe to be called concurrently from several
+ * threads.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public class ThreadPerObjectBDTSifter {
+	
+	@Nonnull
+	private final ThreadFactory threadFactory;
+	@Nonnegative
+	private final int maxConcurrentEvaluations;
+	@Nonnull
+	private final Semaphore permits;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param threadFactory the factory for creating the sifting threads
+	 * @param maxConcurrentEvaluations the maximum number of evaluations running at the same time
+	 */
+	public ThreadPerObjectBDTSifter(ThreadFactory threadFactory, @Nonnegative int maxConcurrentEvaluations) {
+		if(maxConcurrentEvaluations < 1) {
+			throw new IllegalArgumentException("Maximum number of concurrent evaluations must be positive, is " + maxConcurrentEvaluations);
+		}
+		this.threadFactory = threadFactory;
+		this.maxConcurrentEvaluations = maxConcurrentEvaluations;
+		this.permits = new Semaphore(maxConcurrentEvaluations);
+	}
+	
+	/**
+	 * Retrieves the maximum number of evaluations running at the same time.
+	 * @return the maximum number of concurrent evaluations
+	 */
+	@Nonnegative
+	public int getMaxConcurrentEvaluations() {
+		return maxConcurrentEvaluations;
+	}
+	
+	/**
+	 * Sifts a batch of objects into the given tree, starting at the root.
+	 * 
+	 * @see #siftAll(BinaryDTree, BDTNode, Collection, BDTEvaluator)
+	 */
+	@Nonnull
+	public <D,X> List<BDTNode<D>> siftAll(BinaryDTree<D> tree, Collection<? extends X> objects, BDTEvaluator<? super X,? super D> evaluator)
+			throws InterruptedException {
+		return siftAll(tree, tree.getRoot(), objects, evaluator);
+	}
+	
+	/**
+	 * Sifts a batch of objects into the given tree, using one thread per object.
+	 * <p>
+	 * If an evaluation throws an exception, the remaining sifts are cancelled, and the exception
+	 * is rethrown by this method once all threads have terminated.
+	 * 
+	 * @param tree the tree to sift the objects into
+	 * @param start the node to start sifting at
+	 * @param objects the objects to sift
+	 * @param evaluator the evaluator, which must be safe to be called concurrently
+	 * @return a list containing, for each object (in the iteration order of {@code objects}),
+	 * the leaf the object was sifted into
+	 * @throws InterruptedException if the calling thread is interrupted while waiting for the
+	 * sifts to complete. The remaining sifts are cancelled in this case
+	 * @throws RejectedExecutionException if the thread factory fails to create a thread
+	 */
+	@Nonnull
+	@SuppressWarnings("unchecked")
+	public <D,X> List<BDTNode<D>> siftAll(BinaryDTree<D> tree, BDTNode<D> start, Collection<? extends X> objects, BDTEvaluator<? super X,? super D> evaluator)
+			throws InterruptedException {
+		List<? extends X> objList = new ArrayList<>(objects);
+		int num = objList.size();
+		BDTNode<D>[] result = new BDTNode[num];
+		
+		SiftStatistics stats = tree.getSiftStatistics();
+		BDTEvaluationListener<? super D> listener = tree.getEvaluationListener();
+		
+		Round round = new Round(num);
+		Thread[] threads = new Thread[num];
+		Throwable failure = null;
+		try {
+			for(int i = 0; i < num; i++) {
+				Thread thread = threadFactory.newThread(new SiftRunnable<>(start, objList.get(i), evaluator, stats, listener, result, i, round));
+				if(thread == null) {
+					throw new RejectedExecutionException("Thread factory failed to create a sifting thread");
+				}
+				threads[i] = thread;
+				thread.start();
+			}
+			failure = round.await();
+		}
+		finally {
+			if(failure != null || round.hasRemaining()) {
+				cancel(threads);
+			}
+			joinAll(threads);
+		}
+		
+		if(failure instanceof RuntimeException) {
+			throw (RuntimeException)failure;
+		}
+		if(failure instanceof Error) {
+			throw (Error)failure;
+		}
+		
+		return Arrays.asList(result);
+	}
+	
+	private static void cancel(Thread[] threads) {
+		for(Thread thread : threads) {
+			if(thread != null) {
+				thread.interrupt();
+			}
+		}
+	}
+	
+	private static void joinAll(Thread[] threads) {
+		boolean interrupted = false;
+		for(Thread thread : threads) {
+			if(thread == null) {
+				continue;
+			}
+			while(true) {
+				try {
+					thread.join();
+					break;
+				}
+				catch(InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	
+	/**
+	 * Tracks the completion of the sifts of a batch.
+	 */
+	private static final class Round {
+		private int remaining;
+		@Nullable
+		private Throwable failure;
+		
+		public Round(int num) {
+			this.remaining = num;
+		}
+		
+		public synchronized void finished(@Nullable Throwable failure) {
+			remaining--;
+			if(failure != null && this.failure == null) {
+				this.failure = failure;
+			}
+			notifyAll();
+		}
+		
+		public synchronized boolean hasRemaining() {
+			return remaining > 0;
+		}
+		
+		@Nullable
+		public synchronized Throwable await() throws InterruptedException {
+			while(remaining > 0 && failure == null) {
+				wait();
+			}
+			return failure;
+		}
+	}
+	
+	private final class SiftRunnable<D,X> implements Runnable {
+		
+		private final BDTNode<D> start;
+		@Nullable
+		private final X object;
+		private final BDTEvaluator<? super X,? super D> evaluator;
+		@Nullable
+		private final SiftStatistics stats;
+		@Nullable
+		private final BDTEvaluationListener<? super D> listener;
+		private final BDTNode<D>[] result;
+		private final int index;
+		private final Round round;
+		
+		public SiftRunnable(BDTNode<D> start, @Nullable X object,
+				BDTEvaluator<? super X,? super D> evaluator, @Nullable SiftStatistics stats,
+				@Nullable BDTEvaluationListener<? super D> listener,
+				BDTNode<D>[] result, int index, Round round) {
+			this.start = start;
+			this.object = object;
+			this.evaluator = evaluator;
+			this.stats = stats;
+			this.listener = listener;
+			this.result = result;
+			this.index = index;
+			this.round = round;
+		}
+		
+		@Override
+		public void run() {
+			Throwable failure = null;
+			try {
+				result[index] = sift();
+			}
+			catch(InterruptedException ex) {
+				failure = new CancellationException("Sift was cancelled");
+			}
+			catch(RuntimeException | Error ex) {
+				failure = ex;
+			}
+			finally {
+				round.finished(failure);
+			}
+		}
+		
+		private BDTNode<D> sift() throws InterruptedException {
+			BDTNode<D> curr = start;
+			while(curr.isInner()) {
+				D discr = curr.getDiscriminator();
+				boolean eval;
+				// Time spent waiting for a permit is not reported to the listener
+				permits.acquire();
+				try {
+					if(stats != null) {
+						stats.recordEvaluations(curr.nodeId, curr.getDepth(), 1);
+					}
+					if(listener != null) {
+						long startTime = System.nanoTime();
+						eval = evaluator.evaluate(object, discr);
+						listener.evaluated(curr, object, discr, eval, System.nanoTime() - startTime);
+					}
+					else {
+						eval = evaluator.evaluate(object, discr);
+					}
+				}
+				finally {
+					permits.release();
+				}
+				curr = curr.getChild(eval);
+			}
+			if(stats != null) {
+				stats.recordLeaf(curr.nodeId, 1);
+			}
+			return curr;
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * An input stream reading the chunks written by a {@link ChunkedChannelOutputStream}
+ * from a {@link ReadableByteChannel}.
+ * <p>
+ * The stream never reads beyond the end marker written by
+ * {@link ChunkedChannelOutputStream#close()}, hence after reaching the end of this stream,
+ * the channel is positioned directly behind the chunked data. Closing this stream
+ * does <i>not</i> close the underlying channel.
+ * <p>
+ * Chunks longer than a maximum chunk size are rejected, such that corrupt or truncated data
+ * cannot cause the allocation of arbitrarily large buffers. The maximum chunk size must thus be
+ * at least the chunk size of the {@link ChunkedChannelOutputStream} that wrote the data.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public class ChunkedChannelInputStream extends InputStream {
+	
+	/**
+	 * The default maximum chunk size.
+	 */
+	public static final int DEFAULT_MAX_CHUNK_SIZE = 16 * ChunkedChannelOutputStream.DEFAULT_CHUNK_SIZE;
+	
+	private static final int HEADER_SIZE = 4;
+	
+	@Nonnull
+	private final ReadableByteChannel channel;
+	private final int maxChunkSize;
+	@Nonnull
+	private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+	@Nonnull
+	private ByteBuffer buffer;
+	private boolean endReached = false;
+	
+	public ChunkedChannelInputStream(ReadableByteChannel channel) {
+		this(channel, DEFAULT_MAX_CHUNK_SIZE);
+	}
+	
+	public ChunkedChannelInputStream(ReadableByteChannel channel, int maxChunkSize) {
+		if(maxChunkSize < 1) {
+			throw new IllegalArgumentException("Maximum chunk size must be positive, is " + maxChunkSize);
+		}
+		this.channel = channel;
+		this.maxChunkSize = maxChunkSize;
+		this.buffer = ByteBuffer.allocateDirect(Math.min(maxChunkSize, ChunkedChannelOutputStream.DEFAULT_CHUNK_SIZE));
+		((Buffer)buffer).limit(0);
+	}
+
+	@Override
+	public int read() throws IOException {
+		if(!buffer.hasRemaining() && !nextChunk()) {
+			return -1;
+		}
+		return buffer.get() & 0xff;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0) {
+			return 0;
+		}
+		if(!buffer.hasRemaining() && !nextChunk()) {
+			return -1;
+		}
+		int n = Math.min(len, buffer.remaining());
+		buffer.get(b, off, n);
+		return n;
+	}
+	
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+	
+	private boolean nextChunk() throws IOException {
+		if(endReached) {
+			return false;
+		}
+		((Buffer)header).clear();
+		readFully(header);
+		int length = header.getInt(0);
+		if(length < 0) {
+			throw new IOException("Invalid chunk length " + length);
+		}
+		if(length > maxChunkSize) {
+			throw new IOException("Chunk length " + length + " exceeds maximum chunk size " + maxChunkSize);
+		}
+		if(length == 0) {
+			endReached = true;
+			return false;
+		}
+		if(length > buffer.capacity()) {
+			buffer = ByteBuffer.allocateDirect(length);
+		}
+		((Buffer)buffer).clear();
+		((Buffer)buffer).limit(length);
+		readFully(buffer);
+		((Buffer)buffer).flip();
+		return true;
+	}
+	
+	private void readFully(ByteBuffer buf) throws IOException {
+		while(buf.hasRemaining()) {
+			if(channel.read(buf) < 0) {
+				throw new EOFException("Unexpected end of channel");
+			}
+		}
+	}
+
+}
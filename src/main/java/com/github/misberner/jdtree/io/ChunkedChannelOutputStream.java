@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * An output stream writing to a {@link WritableByteChannel} in length-prefixed chunks.
+ * <p>
+ * Data is buffered in a (direct) buffer of fixed size, and written as a chunk consisting of
+ * a four-byte length header followed by the data whenever the buffer is full or the stream
+ * is flushed. {@link #close() Closing} the stream writes an empty chunk as end marker, but
+ * does <i>not</i> close the underlying channel. This framing allows a
+ * {@link ChunkedChannelInputStream} to read exactly the data written by this stream,
+ * such that further data can be stored in the same channel afterwards.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public class ChunkedChannelOutputStream extends OutputStream {
+	
+	/**
+	 * The default chunk size.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+	
+	private static final int HEADER_SIZE = 4;
+	
+	@Nonnull
+	private final WritableByteChannel channel;
+	@Nonnull
+	private final ByteBuffer buffer;
+	private boolean closed = false;
+	
+	public ChunkedChannelOutputStream(WritableByteChannel channel) {
+		this(channel, DEFAULT_CHUNK_SIZE);
+	}
+	
+	public ChunkedChannelOutputStream(WritableByteChannel channel, int chunkSize) {
+		if(chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive, is " + chunkSize);
+		}
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(HEADER_SIZE + chunkSize);
+		((Buffer)buffer).position(HEADER_SIZE);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		if(!buffer.hasRemaining()) {
+			writeChunk();
+		}
+		buffer.put((byte)b);
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		int pos = off;
+		int remaining = len;
+		while(remaining > 0) {
+			if(!buffer.hasRemaining()) {
+				writeChunk();
+			}
+			int n = Math.min(remaining, buffer.remaining());
+			buffer.put(b, pos, n);
+			pos += n;
+			remaining -= n;
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		writeChunk();
+	}
+	
+	/**
+	 * Writes all buffered data as well as the end marker. The underlying channel is
+	 * not closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		writeChunk();
+		// end marker
+		buffer.putInt(0, 0);
+		((Buffer)buffer).position(0).limit(HEADER_SIZE);
+		writeFully();
+		closed = true;
+	}
+	
+	private void writeChunk() throws IOException {
+		int length = buffer.position() - HEADER_SIZE;
+		if(length == 0) {
+			return;
+		}
+		buffer.putInt(0, length);
+		((Buffer)buffer).flip();
+		writeFully();
+		((Buffer)buffer).clear();
+		((Buffer)buffer).position(HEADER_SIZE);
+	}
+	
+	private void writeFully() throws IOException {
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	
+	private void ensureOpen() throws IOException {
+		if(closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+}
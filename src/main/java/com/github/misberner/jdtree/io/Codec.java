@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Codec for writing and reading values (such as discriminators or outcomes) to and from
+ * the binary tree formats.
+ * <p>
+ * A codec has to be self-delimiting, i.e., {@link #decode(DataInput)} must consume exactly
+ * the bytes written by the corresponding call to {@link #encode(Object, DataOutput)}.
+ * See {@link Codecs} for codecs for common types.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <T> value type
+ */
+@ParametersAreNonnullByDefault
+public interface Codec<T> {
+	
+	/**
+	 * Writes the given value.
+	 * @param value the value to write
+	 * @param out the output to write to
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void encode(@Nullable T value, DataOutput out) throws IOException;
+	
+	/**
+	 * Reads a value.
+	 * @param in the input to read from
+	 * @return the value
+	 * @throws IOException if an I/O error occurs, or the input is malformed
+	 */
+	@Nullable
+	public T decode(DataInput in) throws IOException;
+
+}
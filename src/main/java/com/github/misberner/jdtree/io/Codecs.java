@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Codecs for common value types.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public final class Codecs {
+	
+	private static final Codec<String> STRING = new Codec<String>() {
+		@Override
+		public void encode(String value, DataOutput out) throws IOException {
+			byte[] bytes = value.getBytes(Charsets.UTF_8);
+			writeVarInt(bytes.length, out);
+			out.write(bytes);
+		}
+		@Override
+		public String decode(DataInput in) throws IOException {
+			byte[] bytes = new byte[readLength(in)];
+			in.readFully(bytes);
+			return new String(bytes, Charsets.UTF_8);
+		}
+	};
+	
+	private static final Codec<Integer> INTEGER = new Codec<Integer>() {
+		@Override
+		public void encode(Integer value, DataOutput out) throws IOException {
+			// zig-zag encoding, to keep small negative values small as well
+			int v = value.intValue();
+			writeVarInt((v << 1) ^ (v >> 31), out);
+		}
+		@Override
+		public Integer decode(DataInput in) throws IOException {
+			int v = readVarInt(in);
+			return Integer.valueOf((v >>> 1) ^ -(v & 1));
+		}
+	};
+	
+	private static final Codec<Long> LONG = new Codec<Long>() {
+		@Override
+		public void encode(Long value, DataOutput out) throws IOException {
+			out.writeLong(value.longValue());
+		}
+		@Override
+		public Long decode(DataInput in) throws IOException {
+			return Long.valueOf(in.readLong());
+		}
+	};
+	
+	private static final Codec<Boolean> BOOLEAN = new Codec<Boolean>() {
+		@Override
+		public void encode(Boolean value, DataOutput out) throws IOException {
+			out.writeBoolean(value.booleanValue());
+		}
+		@Override
+		public Boolean decode(DataInput in) throws IOException {
+			return Boolean.valueOf(in.readBoolean());
+		}
+	};
+	
+	private static final Codec<?> SERIALIZABLE = new Codec<Object>() {
+		@Override
+		public void encode(Object value, DataOutput out) throws IOException {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			try(ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+				oos.writeObject(value);
+			}
+			writeVarInt(baos.size(), out);
+			out.write(baos.toByteArray());
+		}
+		@Override
+		public Object decode(DataInput in) throws IOException {
+			byte[] bytes = new byte[readLength(in)];
+			in.readFully(bytes);
+			try(ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+				return ois.readObject();
+			}
+			catch(ClassNotFoundException ex) {
+				throw new IOException(ex);
+			}
+		}
+	};
+	
+	/**
+	 * Retrieves a codec for strings, encoding them as length-prefixed UTF-8 byte sequences.
+	 * {@code null} values are not supported, see {@link #nullable(Codec)}.
+	 * @return a codec for strings
+	 */
+	@Nonnull
+	public static Codec<String> strings() {
+		return STRING;
+	}
+	
+	/**
+	 * Retrieves a codec for integers, encoding them as variable-length (zig-zag) integers.
+	 * {@code null} values are not supported, see {@link #nullable(Codec)}.
+	 * @return a codec for integers
+	 */
+	@Nonnull
+	public static Codec<Integer> integers() {
+		return INTEGER;
+	}
+	
+	/**
+	 * Retrieves a codec for longs.
+	 * {@code null} values are not supported, see {@link #nullable(Codec)}.
+	 * @return a codec for longs
+	 */
+	@Nonnull
+	public static Codec<Long> longs() {
+		return LONG;
+	}
+	
+	/**
+	 * Retrieves a codec for booleans.
+	 * {@code null} values are not supported, see {@link #nullable(Codec)}.
+	 * @return a codec for booleans
+	 */
+	@Nonnull
+	public static Codec<Boolean> booleans() {
+		return BOOLEAN;
+	}
+	
+	/**
+	 * Retrieves a codec relying on Java serialization. This codec supports {@code null}
+	 * values, but is neither particularly compact nor fast.
+	 * @return a codec for serializable values
+	 */
+	@Nonnull
+	@SuppressWarnings("unchecked")
+	public static <T extends Serializable> Codec<T> serializable() {
+		return (Codec<T>)SERIALIZABLE;
+	}
+	
+	/**
+	 * Wraps a codec in order to support {@code null} values, which is realized by
+	 * prepending a flag byte.
+	 * @param codec the codec to wrap
+	 * @return a codec supporting {@code null} values
+	 */
+	@Nonnull
+	public static <T> Codec<T> nullable(final Codec<T> codec) {
+		return new Codec<T>() {
+			@Override
+			public void encode(T value, DataOutput out) throws IOException {
+				out.writeBoolean(value != null);
+				if(value != null) {
+					codec.encode(value, out);
+				}
+			}
+			@Override
+			public T decode(DataInput in) throws IOException {
+				if(!in.readBoolean()) {
+					return null;
+				}
+				return codec.decode(in);
+			}
+		};
+	}
+	
+	/**
+	 * Writes a non-negative integer in a variable-length format, using one byte for
+	 * every seven bits.
+	 * 
+	 * @param value the value to write, interpreted as an unsigned integer
+	 * @param out the output to write to
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static void writeVarInt(int value, DataOutput out) throws IOException {
+		int v = value;
+		while((v & ~0x7f) != 0) {
+			out.writeByte((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+	
+	/**
+	 * Reads an integer written by {@link #writeVarInt(int, DataOutput)}.
+	 * 
+	 * @param in the input to read from
+	 * @return the integer
+	 * @throws IOException if an I/O error occurs, or the input is malformed
+	 */
+	public static int readVarInt(DataInput in) throws IOException {
+		int result = 0;
+		for(int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			result |= (b & 0x7f) << shift;
+			if((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new IOException("Malformed variable-length integer");
+	}
+	
+	private static int readLength(DataInput in) throws IOException {
+		int length = readVarInt(in);
+		if(length < 0) {
+			throw new IOException("Invalid length " + length);
+		}
+		return length;
+	}
+	
+	private Codecs() {
+		throw new AssertionError("Constructor should never be invoked");
+	}
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.multi;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Asynchronous counterpart of {@link MDTEvaluator}, for evaluations that involve I/O or other
+ * high-latency operations. Used by {@link AsyncMDTSifter}.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <X> type of the objects to be evaluated
+ * @param <D> discriminator type
+ * @param <O> outcome type
+ */
+public interface AsyncMDTEvaluator<X,D,O> {
+	
+	/**
+	 * Starts evaluating an object with respect to a discriminator. This method should not block,
+	 * and may be called concurrently from several threads.
+	 * 
+	 * @param object the object to evaluate
+	 * @param discriminator the discriminator
+	 * @return a future for the outcome of the evaluation
+	 */
+	@Nonnull
+	public ListenableFuture<O> evaluate(@Nullable X object, @Nullable D discriminator);
+
+}
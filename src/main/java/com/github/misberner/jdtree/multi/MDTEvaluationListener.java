@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.multi;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Listener for the evaluations of discriminators performed by a {@link MultiDTree}, set via
+ * {@link MultiDTree#setEvaluationListener(MDTEvaluationListener)}.
+ * <p>
+ * The listener is notified after every evaluation performed by {@code sift} (including sifts
+ * performed by a {@link ParallelMDTSifter}). Since it may be invoked concurrently from several
+ * threads, implementations must be thread-safe.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ * @param <O> outcome type
+ */
+@ParametersAreNonnullByDefault
+public interface MDTEvaluationListener<D,O> {
+	/**
+	 * Handles an evaluation.
+	 * 
+	 * @param node the inner node whose discriminator was evaluated
+	 * @param object the evaluated object
+	 * @param discriminator the evaluated discriminator
+	 * @param outcome the outcome of the evaluation
+	 * @param nanos the duration of the evaluation in nanoseconds
+	 */
+	public void evaluated(MDTNode<? extends D,? extends O> node, @Nullable Object object, @Nullable D discriminator, @Nullable O outcome, @Nonnegative long nanos);
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.multi;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * An event describing a modification of a {@link MultiDTree}. Events are delivered to
+ * {@link MDTListener}s in batches, after the modifications they describe have been completed.
+ * <p>
+ * In contrast to binary discrimination trees, multi-way discrimination trees only grow by
+ * splitting leaves, hence node IDs are never reassigned.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ * @param <O> outcome type
+ */
+@ParametersAreNonnullByDefault
+public final class MDTEvent<D,O> {
+	
+	public static enum Type {
+		/**
+		 * A new node was added to the tree. The event node is the new node, which has a new
+		 * node ID. If it is a leaf, it either has a new leaf ID, or it has taken over the leaf ID
+		 * of a leaf that was split.
+		 */
+		NODE_CREATED,
+		/**
+		 * A leaf was split. The event node is the former leaf, which is now an inner node with
+		 * a new inner ID, and has retained its node ID. The node creation events for its children
+		 * precede this event.
+		 */
+		LEAF_SPLIT
+	}
+	
+	@Nonnull
+	private final Type type;
+	@Nonnull
+	private final MDTNode<D,O> node;
+	
+	MDTEvent(Type type, MDTNode<D,O> node) {
+		this.type = type;
+		this.node = node;
+	}
+	
+	@Nonnull
+	public Type getType() {
+		return type;
+	}
+	
+	@Nonnull
+	public MDTNode<D,O> getNode() {
+		return node;
+	}
+	
+	@Override
+	public String toString() {
+		return type + "(" + node + ")";
+	}
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.multi;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.AncestorTable;
+
+/**
+ * An index for answering least common ancestor, ancestor and level ancestor queries on a
+ * {@link MultiDTree} in time logarithmic in the depth of the tree, instead of linear
+ * as {@link MultiDTree#leastCommonAncestor(MDTNode, MDTNode)}.
+ * <p>
+ * The index stays valid across modifications of the tree: before answering a query, nodes
+ * that were added by {@code split} operations since the last query are incorporated into the
+ * index, in time {@code O(log d)} per node.
+ * <p>
+ * Like the tree itself, this class is not thread-safe.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ * @param <O> outcome type
+ */
+@ParametersAreNonnullByDefault
+public class MDTLCAIndex<D,O> {
+	
+	@Nonnull
+	private final MultiDTree<D,O> tree;
+	@Nonnull
+	private final AncestorTable table;
+	
+	/**
+	 * Constructor. Creates an index for the given tree.
+	 * 
+	 * @param tree the tree to index
+	 */
+	public MDTLCAIndex(MultiDTree<D,O> tree) {
+		this.tree = tree;
+		this.table = new AncestorTable(tree.getNumNodes());
+		update();
+	}
+	
+	/**
+	 * Incorporates all modifications of the tree into this index. This method is called
+	 * automatically by all query methods.
+	 */
+	public void update() {
+		int numNodes = tree.getNumNodes();
+		int id = table.size();
+		if(id == 0) {
+			table.addRoot();
+			id++;
+		}
+		for(; id < numNodes; id++) {
+			MDTNode<D,O> node = tree.getNode(id);
+			table.add(id, node.parent.nodeId);
+		}
+	}
+	
+	/**
+	 * Computes the least common ancestor of two nodes, along with the outcomes
+	 * leading to them. The result is the same as the one returned by
+	 * {@link MultiDTree#leastCommonAncestor(MDTNode, MDTNode)}.
+	 * 
+	 * @param n1 the first node
+	 * @param n2 the second node
+	 * @return the information about the least common ancestor
+	 */
+	@Nonnull
+	public MDTLCAInfo<D,O> leastCommonAncestor(MDTNode<D,O> n1, MDTNode<D,O> n2) {
+		update();
+		int[] children = table.lcaChildren(n1.nodeId, n2.nodeId);
+		if(children[0] == children[1]) {
+			return new MDTLCAInfo<>(tree.getNode(children[0]), null, null);
+		}
+		MDTNode<D,O> c1 = tree.getNode(children[0]);
+		MDTNode<D,O> c2 = tree.getNode(children[1]);
+		return new MDTLCAInfo<>(c1.parent, c1.parentOutcome, c2.parentOutcome);
+	}
+	
+	@Nullable
+	public D separator(MDTNode<D,O> n1, MDTNode<D,O> n2) {
+		if(n1 == n2) {
+			throw new IllegalArgumentException("Identical nodes cannot be separated");
+		}
+		update();
+		return tree.getNode(table.leastCommonAncestor(n1.nodeId, n2.nodeId)).getDiscriminator();
+	}
+	
+	/**
+	 * Checks whether a node is an ancestor of another node. Every node is considered an
+	 * ancestor of itself.
+	 * 
+	 * @param ancestor the potential ancestor
+	 * @param node the node
+	 * @return {@code true} if {@code ancestor} is an ancestor of {@code node}, {@code false}
+	 * otherwise
+	 */
+	public boolean isAncestor(MDTNode<D,O> ancestor, MDTNode<D,O> node) {
+		update();
+		return table.isAncestor(ancestor.nodeId, node.nodeId);
+	}
+	
+	/**
+	 * Retrieves the ancestor of a node at the given depth.
+	 * 
+	 * @param node the node
+	 * @param depth the depth of the ancestor, must be between {@code 0} and the
+	 * depth of {@code node} (inclusive)
+	 * @return the ancestor of {@code node} at the given depth
+	 */
+	@Nonnull
+	public MDTNode<D,O> levelAncestor(MDTNode<D,O> node, int depth) {
+		update();
+		return tree.getNode(table.levelAncestor(node.nodeId, depth));
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.multi;
+
+import java.util.List;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Listener for modifications of a {@link MultiDTree}, registered via
+ * {@link MultiDTree#addListener(MDTListener)}.
+ * <p>
+ * Events are delivered in batches: each split delivers a single batch after it has
+ * completed, and several splits can be grouped into one batch via {@link MultiDTree#beginBatch()}
+ * and {@link MultiDTree#endBatch()}. The tree must not be modified from within a listener.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ * @param <O> outcome type
+ */
+@ParametersAreNonnullByDefault
+public interface MDTListener<D,O> {
+	/**
+	 * Handles a batch of events, in the order in which the modifications occurred.
+	 * 
+	 * @param tree the modified tree
+	 * @param events the events. The list must not be retained after this method returns.
+	 */
+	public void handleEvents(MultiDTree<? extends D,? extends O> tree, List<? extends MDTEvent<? extends D,? extends O>> events);
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.multi;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.io.ChunkedChannelInputStream;
+import com.github.misberner.jdtree.io.ChunkedChannelOutputStream;
+import com.github.misberner.jdtree.io.Codec;
+import com.github.misberner.jdtree.io.Codecs;
+
+/**
+ * Compact binary serialization format for {@link MultiDTree}s.
+ * <p>
+ * The format stores the exact assignment of node, leaf and inner node IDs, hence node
+ * maps (or any other data keyed by these IDs) remain valid for the tree that is read back.
+ * After a header consisting of a magic number, the format version and the numbers of nodes,
+ * leaves and inner nodes, the nodes are written in preorder. Each node is stored as the outcome
+ * leading to it (omitted for the root), its node ID, its type-specific ID and its number of
+ * children, followed by the discriminator in the case of an inner node. Discriminators and
+ * outcomes are encoded using {@link Codec}s, all IDs and counts are stored as variable-length
+ * integers.
+ * <p>
+ * Trees are written to and read from NIO channels directly, without building any intermediate
+ * representation. The data is framed by a {@link ChunkedChannelOutputStream}, so reading a tree
+ * consumes exactly the bytes written for it, and other data may follow it in the same channel.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public final class MDTSerialization {
+	
+	/**
+	 * The magic number at the start of every serialized tree ({@code "JDTM"}).
+	 */
+	public static final int MAGIC = 0x4A44544D;
+	
+	/**
+	 * The current format version.
+	 */
+	public static final int VERSION = 1;
+	
+	/**
+	 * Writes a tree to the given channel. The channel is not closed.
+	 * 
+	 * @param tree the tree to write
+	 * @param channel the channel to write to
+	 * @param discriminatorCodec the codec for writing the discriminators
+	 * @param outcomeCodec the codec for writing the outcomes
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static <D,O> void write(MultiDTree<D,O> tree, WritableByteChannel channel,
+			Codec<? super D> discriminatorCodec, Codec<? super O> outcomeCodec) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new ChunkedChannelOutputStream(channel))) {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			Codecs.writeVarInt(tree.getNumNodes(), out);
+			Codecs.writeVarInt(tree.getNumLeaves(), out);
+			Codecs.writeVarInt(tree.getNumInnerNodes(), out);
+			
+			MDTNode<D,O> root = tree.getRoot();
+			Deque<MDTNode<D,O>> stack = new ArrayDeque<>();
+			stack.push(root);
+			
+			while(!stack.isEmpty()) {
+				MDTNode<D,O> node = stack.pop();
+				if(node != root) {
+					outcomeCodec.encode(node.parentOutcome, out);
+				}
+				Codecs.writeVarInt(node.nodeId, out);
+				Codecs.writeVarInt(node.typeId, out);
+				if(node.isInner()) {
+					Collection<MDTNode<D,O>> children = node.getChildren();
+					Codecs.writeVarInt(children.size() + 1, out);
+					discriminatorCodec.encode(node.getDiscriminator(), out);
+					for(MDTNode<D,O> child : children) {
+						stack.push(child);
+					}
+				}
+				else {
+					Codecs.writeVarInt(0, out);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reads a tree from the given channel. The channel is not closed.
+	 * 
+	 * @param channel the channel to read from
+	 * @param discriminatorCodec the codec for reading the discriminators
+	 * @param outcomeCodec the codec for reading the outcomes
+	 * @return the tree
+	 * @throws IOException if an I/O error occurs, or the data is not a valid serialized tree
+	 */
+	@Nonnull
+	@SuppressWarnings("unchecked")
+	public static <D,O> MultiDTree<D,O> read(ReadableByteChannel channel,
+			Codec<? extends D> discriminatorCodec, Codec<? extends O> outcomeCodec) throws IOException {
+		try(DataInputStream in = new DataInputStream(new ChunkedChannelInputStream(channel))) {
+			int magic = in.readInt();
+			if(magic != MAGIC) {
+				throw new IOException("Not a serialized multi discrimination tree (magic number " + Integer.toHexString(magic) + ")");
+			}
+			int version = in.readUnsignedByte();
+			if(version != VERSION) {
+				throw new IOException("Unsupported format version " + version);
+			}
+			int numNodes = Codecs.readVarInt(in);
+			int numLeaves = Codecs.readVarInt(in);
+			int numInner = Codecs.readVarInt(in);
+			if(numNodes < 1 || numLeaves < 0 || numInner < 0 || numLeaves + numInner != numNodes) {
+				throw new IOException("Inconsistent node counts " + numNodes + "/" + numLeaves + "/" + numInner);
+			}
+			
+			MDTNode<D,O>[] nodes = new MDTNode[numNodes];
+			MDTNode<D,O>[] leaves = new MDTNode[numLeaves];
+			MDTNode<D,O>[] innerNodes = new MDTNode[numInner];
+			
+			// Inner nodes with children that have not yet been read, and the
+			// respective numbers of missing children
+			Deque<MDTNode<D,O>> pending = new ArrayDeque<>();
+			Deque<int[]> pendingCounts = new ArrayDeque<>();
+			MDTNode<D,O> root = null;
+			
+			for(int i = 0; i < numNodes; i++) {
+				MDTNode<D,O> parent = pending.peek();
+				if(i > 0 && parent == null) {
+					throw new IOException("Unexpected node after complete tree");
+				}
+				
+				O outcome = null;
+				if(parent != null) {
+					outcome = outcomeCodec.decode(in);
+				}
+				int nodeId = Codecs.readVarInt(in);
+				checkId(nodeId, numNodes, nodes, "node");
+				int typeId = Codecs.readVarInt(in);
+				int numChildren = Codecs.readVarInt(in) - 1;
+				
+				MDTNode<D,O> node = new MDTNode<>(parent, outcome, nodeId, typeId);
+				nodes[nodeId] = node;
+				
+				if(parent == null) {
+					root = node;
+				}
+				else {
+					if(parent.getChild(outcome) != null) {
+						throw new IOException("Duplicate outcome " + outcome + " at node " + parent.nodeId);
+					}
+					parent.putChild(outcome, node);
+					int[] count = pendingCounts.peek();
+					if(--count[0] == 0) {
+						pending.pop();
+						pendingCounts.pop();
+					}
+				}
+				
+				if(numChildren >= 0) {
+					checkId(typeId, numInner, innerNodes, "inner node");
+					D discriminator = discriminatorCodec.decode(in);
+					node.makeInner(typeId, discriminator, new HashMap<O,MDTNode<D,O>>());
+					innerNodes[typeId] = node;
+					if(numChildren > 0) {
+						pending.push(node);
+						pendingCounts.push(new int[]{numChildren});
+					}
+				}
+				else {
+					checkId(typeId, numLeaves, leaves, "leaf");
+					leaves[typeId] = node;
+				}
+			}
+			
+			if(!pending.isEmpty()) {
+				throw new IOException("Unexpected end of tree data");
+			}
+			if(in.read() != -1) {
+				throw new IOException("Unexpected trailing data");
+			}
+			
+			return new MultiDTree<>(root, new ArrayList<>(Arrays.asList(nodes)),
+					new ArrayList<>(Arrays.asList(innerNodes)), new ArrayList<>(Arrays.asList(leaves)));
+		}
+	}
+	
+	private static void checkId(int id, int bound, Object[] assigned, String kind) throws IOException {
+		if(id < 0 || id >= bound) {
+			throw new IOException("Invalid " + kind + " ID " + id);
+		}
+		if(assigned[id] != null) {
+			throw new IOException("Duplicate " + kind + " ID " + id);
+		}
+	}
+	
+	private MDTSerialization() {
+		throw new AssertionError("Constructor should never be invoked");
+	}
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.multi;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.AbstractSubtreeSpliterator;
+import com.github.misberner.jdtree.NodeType;
+
+/**
+ * Spliterator over the nodes of a subtree of a {@link MultiDTree}, in preorder.
+ * 
+ * @author Malte Isberner
+ *
+ * @param <D> discriminator type
+ * @param <O> outcome type
+ * 
+ * @see MultiDTree#subtreeSpliterator(MDTNode, NodeType)
+ */
+@ParametersAreNonnullByDefault
+public final class MDTSubtreeSpliterator<D,O> extends AbstractSubtreeSpliterator<MDTNode<D,O>> {
+	
+	MDTSubtreeSpliterator(@Nullable MDTNode<D,O> subtreeRoot, NodeType type, long exactSize) {
+		super(subtreeRoot, type, exactSize);
+	}
+
+	@Override
+	protected MDTSubtreeSpliterator<D,O> createEmpty() {
+		return new MDTSubtreeSpliterator<>(null, getType(), -1L);
+	}
+
+	@Override
+	protected boolean isInner(MDTNode<D,O> node) {
+		return node.isInner();
+	}
+
+	@Override
+	protected boolean isOfType(MDTNode<D,O> node, NodeType type) {
+		return node.isOfType(type);
+	}
+
+	@Override
+	protected void pushChildren(MDTNode<D,O> innerNode) {
+		for(MDTNode<D,O> child : innerNode.getChildren()) {
+			pushSubtree(child);
+		}
+	}
+
+}
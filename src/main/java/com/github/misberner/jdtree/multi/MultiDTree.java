@@ -20,20 +20,38 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
+import com.github.misberner.jdtree.AbstractSubtreeSpliterator;
+import com.github.misberner.jdtree.DiscriminatorPool;
+import com.github.misberner.jdtree.NodeProcedure;
 import com.github.misberner.jdtree.NodeType;
+import com.github.misberner.jdtree.SiftStatistics;
 import com.google.common.base.Function;
 
 /**
  * A flexible multi-valued discrimination tree.
+ * <p>
+ * <b>Thread safety:</b> this class is not thread-safe. Note that, unlike in a
+ * {@link com.github.misberner.jdtree.binary.BinaryDTree}, the {@code sift} methods
+ * may modify the tree: if the outcome at an inner node does not correspond to any
+ * of its children, a new leaf is created (see {@link #child(MDTNode, Object)}).
+ * As long as the tree is not modified, {@link #leastCommonAncestor(MDTNode, MDTNode)},
+ * {@link #separator(MDTNode, MDTNode)}, the node lookup and subtree iteration methods,
+ * as well as all methods of {@link MDTNode} except {@link MDTNode#putChild(Object, MDTNode)}
+ * may safely be called concurrently from several threads.
+ * See {@link ParallelMDTSifter} for sifting batches of objects in parallel.
  * 
  * @author Malte Isberner
  *
@@ -54,6 +72,26 @@ public class MultiDTree<D,O> {
 	@Nonnull
 	private final MDTNode<D,O> root;
 	
+	// Registered listeners, and events not yet delivered to them
+	@Nonnull
+	private final List<MDTListener<? super D,? super O>> listeners = new ArrayList<>();
+	@Nonnull
+	private final List<MDTEvent<D,O>> pendingEvents = new ArrayList<>();
+	private int batchDepth;
+	
+	// Pool for interning discriminators, or null if discriminators are not interned
+	@Nullable
+	private DiscriminatorPool<D> discriminatorPool;
+	
+	// Counters for instrumenting sifts, or null if instrumentation is disabled
+	@Nullable
+	private SiftStatistics siftStatistics;
+	// Listener notified about evaluations, or null
+	@Nullable
+	private MDTEvaluationListener<? super D,? super O> evaluationListener;
+	// Whether sifts take the instrumented path, i.e., statistics or an evaluation listener are set
+	private boolean instrumented;
+	
 	public MultiDTree() {
 		this.nodes = new ArrayList<>();
 		this.leaves = new ArrayList<>();
@@ -61,8 +99,7 @@ public class MultiDTree<D,O> {
 		root = createLeaf(null, null);
 	}
 	
-	@SuppressWarnings("unused")
-	private MultiDTree(MDTNode<D,O> root, List<MDTNode<D,O>> nodes, List<MDTNode<D,O>> innerNodes, List<MDTNode<D,O>> leaves) {
+	MultiDTree(MDTNode<D,O> root, List<MDTNode<D,O>> nodes, List<MDTNode<D,O>> innerNodes, List<MDTNode<D,O>> leaves) {
 		this.root = root;
 		this.nodes = nodes;
 		this.innerNodes = innerNodes;
@@ -74,6 +111,199 @@ public class MultiDTree<D,O> {
 		return root;
 	}
 	
+	/**
+	 * Enables instrumentation of the sift operations of this tree (including sifts performed by
+	 * a {@link ParallelMDTSifter}), recording counts in the given statistics object. Replaces
+	 * any previously enabled statistics. As with modifications, this method must not be called
+	 * concurrently with sift operations.
+	 * <p>
+	 * When instrumentation is disabled, sift operations are not affected apart from a single
+	 * field access per operation.
+	 * 
+	 * @param statistics the statistics object. It should not be shared between several trees,
+	 * as counts are recorded by node ID.
+	 */
+	public void enableSiftStatistics(SiftStatistics statistics) {
+		statistics.ensureNodeCapacity(nodes.size());
+		this.siftStatistics = statistics;
+		updateInstrumented();
+	}
+	
+	/**
+	 * Disables instrumentation of sift operations. This method must not be called concurrently
+	 * with sift operations.
+	 */
+	public void disableSiftStatistics() {
+		this.siftStatistics = null;
+		updateInstrumented();
+	}
+	
+	/**
+	 * Retrieves the statistics object in which sift operations are recorded.
+	 * @return the statistics object, or {@code null} if instrumentation is disabled
+	 */
+	@Nullable
+	public SiftStatistics getSiftStatistics() {
+		return siftStatistics;
+	}
+	
+	/**
+	 * Sets the listener to be notified about every evaluation of a discriminator performed by this
+	 * tree, replacing any previously set listener. As with modifications, this method must not be
+	 * called concurrently with sift operations.
+	 * <p>
+	 * When no listener is set, sift operations are not affected apart from a single field access
+	 * per operation. Otherwise, every evaluation is timed using {@link System#nanoTime()}.
+	 * 
+	 * @param listener the listener, or {@code null} to remove the current listener
+	 * @see MDTEvaluationListener
+	 */
+	public void setEvaluationListener(@Nullable MDTEvaluationListener<? super D,? super O> listener) {
+		this.evaluationListener = listener;
+		updateInstrumented();
+	}
+	
+	/**
+	 * Retrieves the listener notified about evaluations.
+	 * @return the evaluation listener, or {@code null} if none is set
+	 */
+	@Nullable
+	public MDTEvaluationListener<? super D,? super O> getEvaluationListener() {
+		return evaluationListener;
+	}
+	
+	private void updateInstrumented() {
+		this.instrumented = (siftStatistics != null || evaluationListener != null);
+	}
+	
+	/**
+	 * Attaches a pool for interning the discriminators of this tree, replacing the previously
+	 * attached pool (if any). The discriminators of all inner nodes are interned immediately
+	 * (and released from the previous pool), and discriminators of subsequently created inner
+	 * nodes are interned upon creation. This method takes time linear in the number of inner nodes.
+	 * 
+	 * @param pool the pool to attach, or {@code null} to stop interning discriminators
+	 */
+	public void setDiscriminatorPool(@Nullable DiscriminatorPool<D> pool) {
+		if(pool == discriminatorPool) {
+			return;
+		}
+		for(MDTNode<D,O> inner : innerNodes) {
+			if(pool != null) {
+				inner.discriminator = pool.intern(inner.discriminator);
+			}
+			if(discriminatorPool != null) {
+				discriminatorPool.release(inner.discriminator);
+			}
+		}
+		this.discriminatorPool = pool;
+	}
+	
+	/**
+	 * Retrieves the pool used for interning the discriminators of this tree.
+	 * @return the discriminator pool, or {@code null} if discriminators are not interned
+	 */
+	@Nullable
+	public DiscriminatorPool<D> getDiscriminatorPool() {
+		return discriminatorPool;
+	}
+	
+	/**
+	 * Retrieves the ID of the discriminator of an inner node in the attached discriminator pool.
+	 * 
+	 * @param innerNode the inner node
+	 * @return the ID of the discriminator of {@code innerNode}
+	 * @throws IllegalStateException if no discriminator pool is attached to this tree
+	 */
+	public int getDiscriminatorId(MDTNode<D,O> innerNode) {
+		if(discriminatorPool == null) {
+			throw new IllegalStateException("No discriminator pool attached");
+		}
+		return discriminatorPool.getId(innerNode.getDiscriminator());
+	}
+	
+	/**
+	 * Counts the number of distinct discriminators used by the inner nodes of this tree. If a
+	 * discriminator pool is attached, discriminators are compared by identity, otherwise by
+	 * their {@link Object#equals(Object) equals} method.
+	 * 
+	 * @return the number of distinct discriminators
+	 */
+	public int countDistinctDiscriminators() {
+		Set<D> distinct = (discriminatorPool != null)
+				? Collections.newSetFromMap(new IdentityHashMap<D,Boolean>())
+				: new HashSet<D>();
+		for(MDTNode<D,O> inner : innerNodes) {
+			distinct.add(inner.discriminator);
+		}
+		return distinct.size();
+	}
+	
+	/**
+	 * Registers a listener that is notified of all subsequent modifications of this tree.
+	 * 
+	 * @param listener the listener
+	 * @see MDTListener
+	 */
+	public void addListener(MDTListener<? super D,? super O> listener) {
+		listeners.add(listener);
+	}
+	
+	/**
+	 * Removes a previously registered listener.
+	 * 
+	 * @param listener the listener
+	 * @return {@code true} if the listener was registered, {@code false} otherwise
+	 */
+	public boolean removeListener(MDTListener<? super D,? super O> listener) {
+		return listeners.remove(listener);
+	}
+	
+	/**
+	 * Begins a batch of modifications. Until the matching call to {@link #endBatch()}, events are
+	 * not delivered to listeners, but collected and delivered as a single batch afterwards.
+	 * Batches may be nested, in which case the events are delivered when the outermost batch ends.
+	 */
+	public void beginBatch() {
+		batchDepth++;
+	}
+	
+	/**
+	 * Ends a batch of modifications begun by {@link #beginBatch()}, delivering all collected events
+	 * to the listeners if this is the outermost batch.
+	 * 
+	 * @throws IllegalStateException if no batch has been begun
+	 */
+	public void endBatch() {
+		if(batchDepth == 0) {
+			throw new IllegalStateException("No batch in progress");
+		}
+		batchDepth--;
+		deliverEvents();
+	}
+	
+	private void addEvent(MDTEvent.Type type, MDTNode<D,O> node) {
+		if(listeners.isEmpty()) {
+			return;
+		}
+		pendingEvents.add(new MDTEvent<>(type, node));
+	}
+	
+	private void deliverEvents() {
+		if(batchDepth > 0 || pendingEvents.isEmpty()) {
+			return;
+		}
+		List<MDTEvent<D,O>> events = Collections.unmodifiableList(pendingEvents);
+		try {
+			for(MDTListener<? super D,? super O> listener : listeners) {
+				listener.handleEvents(this, events);
+			}
+		}
+		finally {
+			pendingEvents.clear();
+		}
+	}
+	
 	
 	public List<? extends MDTNode<D,O>> getNodes() {
 		return Collections.unmodifiableList(nodes);
@@ -136,10 +366,24 @@ public class MultiDTree<D,O> {
 		}
 		
 		makeInner(leaf, discriminator, childMap);
+		
+		if(siftStatistics != null) {
+			siftStatistics.ensureNodeCapacity(nodes.size());
+		}
+		
+		if(!listeners.isEmpty()) {
+			addEvent(MDTEvent.Type.NODE_CREATED, repLeaf);
+			for(O otherOutcome : otherOutcomes) {
+				addEvent(MDTEvent.Type.NODE_CREATED, childMap.get(otherOutcome));
+			}
+			addEvent(MDTEvent.Type.LEAF_SPLIT, leaf);
+			deliverEvents();
+		}
 	}
 	
 	private void makeInner(MDTNode<D,O> leaf, D discriminator, Map<O,MDTNode<D,O>> childMap) {
-		leaf.makeInner(innerNodes.size(), discriminator, childMap);
+		D interned = (discriminatorPool != null) ? discriminatorPool.intern(discriminator) : discriminator;
+		leaf.makeInner(innerNodes.size(), interned, childMap);
 		innerNodes.add(leaf);
 	}
 	
@@ -216,7 +460,15 @@ public class MultiDTree<D,O> {
 	}
 	
 	@Nonnull
-	public MDTNode<D,O> sift(MDTNode<D,O> start, Function<? super D,? extends O> evalFunc) {
+	public MDTNode<D,O> sift(MDTNode<D,O> start, final Function<? super D,? extends O> evalFunc) {
+		if(instrumented) {
+			return siftInstrumented(start, null, new MDTEvaluator<Object,D,O>() {
+				@Override
+				public O evaluate(Object object, D discriminator) {
+					return evalFunc.apply(discriminator);
+				}
+			});
+		}
 		MDTNode<D,O> curr = start;
 		
 		while(curr.isInner()) {
@@ -233,6 +485,11 @@ public class MultiDTree<D,O> {
 		if(child == null) {
 			child = createLeaf(inner, outcome);
 			inner.putChild(outcome, child);
+			if(siftStatistics != null) {
+				siftStatistics.ensureNodeCapacity(nodes.size());
+			}
+			addEvent(MDTEvent.Type.NODE_CREATED, child);
+			deliverEvents();
 		}
 		return child;
 	}
@@ -244,6 +501,9 @@ public class MultiDTree<D,O> {
 	
 	@Nonnull
 	public <X> MDTNode<D,O> sift(MDTNode<D,O> start, @Nullable X object, MDTEvaluator<? super X,? super D,? extends O> evaluator) {
+		if(instrumented) {
+			return siftInstrumented(start, object, evaluator);
+		}
 		MDTNode<D,O> curr = start;
 		
 		while(curr.isInner()) {
@@ -255,6 +515,34 @@ public class MultiDTree<D,O> {
 		return curr;
 	}
 	
+	private <X> MDTNode<D,O> siftInstrumented(MDTNode<D,O> start, @Nullable X object, MDTEvaluator<? super X,? super D,? extends O> evaluator) {
+		SiftStatistics stats = siftStatistics;
+		MDTEvaluationListener<? super D,? super O> listener = evaluationListener;
+		MDTNode<D,O> curr = start;
+		
+		while(curr.isInner()) {
+			if(stats != null) {
+				stats.recordEvaluations(curr.nodeId, curr.getDepth(), 1);
+			}
+			D discr = curr.getDiscriminator();
+			O outcome;
+			if(listener != null) {
+				long startTime = System.nanoTime();
+				outcome = evaluator.evaluate(object, discr);
+				listener.evaluated(curr, object, discr, outcome, System.nanoTime() - startTime);
+			}
+			else {
+				outcome = evaluator.evaluate(object, discr);
+			}
+			curr = child(curr, outcome);
+		}
+		if(stats != null) {
+			stats.recordLeaf(curr.nodeId, 1);
+		}
+		
+		return curr;
+	}
+	
 	@Nonnull
 	private MDTNode<D,O> replaceLeaf(MDTNode<D,O> parent, O parentOutcome, int leafId) {
 		MDTNode<D,O> leaf = new MDTNode<>(parent, parentOutcome, nodes.size(), leafId);
@@ -279,6 +567,35 @@ public class MultiDTree<D,O> {
 	
 	
 	
+	/**
+	 * Creates a spliterator over the nodes of the given type in the given subtree. The size of
+	 * the spliterator is exactly known if {@code subtreeRoot} is the root of this tree.
+	 * 
+	 * @param subtreeRoot the root of the subtree
+	 * @param type the type of nodes to return
+	 * @return the spliterator
+	 */
+	@Nonnull
+	public MDTSubtreeSpliterator<D,O> subtreeSpliterator(MDTNode<D,O> subtreeRoot, NodeType type) {
+		long exactSize = (subtreeRoot == root) ? getNumNodes(type) : -1L;
+		return new MDTSubtreeSpliterator<>(subtreeRoot, type, exactSize);
+	}
+	
+	/**
+	 * Applies the given procedure to all nodes of the given type in the given subtree, in parallel
+	 * using the workers of the given pool.
+	 * 
+	 * @param subtreeRoot the root of the subtree
+	 * @param type the type of nodes to apply the procedure to
+	 * @param procedure the procedure, which must be safe to be called concurrently
+	 * @param pool the pool to use
+	 * 
+	 * @see AbstractSubtreeSpliterator#forEachRemaining(NodeProcedure, ForkJoinPool)
+	 */
+	public void forEachParallel(MDTNode<D,O> subtreeRoot, NodeType type, NodeProcedure<? super MDTNode<D,O>> procedure, ForkJoinPool pool) {
+		subtreeSpliterator(subtreeRoot, type).forEachRemaining(procedure, pool);
+	}
+	
 	public Iterator<MDTNode<D,O>> subtreeNodesIterator(MDTNode<D,O> subtreeRoot, NodeType type) {
 		return new MDTSubtreeNodesIterator<>(subtreeRoot, type);
 	}
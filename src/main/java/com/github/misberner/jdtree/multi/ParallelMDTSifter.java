@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.multi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import com.github.misberner.jdtree.SiftStatistics;
+
+/**
+ * Engine for sifting large batches of objects into a {@link MultiDTree} in parallel.
+ * <p>
+ * The batch is recursively partitioned into chunks, which are sifted by the workers of a
+ * {@link ForkJoinPool}. Chunks of at most {@link #getThreshold() threshold} objects are
+ * sifted sequentially.
+ * <p>
+ * Since sifting into a {@link MultiDTree} creates a new leaf whenever an outcome is
+ * encountered for which there is no child yet, the parallel phase stops at such nodes.
+ * The sift of the affected objects is completed sequentially on the calling thread, after
+ * all parallel tasks have finished. Hence, the tree itself must not be modified by other
+ * threads during a parallel sift, and the evaluator must be safe to be called concurrently
+ * from several threads.
+ * 
+ * @author Malte Isberner
+ */
+@ParametersAreNonnullByDefault
+public class ParallelMDTSifter {
+	
+	/**
+	 * The default maximum number of objects that are sifted sequentially by a single task.
+	 */
+	public static final int DEFAULT_THRESHOLD = 64;
+	
+	@Nonnull
+	private final ForkJoinPool pool;
+	private final boolean ownPool;
+	@Nonnegative
+	private final int threshold;
+	
+	/**
+	 * Constructor. Uses the given pool for sifting.
+	 * 
+	 * @param pool the pool to use
+	 * @param threshold the maximum number of objects to be sifted sequentially by a single task
+	 */
+	public ParallelMDTSifter(ForkJoinPool pool, @Nonnegative int threshold) {
+		this(pool, false, threshold);
+	}
+	
+	/**
+	 * Constructor. Creates a new pool with the given parallelism level, which is
+	 * shut down by {@link #shutdown()}.
+	 * 
+	 * @param parallelism the parallelism level
+	 * @param threshold the maximum number of objects to be sifted sequentially by a single task
+	 */
+	public ParallelMDTSifter(@Nonnegative int parallelism, @Nonnegative int threshold) {
+		this(new ForkJoinPool(parallelism), true, threshold);
+	}
+	
+	/**
+	 * Constructor. Creates a new pool with the given parallelism level, which is
+	 * shut down by {@link #shutdown()}.
+	 * 
+	 * @param parallelism the parallelism level
+	 */
+	public ParallelMDTSifter(@Nonnegative int parallelism) {
+		this(parallelism, DEFAULT_THRESHOLD);
+	}
+	
+	/**
+	 * Constructor. Creates a new pool with a parallelism level equal to the number of
+	 * available processors, which is shut down by {@link #shutdown()}.
+	 */
+	public ParallelMDTSifter() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	private ParallelMDTSifter(ForkJoinPool pool, boolean ownPool, int threshold) {
+		if(threshold < 1) {
+			throw new IllegalArgumentException("Threshold must be positive, is " + threshold);
+		}
+		this.pool = pool;
+		this.ownPool = ownPool;
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * Retrieves the maximum number of objects that are sifted sequentially by a single task.
+	 * @return the sequential threshold
+	 */
+	@Nonnegative
+	public int getThreshold() {
+		return threshold;
+	}
+	
+	/**
+	 * Retrieves the parallelism level of the underlying pool.
+	 * @return the parallelism level
+	 */
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+	
+	/**
+	 * Sifts a batch of objects into the given tree, starting at the root.
+	 * 
+	 * @see #siftAll(MultiDTree, MDTNode, Collection, MDTEvaluator)
+	 */
+	@Nonnull
+	public <D,O,X> List<MDTNode<D,O>> siftAll(MultiDTree<D,O> tree, Collection<? extends X> objects,
+			MDTEvaluator<? super X,? super D,? extends O> evaluator) {
+		return siftAll(tree, tree.getRoot(), objects, evaluator);
+	}
+	
+	/**
+	 * Sifts a batch of objects into the given tree in parallel.
+	 * 
+	 * @param tree the tree to sift the objects into
+	 * @param start the node to start sifting at
+	 * @param objects the objects to sift
+	 * @param evaluator the evaluator, which must be safe to be called concurrently
+	 * @return a list containing, for each object (in the iteration order of {@code objects}),
+	 * the leaf the object was sifted into
+	 */
+	@Nonnull
+	@SuppressWarnings("unchecked")
+	public <D,O,X> List<MDTNode<D,O>> siftAll(MultiDTree<D,O> tree, MDTNode<D,O> start, Collection<? extends X> objects,
+			MDTEvaluator<? super X,? super D,? extends O> evaluator) {
+		List<? extends X> objList = new ArrayList<>(objects);
+		int num = objList.size();
+		MDTNode<D,O>[] result = new MDTNode[num];
+		Object[] pendingOutcomes = new Object[num];
+		
+		if(num == 0) {
+			return Arrays.asList(result);
+		}
+		
+		pool.invoke(new SiftTask<>(start, objList, evaluator, tree.getSiftStatistics(), tree.getEvaluationListener(), result, pendingOutcomes, 0, num));
+		
+		// Complete the sift for all objects that have reached a node lacking
+		// the child for their outcome. This may create new leaves, hence
+		// it has to be done sequentially.
+		for(int i = 0; i < num; i++) {
+			MDTNode<D,O> node = result[i];
+			if(node.isInner()) {
+				MDTNode<D,O> child = tree.child(node, (O)pendingOutcomes[i]);
+				result[i] = tree.sift(child, objList.get(i), evaluator);
+			}
+		}
+		
+		return Arrays.asList(result);
+	}
+	
+	/**
+	 * Shuts down the underlying pool, if it was created by this sifter.
+	 */
+	public void shutdown() {
+		if(ownPool) {
+			pool.shutdown();
+		}
+	}
+	
+	
+	private final class SiftTask<D,O,X> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final MDTNode<D,O> start;
+		private final List<? extends X> objects;
+		private final MDTEvaluator<? super X,? super D,? extends O> evaluator;
+		@Nullable
+		private final SiftStatistics stats;
+		@Nullable
+		private final MDTEvaluationListener<? super D,? super O> listener;
+		private final MDTNode<D,O>[] result;
+		private final Object[] pendingOutcomes;
+		private final int low;
+		private final int high;
+		
+		public SiftTask(MDTNode<D,O> start, List<? extends X> objects,
+				MDTEvaluator<? super X,? super D,? extends O> evaluator, @Nullable SiftStatistics stats,
+				@Nullable MDTEvaluationListener<? super D,? super O> listener,
+				MDTNode<D,O>[] result, Object[] pendingOutcomes, int low, int high) {
+			this.start = start;
+			this.objects = objects;
+			this.evaluator = evaluator;
+			this.stats = stats;
+			this.listener = listener;
+			this.result = result;
+			this.pendingOutcomes = pendingOutcomes;
+			this.low = low;
+			this.high = high;
+		}
+
+		@Override
+		protected void compute() {
+			if(high - low > threshold) {
+				int mid = (low + high) >>> 1;
+				invokeAll(new SiftTask<>(start, objects, evaluator, stats, listener, result, pendingOutcomes, low, mid),
+						new SiftTask<>(start, objects, evaluator, stats, listener, result, pendingOutcomes, mid, high));
+				return;
+			}
+			
+			for(int i = low; i < high; i++) {
+				X obj = objects.get(i);
+				MDTNode<D,O> curr = start;
+				while(curr.isInner()) {
+					if(stats != null) {
+						stats.recordEvaluations(curr.nodeId, curr.getDepth(), 1);
+					}
+					D discr = curr.getDiscriminator();
+					O outcome;
+					if(listener != null) {
+						long startTime = System.nanoTime();
+						outcome = evaluator.evaluate(obj, discr);
+						listener.evaluated(curr, obj, discr, outcome, System.nanoTime() - startTime);
+					}
+					else {
+						outcome = evaluator.evaluate(obj, discr);
+					}
+					MDTNode<D,O> child = curr.getChild(outcome);
+					if(child == null) {
+						// Leave the creation of the missing child to the calling thread
+						pendingOutcomes[i] = outcome;
+						break;
+					}
+					curr = child;
+				}
+				if(stats != null && curr.isLeaf()) {
+					stats.recordLeaf(curr.nodeId, 1);
+				}
+				result[i] = curr;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2014 by Malte Isberner (https://github.com/misberner).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.misberner.jdtree.binary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.misberner.jdtree.NodeType;
+
+/**
+ * Tests that node maps registered as listeners carry over their values across
+ * reassignments of node IDs.
+ * 
+ * @author Malte Isberner
+ */
+public class BDTListenerTest {
+	
+	private static final int BITS = 6;
+	
+	// Discriminators are bit indices, objects are integers
+	private static final BDTEvaluator<Integer,Integer> BIT_EVALUATOR = new BDTEvaluator<Integer,Integer>() {
+		@Override
+		public boolean evaluate(Integer object, Integer discriminator) {
+			return ((object >> discriminator) & 1) != 0;
+		}
+	};
+	
+	private BinaryDTree<Integer> tree;
+	// The object represented by each leaf, indexed by leaf ID
+	private Map<Integer,Integer> leafObjects;
+	private BDTEvaluator<BDTNode<Integer>,Integer> leafEvaluator;
+	
+	@Before
+	public void setUp() {
+		List<Integer> objects = new ArrayList<>();
+		for(int obj = 0; obj < (1 << BITS); obj++) {
+			objects.add(obj);
+		}
+		// Splitting on the lowest differing bit yields a complete tree with bit i at depth i
+		buildTree(objects, null);
+		leafEvaluator = new BDTEvaluator<BDTNode<Integer>,Integer>() {
+			@Override
+			public boolean evaluate(BDTNode<Integer> leaf, Integer discriminator) {
+				return BIT_EVALUATOR.evaluate(leafObjects.get(leaf.getLeafId()), discriminator);
+			}
+		};
+	}
+	
+	/**
+	 * Builds a tree with one leaf for each of the given objects.
+	 * 
+	 * @param objects the objects, the first of which is represented by the initial root
+	 * @param random the source for choosing the bit to split a leaf on among the bits in which
+	 * the objects differ, or {@code null} to always choose the lowest such bit
+	 */
+	private void buildTree(List<Integer> objects, Random random) {
+		tree = new BinaryDTree<>();
+		leafObjects = new HashMap<>();
+		leafObjects.put(tree.getRoot().getLeafId(), objects.get(0));
+		for(int obj : objects.subList(1, objects.size())) {
+			BDTNode<Integer> leaf = tree.sift(obj, BIT_EVALUATOR);
+			int other = leafObjects.get(leaf.getLeafId());
+			int diff = obj ^ other;
+			int bit = Integer.numberOfTrailingZeros(diff);
+			if(random != null) {
+				for(int skip = random.nextInt(Integer.bitCount(diff)); skip > 0; skip--) {
+					bit = Integer.numberOfTrailingZeros(diff >> (bit + 1)) + bit + 1;
+				}
+			}
+			tree.split(leaf, bit);
+			BDTNode<Integer> objLeaf = leaf.getChild(BIT_EVALUATOR.evaluate(obj, bit));
+			BDTNode<Integer> otherLeaf = leaf.getChild(BIT_EVALUATOR.evaluate(other, bit));
+			leafObjects.put(objLeaf.getLeafId(), obj);
+			leafObjects.put(otherLeaf.getLeafId(), other);
+		}
+	}
+	
+	private IntBDTNodeMap createLeafValueMap() {
+		IntBDTNodeMap map = new IntBDTNodeMap(tree, -1, NodeType.ANY);
+		for(BDTNode<Integer> leaf : tree.getLeaves()) {
+			map.put(leaf, leafObjects.get(leaf.getLeafId()));
+		}
+		tree.addListener(map);
+		return map;
+	}
+	
+	private void assertLeafValues(IntBDTNodeMap map) {
+		for(BDTNode<Integer> leaf : tree.getLeaves()) {
+			int obj = leafObjects.get(leaf.getLeafId());
+			assertSame(leaf, tree.sift(obj, BIT_EVALUATOR));
+			assertEquals(obj, map.get(leaf));
+		}
+	}
+	
+	@Test
+	public void testArrayMapRemappedOnRewrite() {
+		ArrayMutableBDTNodeMap<Integer> map = new ArrayMutableBDTNodeMap<>(tree, NodeType.ANY);
+		for(BDTNode<Integer> leaf : tree.getLeaves()) {
+			map.put(leaf, leafObjects.get(leaf.getLeafId()));
+		}
+		tree.addListener(map);
+		
+		assertNotNull(tree.replaceDiscriminator(tree.getRoot(), BITS - 1, leafEvaluator));
+		
+		for(BDTNode<Integer> leaf : tree.getLeaves()) {
+			assertEquals(leafObjects.get(leaf.getLeafId()), map.get(leaf));
+		}
+	}
+	
+	@Test
+	public void testPrimitiveMapRemappedOnRewrite() {
+		IntBDTNodeMap map = createLeafValueMap();
+		
+		assertNotNull(tree.replaceDiscriminator(tree.getRoot(), BITS - 1, leafEvaluator));
+		
+		assertLeafValues(map);
+	}
+	
+	@Test
+	public void testNestedRewritesInBatch() {
+		IntBDTNodeMap map = createLeafValueMap();
+		
+		tree.beginBatch();
+		assertNotNull(tree.replaceDiscriminator(tree.getRoot(), BITS - 1, leafEvaluator));
+		assertNotNull(tree.replaceDiscriminator(tree.getRoot().getFalseChild(), BITS - 2, leafEvaluator));
+		tree.endBatch();
+		
+		assertLeafValues(map);
+	}
+	
+	@Test
+	public void testRestructure() {
+		Random random = new Random(42);
+		List<Integer> objects = new ArrayList<>();
+		for(int obj = 0; obj < (1 << BITS); obj++) {
+			objects.add(obj);
+		}
+		Collections.shuffle(objects, random);
+		buildTree(objects, random);
+		
+		IntBDTNodeMap map = createLeafValueMap();
+		DoubleBDTNodeMap weights = new DoubleBDTNodeMap(tree, NodeType.LEAF);
+		for(BDTNode<Integer> leaf : tree.getLeaves()) {
+			weights.put(leaf, random.nextInt(10) == 0 ? 100.0 : 1.0);
+		}
+		
+		assertTrue(tree.restructure(tree.getRoot(), leafEvaluator, weights, null) > 1);
+		
+		assertLeafValues(map);
+	}
+
+}